@@ -0,0 +1,104 @@
+package bench;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Resolves benchmark input names to files in a private working directory
+final class BenchmarkInputs {
+
+    // Folder with the bundled sample models, relative to the working directory unless overridden
+    static final String SAMPLES_PROPERTY = "gltf.samples";
+
+    private static final String SYNTHETIC_PREFIX = "synthetic-";
+
+    private BenchmarkInputs() {
+    }
+
+    // Sample models by file name (Avocado.gltf, WIMSUT.glb, ...) or synthetic grids such as synthetic-10K.glb
+    static Path prepare(String name, Path workDir) throws IOException {
+        if (name.startsWith(SYNTHETIC_PREFIX)) {
+            String extension = name.substring(name.lastIndexOf('.') + 1);
+            int triangles = SyntheticMesh.parseCount(name.substring(SYNTHETIC_PREFIX.length(), name.lastIndexOf('.')));
+            Path file = workDir.resolve(name);
+            if ("glb".equals(extension))
+                new SyntheticMesh(triangles).writeGlb(file);
+            else
+                new SyntheticMesh(triangles).writeGltf(file);
+            return file;
+        }
+        Path sample = findSample(name);
+        Path copy = workDir.resolve(name.substring(0, name.lastIndexOf('.')));
+        copyFolder(sample.getParent(), copy);
+        Path file = copy.resolve(sample.getFileName());
+        if (name.endsWith(".gltf"))
+            addMissingImages(file);
+        return file;
+    }
+
+    static int syntheticTriangles(String name) {
+        return name.startsWith(SYNTHETIC_PREFIX)
+                ? SyntheticMesh.parseCount(name.substring(SYNTHETIC_PREFIX.length(), name.lastIndexOf('.')))
+                : -1;
+    }
+
+    static Path createWorkDir() throws IOException {
+        return Files.createTempDirectory("gltf-bench");
+    }
+
+    static void delete(Path folder) throws IOException {
+        if (folder == null || !Files.exists(folder))
+            return;
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static Path findSample(String fileName) throws IOException {
+        Path samples = Paths.get(System.getProperty(SAMPLES_PROPERTY, "Sample Models"));
+        if (!Files.isDirectory(samples))
+            throw new IOException("Sample Models not found at " + samples.toAbsolutePath() + ", set -D" + SAMPLES_PROPERTY);
+        try (Stream<Path> files = Files.walk(samples)) {
+            // The embedded Triangle variant uses data URIs, which the parser does not read
+            return files.filter(file -> file.getFileName().toString().equals(fileName))
+                    .filter(file -> !file.toString().contains("Embedded"))
+                    .findFirst()
+                    .orElseThrow(() -> new IOException("Sample model not found: " + fileName));
+        }
+    }
+
+    private static void copyFolder(Path source, Path target) throws IOException {
+        Files.createDirectories(target);
+        try (Stream<Path> files = Files.list(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file))
+                    Files.copy(file, target.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    // Some samples ship without all of their textures, empty placeholders let them parse
+    private static void addMissingImages(Path gltfFile) throws IOException {
+        JSONObject gltf = new JSONObject(new String(Files.readAllBytes(gltfFile), StandardCharsets.UTF_8));
+        JSONArray images = gltf.optJSONArray("images");
+        if (images == null)
+            return;
+        for (int i = 0; i < images.length(); i++) {
+            String uri = images.getJSONObject(i).optString("uri", null);
+            if (uri == null || uri.startsWith("data:"))
+                continue;
+            Path image = gltfFile.resolveSibling(uri);
+            if (!Files.exists(image))
+                Files.createFile(image);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the benchmarks with the GC profiler, so every result also reports the allocation rate (gc.alloc.rate.norm).
+// Accepts the usual JMH arguments, e.g. "ParserBenchmark -p input=WIMSUT.glb" or "-p input=synthetic-1M.glb,synthetic-10M.glb".
+// Run from the project folder or pass -Dgltf.samples=<path to Sample Models>.
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty())
+            builder.include("bench\\..*Benchmark");
+        builder.addProfiler(GCProfiler.class);
+
+        // Forked JVMs resolve the samples the same way
+        String samples = System.getProperty(BenchmarkInputs.SAMPLES_PROPERTY);
+        if (samples != null)
+            builder.jvmArgsPrepend("-D" + BenchmarkInputs.SAMPLES_PROPERTY + "=" + samples);
+
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
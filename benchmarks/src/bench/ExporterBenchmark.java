@@ -0,0 +1,102 @@
+package bench;
+
+import core.Object3d;
+import exporters.DaeExporter;
+import exporters.ExportOptions;
+import exporters.Exporter;
+import exporters.GlbExporter;
+import exporters.ObjExporter;
+import exporters.StlExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import parsers.GlbParser;
+import parsers.GltfParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Time and allocation of every exporter, the model is loaded once per trial so only the export is measured
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class ExporterBenchmark {
+
+    @Param({"Avocado.gltf", "BarramundiFish.gltf", "Triangle.gltf", "WIMSUT.glb",
+            "synthetic-10K.glb", "synthetic-100K.glb", "synthetic-1M.glb", "synthetic-10M.glb", "synthetic-50M.glb"})
+    public String input;
+
+    // stl-binary is the stl exporter with binary output enabled, glb-quantized the glb exporter with quantization
+    @Param({"obj", "dae", "stl", "stl-binary", "glb", "glb-quantized"})
+    public String format;
+
+    private Path workDir;
+    private Object3d object;
+    private Exporter exporter;
+    private String outputPath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = BenchmarkInputs.createWorkDir();
+        int triangles = BenchmarkInputs.syntheticTriangles(input);
+        if (triangles > 0) {
+            // Generated directly, no need to go through a file
+            object = new SyntheticMesh(triangles).toObject3d();
+        } else {
+            String filePath = BenchmarkInputs.prepare(input, workDir).toString();
+            object = input.endsWith(".glb") ? new GlbParser().parse(filePath) : new GltfParser().parse(filePath);
+            if (object == null)
+                throw new IOException("Parsing failed: " + filePath);
+        }
+
+        switch (format) {
+            case "obj":
+                exporter = new ObjExporter();
+                break;
+            case "dae":
+                exporter = new DaeExporter();
+                break;
+            case "stl":
+                exporter = new StlExporter();
+                break;
+            case "stl-binary":
+                exporter = new StlExporter(new ExportOptions().setBinaryStl(true));
+                break;
+            case "glb":
+                exporter = new GlbExporter();
+                break;
+            case "glb-quantized":
+                exporter = new GlbExporter(new ExportOptions().setQuantize(true));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        Path output = Files.createDirectories(workDir.resolve("output"));
+        outputPath = output.resolve("model." + format.replaceFirst("-.*", "")).toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkInputs.delete(workDir);
+    }
+
+    @Benchmark
+    public void export() throws IOException {
+        exporter.export(object, outputPath);
+    }
+}
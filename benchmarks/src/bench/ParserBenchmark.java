@@ -0,0 +1,102 @@
+package bench;
+
+import core.MeshSink;
+import core.Object3d;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import parsers.GlbParser;
+import parsers.GltfParser;
+import parsers.Parser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Time and allocation of GltfParser.parse and GlbParser.parse, into an Object3d and streamed into a sink
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class ParserBenchmark {
+
+    @Param({"Avocado.gltf", "BarramundiFish.gltf", "Triangle.gltf", "WIMSUT.glb",
+            "synthetic-10K.gltf", "synthetic-100K.gltf", "synthetic-1M.gltf", "synthetic-10M.gltf", "synthetic-50M.gltf",
+            "synthetic-10K.glb", "synthetic-100K.glb", "synthetic-1M.glb", "synthetic-10M.glb", "synthetic-50M.glb"})
+    public String input;
+
+    private Path workDir;
+    private String filePath;
+    private Parser parser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = BenchmarkInputs.createWorkDir();
+        filePath = BenchmarkInputs.prepare(input, workDir).toString();
+        parser = input.endsWith(".glb") ? new GlbParser() : new GltfParser();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkInputs.delete(workDir);
+    }
+
+    @Benchmark
+    public Object3d parse() throws IOException {
+        Object3d object = parser.parse(filePath);
+        if (object == null)
+            throw new IOException("Parsing failed: " + filePath);
+        return object;
+    }
+
+    // Decoding cost alone, the batches are consumed without being stored
+    @Benchmark
+    public void parseStreaming(Blackhole blackhole) throws IOException {
+        parser.parse(filePath, new BlackholeSink(blackhole));
+    }
+
+    private static class BlackholeSink implements MeshSink {
+
+        private final Blackhole blackhole;
+
+        BlackholeSink(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void addMaterial(Object3d.Material material) {
+            blackhole.consume(material);
+        }
+
+        @Override
+        public void addVertices(float[] xyz, int offset, int count) {
+            blackhole.consume(xyz[offset]);
+            blackhole.consume(count);
+        }
+
+        @Override
+        public void addTexCoords(float[] uv, int offset, int count) {
+            blackhole.consume(uv[offset]);
+            blackhole.consume(count);
+        }
+
+        @Override
+        public void addTriangles(int[] indices, int offset, int count) {
+            blackhole.consume(indices[offset]);
+            blackhole.consume(count);
+        }
+    }
+}
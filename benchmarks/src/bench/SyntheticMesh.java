@@ -0,0 +1,219 @@
+package bench;
+
+import core.Object3d;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Regular grid with a known triangle count, generated in memory or written as .glb / .gltf + .bin
+final class SyntheticMesh {
+
+    private static final int ROWS_PER_BLOCK = 64;
+
+    private final int triangleCount;
+    private final int columns;
+    private final int rows;
+
+    SyntheticMesh(int triangleCount) {
+        if (triangleCount < 2)
+            throw new IllegalArgumentException("triangleCount must be at least 2, got " + triangleCount);
+        this.triangleCount = triangleCount;
+        // Near square grid of quads, the last row is only partially filled
+        this.columns = Math.max(1, (int) Math.sqrt(triangleCount / 2.0));
+        this.rows = (triangleCount + 2 * columns - 1) / (2 * columns);
+    }
+
+    // Accepts plain numbers as well as K and M suffixes, e.g. 10K or 50M
+    static int parseCount(String text) {
+        String value = text.trim().toUpperCase();
+        int factor = 1;
+        if (value.endsWith("K")) {
+            factor = 1_000;
+            value = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("M")) {
+            factor = 1_000_000;
+            value = value.substring(0, value.length() - 1);
+        }
+        return Math.multiplyExact(Integer.parseInt(value), factor);
+    }
+
+    int getTriangleCount() {
+        return triangleCount;
+    }
+
+    int getVertexCount() {
+        return (columns + 1) * (rows + 1);
+    }
+
+    Object3d toObject3d() {
+        Object3d object = new Object3d();
+        object.reserve(getVertexCount(), getVertexCount(), triangleCount);
+        float[] xyz = new float[(columns + 1) * 3];
+        float[] uv = new float[(columns + 1) * 2];
+        for (int row = 0; row <= rows; row++) {
+            fillRow(row, xyz, 0, uv, 0);
+            object.addVertices(xyz, 0, columns + 1);
+            object.addTexCoords(uv, 0, columns + 1);
+        }
+        int[] indices = new int[columns * 6];
+        for (int row = 0; row < rows; row++) {
+            int count = fillTriangles(row, indices, 0);
+            object.addTriangles(indices, 0, count);
+        }
+        return object;
+    }
+
+    void writeGlb(Path file) throws IOException {
+        byte[] json = paddedJson(null);
+        long binLength = binLength();
+        if (12 + 8 + json.length + 8 + binLength > 0xFFFFFFFFL)
+            throw new IOException("Synthetic mesh too large for a GLB file: " + triangleCount + " triangles");
+        try (FileChannel channel = open(file)) {
+            ByteBuffer header = ByteBuffer.allocate(12 + 8).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0x46546C67).putInt(2).putInt((int) (12 + 8 + json.length + 8 + binLength));
+            header.putInt(json.length).putInt(0x4E4F534A);
+            writeFully(channel, header.flip());
+            writeFully(channel, ByteBuffer.wrap(json));
+            ByteBuffer binHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            binHeader.putInt((int) binLength).putInt(0x004E4942);
+            writeFully(channel, binHeader.flip());
+            writeBin(channel);
+        }
+    }
+
+    void writeGltf(Path file) throws IOException {
+        String fileName = file.getFileName().toString();
+        String binName = fileName.substring(0, fileName.lastIndexOf('.')) + ".bin";
+        try (FileChannel channel = open(file)) {
+            writeFully(channel, ByteBuffer.wrap(paddedJson(binName)));
+        }
+        try (FileChannel channel = open(file.resolveSibling(binName))) {
+            writeBin(channel);
+        }
+    }
+
+    // Layout of the binary buffer: positions, texture coordinates, uint32 indices
+    private long positionsLength() {
+        return (long) getVertexCount() * 12;
+    }
+
+    private long texCoordsLength() {
+        return (long) getVertexCount() * 8;
+    }
+
+    private long binLength() {
+        return positionsLength() + texCoordsLength() + (long) triangleCount * 12;
+    }
+
+    private byte[] paddedJson(String binUri) {
+        int vertexCount = getVertexCount();
+        String buffer = binUri == null
+                ? "{\"byteLength\":" + binLength() + "}"
+                : "{\"uri\":\"" + binUri + "\",\"byteLength\":" + binLength() + "}";
+        String json = "{\"asset\":{\"version\":\"2.0\",\"generator\":\"glTF Konverter benchmarks\"},"
+                + "\"scene\":0,\"scenes\":[{\"nodes\":[0]}],\"nodes\":[{\"mesh\":0}],"
+                + "\"meshes\":[{\"primitives\":[{\"attributes\":{\"POSITION\":0,\"TEXCOORD_0\":1},\"indices\":2}]}],"
+                + "\"buffers\":[" + buffer + "],"
+                + "\"bufferViews\":["
+                + "{\"buffer\":0,\"byteOffset\":0,\"byteLength\":" + positionsLength() + ",\"target\":34962},"
+                + "{\"buffer\":0,\"byteOffset\":" + positionsLength() + ",\"byteLength\":" + texCoordsLength() + ",\"target\":34962},"
+                + "{\"buffer\":0,\"byteOffset\":" + (positionsLength() + texCoordsLength()) + ",\"byteLength\":" + (long) triangleCount * 12 + ",\"target\":34963}],"
+                + "\"accessors\":["
+                + "{\"bufferView\":0,\"componentType\":5126,\"count\":" + vertexCount + ",\"type\":\"VEC3\","
+                + "\"min\":[0,0,0],\"max\":[" + columns + "," + rows + ",0]},"
+                + "{\"bufferView\":1,\"componentType\":5126,\"count\":" + vertexCount + ",\"type\":\"VEC2\"},"
+                + "{\"bufferView\":2,\"componentType\":5125,\"count\":" + (long) triangleCount * 3 + ",\"type\":\"SCALAR\"}]}";
+        // GLB chunks are 4 byte aligned, padded with spaces
+        StringBuilder padded = new StringBuilder(json);
+        while (padded.length() % 4 != 0) {
+            padded.append(' ');
+        }
+        return padded.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Streams the buffer in blocks of rows, the mesh is never held in memory as a whole
+    private void writeBin(FileChannel channel) throws IOException {
+        int rowsPerBlock = Math.max(1, Math.min(ROWS_PER_BLOCK, (1 << 22) / (columns + 1)));
+        ByteBuffer block = ByteBuffer.allocateDirect(rowsPerBlock * (columns + 1) * 12).order(ByteOrder.LITTLE_ENDIAN);
+        float[] xyz = new float[(columns + 1) * 3];
+        float[] uv = new float[(columns + 1) * 2];
+
+        for (int row = 0; row <= rows; row++) {
+            fillRow(row, xyz, 0, uv, 0);
+            if (block.remaining() < xyz.length * 4)
+                writeFully(channel, block.flip()).clear();
+            block.asFloatBuffer().put(xyz);
+            block.position(block.position() + xyz.length * 4);
+        }
+        writeFully(channel, block.flip()).clear();
+
+        for (int row = 0; row <= rows; row++) {
+            fillRow(row, xyz, 0, uv, 0);
+            if (block.remaining() < uv.length * 4)
+                writeFully(channel, block.flip()).clear();
+            block.asFloatBuffer().put(uv);
+            block.position(block.position() + uv.length * 4);
+        }
+        writeFully(channel, block.flip()).clear();
+
+        int[] indices = new int[columns * 6];
+        for (int row = 0; row < rows; row++) {
+            int count = fillTriangles(row, indices, 0);
+            if (block.remaining() < count * 12)
+                writeFully(channel, block.flip()).clear();
+            block.asIntBuffer().put(indices, 0, count * 3);
+            block.position(block.position() + count * 12);
+        }
+        writeFully(channel, block.flip()).clear();
+    }
+
+    private void fillRow(int row, float[] xyz, int xyzOffset, float[] uv, int uvOffset) {
+        for (int column = 0; column <= columns; column++) {
+            // A gentle wave keeps the normals from being all identical
+            xyz[xyzOffset++] = column;
+            xyz[xyzOffset++] = row;
+            xyz[xyzOffset++] = (float) (Math.sin(column * 0.1) * Math.cos(row * 0.1));
+            uv[uvOffset++] = (float) column / columns;
+            uv[uvOffset++] = (float) row / rows;
+        }
+    }
+
+    // Two triangles per quad, returns the number of triangles written for this row
+    private int fillTriangles(int row, int[] indices, int offset) {
+        long first = (long) row * columns * 2;
+        int count = (int) Math.min(columns * 2L, triangleCount - first);
+        for (int t = 0; t < count; t++) {
+            int column = t / 2;
+            int a = row * (columns + 1) + column;
+            int b = a + 1;
+            int c = a + columns + 1;
+            int d = c + 1;
+            if (t % 2 == 0) {
+                indices[offset++] = a;
+                indices[offset++] = b;
+                indices[offset++] = c;
+            } else {
+                indices[offset++] = b;
+                indices[offset++] = d;
+                indices[offset++] = c;
+            }
+        }
+        return count;
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static ByteBuffer writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return buffer;
+    }
+}
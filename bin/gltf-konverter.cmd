@@ -0,0 +1,9 @@
+@echo off
+rem Starts the command-line converter (ConverterCli), build the gltf-konverter-cli artifact first.
+rem The first run records a class-data-sharing archive next to the jar, later runs start faster from it.
+rem Delete gltf-konverter.jsa after updating the JDK or the jar.
+setlocal
+if "%GLTF_KONVERTER_JAR%"=="" set "GLTF_KONVERTER_JAR=%~dp0..\out\artifacts\gltf_konverter_cli\gltf-konverter.jar"
+set "ARCHIVE=%GLTF_KONVERTER_JAR:.jar=.jsa%"
+if exist "%ARCHIVE%" (set "CDS=-XX:SharedArchiveFile=%ARCHIVE% -Xshare:auto") else (set "CDS=-XX:ArchiveClassesAtExit=%ARCHIVE%")
+java %CDS% -Xlog:cds=off -Xlog:cds+dynamic=off %JAVA_OPTS% -jar "%GLTF_KONVERTER_JAR%" %*
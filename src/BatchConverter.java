@@ -0,0 +1,497 @@
+import exporters.ExportOptions;
+import exporters.ExportSink;
+import exporters.Exporter;
+import exporters.MeteredSink;
+import metrics.ConversionMetrics;
+import metrics.Stage;
+import optimizers.OptimizingSink;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import parsers.Parser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Converts many files concurrently and reports one result per file
+public class BatchConverter {
+
+    private final String outputFormat;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean virtualThreads = false;
+    private boolean keepOriginal = true;
+    private boolean incremental = false;
+    private String outputSubfolder = "output";
+    private Path outputDirectory = null;
+    private ExportOptions exportOptions = new ExportOptions();
+    private boolean collectMetrics = false;
+    private MemoryBudget memoryBudget = new MemoryBudget(Runtime.getRuntime().maxMemory() / 4 * 3);
+
+    private final Map<Path, ConversionCache> caches = new ConcurrentHashMap<>();
+    private final ParserFactory parsers = new ParserFactory();
+    private final ExporterFactory exporters = new ExporterFactory();
+
+    public BatchConverter(String outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    public BatchConverter setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1, got " + parallelism);
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    // Runs every conversion on its own virtual thread, parallelism still bounds how many run at once
+    public BatchConverter setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    public BatchConverter setKeepOriginal(boolean keepOriginal) {
+        this.keepOriginal = keepOriginal;
+        return this;
+    }
+
+    // Skips inputs whose output is still current, tracked in a manifest in every output folder
+    public BatchConverter setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    public BatchConverter setOutputSubfolder(String outputSubfolder) {
+        this.outputSubfolder = outputSubfolder;
+        return this;
+    }
+
+    public BatchConverter setExportOptions(ExportOptions exportOptions) {
+        this.exportOptions = exportOptions;
+        return this;
+    }
+
+    // All outputs go straight into this folder instead of a subfolder next to each input
+    public BatchConverter setOutputDirectory(Path outputDirectory) {
+        this.outputDirectory = outputDirectory;
+        return this;
+    }
+
+    // Attaches stage metrics to every result, see writeMetrics. Flight Recorder events are emitted whenever a recording
+    // has them enabled, with or without this.
+    public BatchConverter setCollectMetrics(boolean collectMetrics) {
+        this.collectMetrics = collectMetrics;
+        return this;
+    }
+
+    // Heap the conversions running at the same time may use together, by the parsers' estimates. A file estimated
+    // above the budget is converted alone.
+    public BatchConverter setMemoryBudget(long bytes) {
+        this.memoryBudget = new MemoryBudget(bytes);
+        return this;
+    }
+
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+
+    public String getOutputSubfolder() {
+        return outputSubfolder;
+    }
+
+    // null when outputs go into a subfolder next to each input
+    public Path getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Results are returned in the order of the input list. Outputs that are still current are skipped first, then the
+    // remaining files start largest first by their estimated memory, and whenever one finishes the largest waiting file
+    // that fits into the memory budget follows, so small files fill the room next to large ones.
+    public List<ConversionResult> convertAll(List<Path> files) throws InterruptedException {
+        if (files.isEmpty())
+            return new ArrayList<>();
+
+        ConversionResult[] results = new ConversionResult[files.size()];
+        long[] estimates = new long[files.size()];
+        ExecutorService executor = newExecutor(Math.min(parallelism, files.size()));
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Integer>> futures = new ArrayList<>(files.size());
+        try {
+            // Both read every input, on a large incremental run most of the time goes here, so it runs in parallel too
+            for (int i = 0; i < files.size(); i++) {
+                int index = i;
+                Path file = files.get(index);
+                futures.add(completion.submit(() -> {
+                    try {
+                        results[index] = skipIfUpToDate(file);
+                        if (results[index] == null)
+                            estimates[index] = estimateMemory(file);
+                    } catch (Error e) {
+                        results[index] = ConversionResult.failure(file, null, e, Duration.ZERO, 0);
+                    }
+                    return index;
+                }));
+            }
+            List<Integer> waiting = new LinkedList<>();
+            for (int i = 0; i < files.size(); i++) {
+                int index = getIndex(completion.take());
+                if (results[index] == null)
+                    waiting.add(index);
+            }
+            waiting.sort(Comparator.comparingLong((Integer i) -> estimates[i]).reversed());
+
+            int running = 0;
+            while (!waiting.isEmpty() || running > 0) {
+                for (Iterator<Integer> it = waiting.iterator(); it.hasNext() && running < parallelism; ) {
+                    int index = it.next();
+                    // Nothing running means nothing will free memory, so the largest file waits for the budget
+                    if (running == 0)
+                        memoryBudget.acquire(estimates[index]);
+                    else if (!memoryBudget.tryAcquire(estimates[index]))
+                        continue;
+                    it.remove();
+                    running++;
+                    Path file = files.get(index);
+                    futures.add(completion.submit(() -> {
+                        try {
+                            results[index] = convert(file, incremental ? cacheFor(file) : null);
+                        } finally {
+                            memoryBudget.release(estimates[index]);
+                        }
+                        return index;
+                    }));
+                }
+                completion.take();
+                running--;
+            }
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+            executor.shutdownNow();
+            saveCaches();
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    // Safe to call from several threads, in incremental mode saveCaches() persists what was converted. Waits until the
+    // memory budget has room for the file, outputs that are still current are skipped without waiting.
+    public ConversionResult convert(Path file) throws InterruptedException {
+        ConversionResult skipped = skipIfUpToDate(file);
+        if (skipped != null)
+            return skipped;
+        long estimate = estimateMemory(file);
+        memoryBudget.acquire(estimate);
+        try {
+            return convert(file, incremental ? cacheFor(file) : null);
+        } finally {
+            memoryBudget.release(estimate);
+        }
+    }
+
+    // The parser's estimate, and as much again for a mesh an exporter or optimization collects, up to where it moves
+    // out of core. Files that cannot be estimated count with their size, converting them reports the error.
+    long estimateMemory(Path file) {
+        try {
+            String fileExtension = getFileExtension(file);
+            long parse = parsers.getParser(fileExtension).estimateMemory(file.toString());
+            long output = (long) exportOptions.getOutputBufferSize() * exportOptions.getOutputBufferCount();
+            return parse + Math.min(parse, exportOptions.getOutOfCoreThreshold()) + output;
+        } catch (Exception e) {
+            try {
+                return Files.size(file);
+            } catch (IOException sizeUnknown) {
+                return 0;
+            }
+        }
+    }
+
+    // The skipped result when incremental mode has the output and its levels of detail as current, otherwise null.
+    // Problems with the file are left for converting it to report.
+    private ConversionResult skipIfUpToDate(Path file) {
+        if (!incremental)
+            return null;
+        return measured(file, () -> {
+            long start = System.nanoTime();
+            try {
+                String fileExtension = getFileExtension(file);
+                if (fileExtension == null)
+                    return null;
+                Path outputFile = outputPathFor(file, fileExtension);
+                if (!cacheFor(file).isUpToDate(file, outputFile, settings()) || !lodOutputs(outputFile).stream().allMatch(Files::isRegularFile))
+                    return null;
+                return ConversionResult.skipped(file, outputFile, Duration.ofNanos(System.nanoTime() - start), Files.size(file), Files.size(outputFile));
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        });
+    }
+
+    private ConversionResult convert(Path file, ConversionCache cache) {
+        try {
+            return measured(file, () -> convertFile(file, cache));
+        } catch (RuntimeException | Error e) {
+            return ConversionResult.failure(file, null, e, Duration.ZERO, 0);
+        }
+    }
+
+    // Measures the conversion when metrics are collected or a Flight Recorder recording wants the events, a null result
+    // is not reported
+    private ConversionResult measured(Path file, Supplier<ConversionResult> conversion) {
+        if (!collectMetrics && !ConversionMetrics.isRecording())
+            return conversion.get();
+
+        ConversionMetrics metrics = new ConversionMetrics(file);
+        ConversionResult result;
+        ConversionMetrics.Scope scope = metrics.activate();
+        try {
+            result = conversion.get();
+        } finally {
+            scope.close();
+        }
+        if (result == null)
+            return null;
+        metrics.commitEvents(outputFormat, result.isSuccess(), result.getBytesIn(), result.getBytesOut());
+        return result.withMetrics(metrics);
+    }
+
+    private ConversionResult convertFile(Path file, ConversionCache cache) {
+        long start = System.nanoTime();
+        Path outputFile = null;
+        long bytesIn = 0;
+        try {
+            String fileExtension = getFileExtension(file);
+            if (fileExtension == null)
+                throw new IOException("file extension not found: " + file);
+
+            outputFile = outputPathFor(file, fileExtension);
+            bytesIn = Files.size(file);
+
+            Parser parser = parsers.getParser(fileExtension);
+            // Taken before parsing, an input or dependency edited while converting is converted again next time
+            ConversionCache.Snapshot snapshot = cache != null ? ConversionCache.snapshot(file, parser.referencedFiles(file.toString())) : null;
+            Exporter exporter = exporters.getExporter(outputFormat, exportOptions);
+
+            // Stream from the parser straight into the exporter, no complete Object3d is built where the format allows it
+            // and no optimization is enabled
+            Files.createDirectories(outputFile.getParent());
+            ConversionMetrics metrics = ConversionMetrics.current();
+            try (ExportSink sink = MeteredSink.wrap(OptimizingSink.open(exporter, outputFile.toString(), exportOptions), metrics)) {
+                parser.parse(file.toString(), sink);
+                sink.finish();
+            }
+            long bytesOut = Files.size(outputFile);
+            metrics.addBytes(Stage.ENCODE, bytesOut);
+
+            // Delete the original file only once the conversion went through
+            if (!keepOriginal)
+                Files.delete(file);
+
+            if (cache != null) {
+                if (keepOriginal)
+                    cache.record(file, snapshot, outputFile, settings());
+                else
+                    cache.remove(outputFile);
+            }
+
+            return ConversionResult.success(file, outputFile, Duration.ofNanos(System.nanoTime() - start), bytesIn, bytesOut);
+        } catch (Exception e) {
+            if (cache != null && outputFile != null)
+                cache.remove(outputFile);
+            deletePartialOutput(outputFile);
+            if (outputFile != null)
+                lodOutputs(outputFile).forEach(BatchConverter::deletePartialOutput);
+            return ConversionResult.failure(file, outputFile, e, Duration.ofNanos(System.nanoTime() - start), bytesIn);
+        }
+    }
+
+    // Writes a JSON summary of the results, one entry per file with its stage metrics and the totals of the batch.
+    // Metrics are only included for results of a converter that collected them.
+    public void writeMetrics(List<ConversionResult> results, Path file) throws IOException {
+        JSONArray files = new JSONArray();
+        long[] stageNanos = new long[Stage.values().length];
+        long[] stageBytes = new long[Stage.values().length];
+        long millis = 0, bytesIn = 0, bytesOut = 0, vertices = 0, triangles = 0, allocated = 0;
+        int converted = 0, skipped = 0, failed = 0;
+        for (ConversionResult result : results) {
+            JSONObject entry = new JSONObject()
+                    .put("input", result.getInput().toString())
+                    .put("output", result.getOutput() != null ? result.getOutput().toString() : JSONObject.NULL)
+                    .put("status", result.isSkipped() ? "skipped" : result.isSuccess() ? "ok" : "failed")
+                    .put("bytesIn", result.getBytesIn())
+                    .put("bytesOut", result.getBytesOut());
+            if (!result.isSuccess())
+                entry.put("error", String.valueOf(result.getError()));
+            ConversionMetrics metrics = result.getMetrics();
+            if (metrics != null) {
+                JSONObject measured = metrics.toJson();
+                for (String key : measured.keySet()) {
+                    entry.put(key, measured.get(key));
+                }
+                vertices += metrics.getVertices();
+                triangles += metrics.getTriangles();
+                allocated += Math.max(0, metrics.getTotalAllocatedBytes());
+                for (Stage stage : Stage.values()) {
+                    stageNanos[stage.ordinal()] += metrics.getNanos(stage);
+                    stageBytes[stage.ordinal()] += metrics.getBytes(stage);
+                }
+            } else {
+                entry.put("millis", result.getDuration().toMillis());
+            }
+            files.put(entry);
+
+            millis += result.getDuration().toMillis();
+            bytesIn += result.getBytesIn();
+            bytesOut += result.getBytesOut();
+            if (result.isSkipped())
+                skipped++;
+            else if (result.isSuccess())
+                converted++;
+            else
+                failed++;
+        }
+
+        JSONObject stages = new JSONObject();
+        for (Stage stage : Stage.values()) {
+            if (stageNanos[stage.ordinal()] != 0 || stageBytes[stage.ordinal()] != 0)
+                stages.put(stage.key(), new JSONObject()
+                        .put("millis", stageNanos[stage.ordinal()] / 1e6)
+                        .put("bytes", stageBytes[stage.ordinal()]));
+        }
+        // millis adds up the files, with several files converted at once it is more than the wall time of the batch
+        JSONObject totals = new JSONObject()
+                .put("files", results.size())
+                .put("converted", converted)
+                .put("skipped", skipped)
+                .put("failed", failed)
+                .put("millis", millis)
+                .put("bytesIn", bytesIn)
+                .put("bytesOut", bytesOut)
+                .put("vertices", vertices)
+                .put("triangles", triangles)
+                .put("allocatedBytes", allocated)
+                .put("stages", stages);
+        JSONObject summary = new JSONObject()
+                .put("format", outputFormat)
+                .put("options", exportOptions.toString())
+                .put("files", files)
+                .put("totals", totals);
+        Files.writeString(file, summary.toString(2), StandardCharsets.UTF_8);
+    }
+
+    // What the manifest compares besides the files, outputs written with other settings are not current
+    private String settings() {
+        return outputFormat + " (" + exportOptions + ")";
+    }
+
+    // Extra files written next to the output, one per level of detail
+    private List<Path> lodOutputs(Path outputFile) {
+        List<Path> lods = new ArrayList<>();
+        for (int level = 1; level <= exportOptions.getLodLevels(); level++) {
+            lods.add(outputFile.resolveSibling(OptimizingSink.lodPath(outputFile.getFileName().toString(), level)));
+        }
+        return lods;
+    }
+
+    private static void deletePartialOutput(Path outputFile) {
+        if (outputFile == null)
+            return;
+        try {
+            Files.deleteIfExists(outputFile);
+        } catch (IOException e) {
+            // The conversion error is what gets reported
+        }
+    }
+
+    // Manifests are loaded once per output folder and kept for the lifetime of the converter
+    private ConversionCache cacheFor(Path file) {
+        Path folder = outputFolderFor(file);
+        return folder != null ? caches.computeIfAbsent(folder, ConversionCache::load) : null;
+    }
+
+    // Writes the manifests of incremental mode, convertAll does this itself when it is done
+    public void saveCaches() {
+        for (ConversionCache cache : caches.values()) {
+            try {
+                cache.save();
+            } catch (IOException e) {
+                // Without a manifest the next run converts these files again, the outputs themselves are fine
+            }
+        }
+    }
+
+    private Path outputFolderFor(Path file) {
+        String fileExtension = getFileExtension(file);
+        return fileExtension != null ? outputPathFor(file, fileExtension).getParent() : null;
+    }
+
+    // <folder>/<outputSubfolder>/<name>.<outputFormat>, or <outputDirectory>/<name>.<outputFormat> when one is set.
+    // Compressed outputs get another .gz.
+    Path outputPathFor(Path file, String fileExtension) {
+        String fileName = file.getFileName().toString();
+        String baseName = fileName.substring(0, fileName.length() - fileExtension.length() - 1);
+        String outputName = baseName + "." + outputFormat + (exportOptions.isGzip() ? ".gz" : "");
+        if (outputDirectory != null)
+            return outputDirectory.toAbsolutePath().resolve(outputName);
+        Path parent = file.toAbsolutePath().getParent();
+        return parent.resolve(outputSubfolder).resolve(outputName);
+    }
+
+    static String getFileExtension(Path file) {
+        String fileName = file.getFileName().toString();
+        int dotIndex = fileName.lastIndexOf(".");
+        if (dotIndex > 0 && dotIndex < fileName.length() - 1) {
+            return fileName.substring(dotIndex + 1).toLowerCase();
+        }
+        return null;
+    }
+
+    private static int getIndex(Future<Integer> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Preparing a conversion does not throw", e.getCause());
+        }
+    }
+
+    private ExecutorService newExecutor(int threads) {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                // Virtual threads need Java 21 (or preview features on 19/20), fall back to platform threads
+            }
+        }
+        return Executors.newFixedThreadPool(threads, new ConverterThreadFactory());
+    }
+
+    private static class ConverterThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gltf-converter-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Manifest of one output folder: remembers what every output was converted from, so unchanged inputs can be skipped.
+// An input counts as unchanged when the format, the export settings and the converter version are the same, the output
+// still exists, every referenced .bin/image file has its old size and mtime, and the input has its old size and either
+// its old mtime or its old content hash.
+public class ConversionCache {
+
+    static final String MANIFEST_FILE_NAME = ".gltf-konverter-manifest.json";
+
+    // Bump whenever the same input and settings produce different output, older manifest entries then no longer match
+    static final String CONVERTER_VERSION = "3";
+
+    private static final int MANIFEST_VERSION = 1;
+
+    private final Path manifestFile;
+    private final Map<String, JSONObject> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified;
+
+    private ConversionCache(Path manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    // A missing or unreadable manifest starts an empty cache, everything is converted again
+    public static ConversionCache load(Path outputFolder) {
+        ConversionCache cache = new ConversionCache(outputFolder.resolve(MANIFEST_FILE_NAME));
+        if (!Files.isRegularFile(cache.manifestFile))
+            return cache;
+        try {
+            JSONObject manifest = new JSONObject(Files.readString(cache.manifestFile, StandardCharsets.UTF_8));
+            if (manifest.optInt("manifestVersion") != MANIFEST_VERSION)
+                return cache;
+            JSONObject files = manifest.getJSONObject("files");
+            for (String input : files.keySet()) {
+                cache.entries.put(input, files.getJSONObject(input));
+            }
+        } catch (IOException | JSONException e) {
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    // Size, mtime and hash of the input and size and mtime of the files it references, taken before converting so later
+    // edits are never mistaken for converted ones
+    public static Snapshot snapshot(Path input, List<Path> referencedFiles) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(input, BasicFileAttributes.class);
+        Path folder = input.toAbsolutePath().getParent();
+        JSONArray dependencies = new JSONArray();
+        for (Path file : referencedFiles) {
+            BasicFileAttributes dependency = Files.readAttributes(file, BasicFileAttributes.class);
+            dependencies.put(new JSONObject()
+                    .put("path", folder.relativize(file.toAbsolutePath()).toString())
+                    .put("size", dependency.size())
+                    .put("modified", dependency.lastModifiedTime().toMillis()));
+        }
+        return new Snapshot(attributes.size(), attributes.lastModifiedTime().toMillis(), sha256(input), dependencies);
+    }
+
+    public boolean isUpToDate(Path input, Path output, String settings) throws IOException {
+        JSONObject entry = entries.get(key(output));
+        if (entry == null
+                || !CONVERTER_VERSION.equals(entry.optString("converterVersion"))
+                || !settings.equals(entry.optString("settings"))
+                || !input.getFileName().toString().equals(entry.optString("input"))
+                || !Files.isRegularFile(output))
+            return false;
+
+        // A partial or hand-edited entry only means the file is converted again
+        Path folder = input.toAbsolutePath().getParent();
+        JSONArray dependencies = entry.optJSONArray("dependencies");
+        if (dependencies == null)
+            return false;
+        for (int i = 0; i < dependencies.length(); i++) {
+            JSONObject dependency = dependencies.optJSONObject(i);
+            if (dependency == null || !dependency.has("path")
+                    || !matches(folder.resolve(dependency.optString("path")), dependency))
+                return false;
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(input, BasicFileAttributes.class);
+        if (attributes.size() != entry.optLong("size", -1))
+            return false;
+        if (entry.has("modified") && attributes.lastModifiedTime().toMillis() == entry.optLong("modified"))
+            return true;
+
+        // Touched but possibly not changed, the content decides
+        if (!sha256(input).equals(entry.optString("sha256")))
+            return false;
+        // Entries are replaced rather than changed, a concurrent save() never sees one half updated
+        JSONObject updated = new JSONObject(entry, JSONObject.getNames(entry));
+        entries.put(key(output), updated.put("modified", attributes.lastModifiedTime().toMillis()));
+        modified = true;
+        return true;
+    }
+
+    public void record(Path input, Snapshot snapshot, Path output, String settings) {
+        entries.put(key(output), new JSONObject()
+                .put("input", input.getFileName().toString())
+                .put("settings", settings)
+                .put("converterVersion", CONVERTER_VERSION)
+                .put("sha256", snapshot.sha256)
+                .put("size", snapshot.size)
+                .put("modified", snapshot.modified)
+                .put("dependencies", snapshot.dependencies));
+        modified = true;
+    }
+
+    public void remove(Path output) {
+        if (entries.remove(key(output)) != null)
+            modified = true;
+    }
+
+    // Writes to a temporary file first, an interrupted run never leaves a half-written manifest behind
+    public synchronized void save() throws IOException {
+        if (!modified)
+            return;
+        // Cleared before taking the snapshot, entries recorded while writing are saved next time
+        modified = false;
+        JSONObject files = new JSONObject(entries);
+        JSONObject manifest = new JSONObject()
+                .put("manifestVersion", MANIFEST_VERSION)
+                .put("files", files);
+
+        try {
+            Files.createDirectories(manifestFile.getParent());
+            Path temporary = manifestFile.resolveSibling(MANIFEST_FILE_NAME + ".tmp");
+            Files.writeString(temporary, manifest.toString(2), StandardCharsets.UTF_8);
+            try {
+                Files.move(temporary, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            modified = true;
+            throw e;
+        }
+    }
+
+    // One entry per output file, the same input may have outputs in several formats
+    private static String key(Path output) {
+        return output.getFileName().toString();
+    }
+
+    private static boolean matches(Path file, JSONObject recorded) throws IOException {
+        if (!Files.isRegularFile(file))
+            return false;
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return attributes.size() == recorded.optLong("size", -1)
+                && recorded.has("modified") && attributes.lastModifiedTime().toMillis() == recorded.optLong("modified");
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is part of every Java platform", e);
+        }
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    public static final class Snapshot {
+        private final long size;
+        private final long modified;
+        private final String sha256;
+        private final JSONArray dependencies;
+
+        private Snapshot(long size, long modified, String sha256, JSONArray dependencies) {
+            this.size = size;
+            this.modified = modified;
+            this.sha256 = sha256;
+            this.dependencies = dependencies;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import metrics.ConversionMetrics;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+// Outcome of converting a single file
+public class ConversionResult {
+
+    private final Path input;
+    private final Path output;
+    private final Throwable error;
+    private final Duration duration;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final boolean skipped;
+    private final ConversionMetrics metrics;
+
+    private ConversionResult(Path input, Path output, Throwable error, Duration duration, long bytesIn, long bytesOut,
+                             boolean skipped, ConversionMetrics metrics) {
+        this.input = input;
+        this.output = output;
+        this.error = error;
+        this.duration = duration;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.skipped = skipped;
+        this.metrics = metrics;
+    }
+
+    public static ConversionResult success(Path input, Path output, Duration duration, long bytesIn, long bytesOut) {
+        return new ConversionResult(input, output, null, duration, bytesIn, bytesOut, false, null);
+    }
+
+    // The existing output was still current, nothing was converted
+    public static ConversionResult skipped(Path input, Path output, Duration duration, long bytesIn, long bytesOut) {
+        return new ConversionResult(input, output, null, duration, bytesIn, bytesOut, true, null);
+    }
+
+    public static ConversionResult failure(Path input, Path output, Throwable error, Duration duration, long bytesIn) {
+        return new ConversionResult(input, output, error, duration, bytesIn, 0, false, null);
+    }
+
+    // Same result with the stage metrics of the conversion attached
+    public ConversionResult withMetrics(ConversionMetrics metrics) {
+        return new ConversionResult(input, output, error, duration, bytesIn, bytesOut, skipped, metrics);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    public Path getInput() {
+        return input;
+    }
+
+    public Path getOutput() {
+        return output;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    // Only set when the converter collected metrics
+    public ConversionMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return (skipped ? "SKIPPED " : isSuccess() ? "OK      " : "FAILED  ") + input + " -> " + output
+                + " (" + duration.toMillis() + " ms, " + bytesIn + " -> " + bytesOut + " bytes)"
+                + (isSuccess() ? "" : ": " + error);
+    }
+}
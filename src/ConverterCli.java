@@ -0,0 +1,304 @@
+import exporters.AsciiWriter;
+import exporters.ExportOptions;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+// Command-line entry point, never touches AWT/Swing so it runs on headless machines and starts quickly.
+// Launch it through bin/gltf-konverter, which adds a class-data-sharing archive for faster startup.
+public class ConverterCli {
+
+    private static final Set<String> SUPPORTED_FILE_EXTENSIONS = Set.of("gltf", "glb");
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: gltf-konverter [options] <file|folder|glob>...",
+            "",
+            "  -f, --format <format>        obj, dae, stl or glb (default obj)",
+            "  -o, --output <folder>        write all outputs into this folder (default: <input folder>/output)",
+            "  -j, --parallelism <n>        files converted at the same time (default: number of cores)",
+            "      --memory-budget <mb>     memory the files converted at the same time may use together (default: 3/4 of the heap)",
+            "      --binary-stl             write binary instead of ASCII STL",
+            "      --decimals <n|shortest>  decimals of floating point values in text formats",
+            "      --weld                   merge duplicate vertices and drop unused ones",
+            "      --weld-tolerance <t>     like --weld, also merges vertices closer than about t",
+            "      --decimate <ratio|n>     keep this share of the triangles (0.25) or at most n triangles (50000)",
+            "      --quantize               GLB: store positions and texture coordinates as 16 bit integers",
+            "      --lods <n>               also write n levels of detail, <name>_lod1 to <name>_lod<n>",
+            "      --encoding-threads <n>   format OBJ/DAE text of each file on up to n threads, at most one per core (default 1)",
+            "      --gzip                   compress the outputs as they are written, <name>.<format>.gz",
+            "      --output-buffers <n>     buffers per output file, full ones are written in the background (default 2)",
+            "      --output-buffer-kb <n>   size of each output buffer in KB (default 1024)",
+            "      --out-of-core <mb>       keep meshes above this size in temporary files instead of memory",
+            "      --spill-dir <folder>     folder for those files (default: the system temporary folder)",
+            "      --incremental            skip inputs whose output is still current",
+            "      --delete-original        delete each input after it was converted",
+            "      --watch                  keep running and convert new or changed files in the given folders",
+            "      --metrics <file.json>    write timings, sizes and allocations per file and stage as JSON",
+            "  -h, --help                   show this help",
+            "",
+            "Globs are matched against paths below the part without wildcards, e.g. \"assets/**/*.glb\".",
+            "Folders convert the .gltf/.glb files directly inside them.");
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    // Exit codes: 0 everything converted or current, 1 some conversions failed, 2 invalid arguments
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        String format = "obj";
+        Path outputDirectory = null;
+        Integer parallelism = null;
+        Long memoryBudget = null;
+        boolean incremental = false;
+        boolean keepOriginal = true;
+        boolean watch = false;
+        Path metricsFile = null;
+        ExportOptions exportOptions = new ExportOptions();
+        List<String> inputs = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-f":
+                    case "--format":
+                        format = value(args, ++i, arg).toLowerCase();
+                        break;
+                    case "-o":
+                    case "--output":
+                        outputDirectory = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "-j":
+                    case "--parallelism":
+                        parallelism = Integer.parseInt(value(args, ++i, arg));
+                        if (parallelism < 1)
+                            throw new IllegalArgumentException("parallelism must be at least 1, got " + parallelism);
+                        break;
+                    case "--memory-budget":
+                        memoryBudget = Long.parseLong(value(args, ++i, arg)) << 20;
+                        if (memoryBudget < 1)
+                            throw new IllegalArgumentException("memory budget must be positive, got " + memoryBudget);
+                        break;
+                    case "--binary-stl":
+                        exportOptions.setBinaryStl(true);
+                        break;
+                    case "--decimals":
+                        String decimals = value(args, ++i, arg);
+                        exportOptions.setDecimals("shortest".equalsIgnoreCase(decimals) ? AsciiWriter.SHORTEST : Integer.parseInt(decimals));
+                        break;
+                    case "--weld":
+                        exportOptions.setWeldVertices(true);
+                        break;
+                    case "--weld-tolerance":
+                        exportOptions.setWeldVertices(true).setWeldTolerance(Float.parseFloat(value(args, ++i, arg)));
+                        break;
+                    case "--decimate":
+                        String decimate = value(args, ++i, arg);
+                        if (decimate.contains("."))
+                            exportOptions.setDecimationRatio(Float.parseFloat(decimate));
+                        else
+                            exportOptions.setDecimationTarget(Integer.parseInt(decimate));
+                        break;
+                    case "--quantize":
+                        exportOptions.setQuantize(true);
+                        break;
+                    case "--lods":
+                        exportOptions.setLodLevels(Integer.parseInt(value(args, ++i, arg)));
+                        break;
+                    case "--encoding-threads":
+                        exportOptions.setEncodingThreads(Integer.parseInt(value(args, ++i, arg)));
+                        break;
+                    case "--gzip":
+                        exportOptions.setGzip(true);
+                        break;
+                    case "--output-buffers":
+                        exportOptions.setOutputBufferCount(Integer.parseInt(value(args, ++i, arg)));
+                        break;
+                    case "--output-buffer-kb":
+                        exportOptions.setOutputBufferSize(Math.multiplyExact(Integer.parseInt(value(args, ++i, arg)), 1024));
+                        break;
+                    case "--out-of-core":
+                        exportOptions.setOutOfCoreThreshold(Long.parseLong(value(args, ++i, arg)) << 20);
+                        break;
+                    case "--spill-dir":
+                        exportOptions.setSpillDirectory(Paths.get(value(args, ++i, arg)));
+                        break;
+                    case "--incremental":
+                        incremental = true;
+                        break;
+                    case "--delete-original":
+                        keepOriginal = false;
+                        break;
+                    case "--watch":
+                        watch = true;
+                        break;
+                    case "--metrics":
+                        metricsFile = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "-h":
+                    case "--help":
+                        out.println(USAGE);
+                        return 0;
+                    default:
+                        if (arg.startsWith("-") && arg.length() > 1)
+                            throw new IllegalArgumentException("Unknown option: " + arg);
+                        inputs.add(arg);
+                }
+            }
+            if (inputs.isEmpty())
+                throw new IllegalArgumentException("No input given");
+            if (watch && metricsFile != null)
+                throw new IllegalArgumentException("--metrics summarizes a batch and cannot be combined with --watch");
+            // Fails early on formats the factory does not know
+            new ExporterFactory().getExporter(format, exportOptions);
+        } catch (RuntimeException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+
+        BatchConverter converter = new BatchConverter(format)
+                .setKeepOriginal(keepOriginal)
+                .setIncremental(incremental || watch)
+                .setOutputDirectory(outputDirectory)
+                .setExportOptions(exportOptions)
+                .setCollectMetrics(metricsFile != null);
+        if (parallelism != null)
+            converter.setParallelism(parallelism);
+        if (memoryBudget != null)
+            converter.setMemoryBudget(memoryBudget);
+
+        try {
+            if (watch)
+                return watch(converter, inputs, out, err);
+
+            List<Path> files = resolveInputs(inputs);
+            if (files.isEmpty()) {
+                err.println("No .gltf or .glb files found");
+                return 1;
+            }
+            boolean failed = false;
+            List<ConversionResult> results = converter.convertAll(files);
+            for (ConversionResult result : results) {
+                (result.isSuccess() ? out : err).println(result);
+                failed |= !result.isSuccess();
+            }
+            if (metricsFile != null)
+                converter.writeMetrics(results, metricsFile);
+            return failed ? 1 : 0;
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    private static int watch(BatchConverter converter, List<String> inputs, PrintStream out, PrintStream err)
+            throws IOException, InterruptedException {
+        List<Path> folders = new ArrayList<>();
+        for (String input : inputs) {
+            Path folder = Paths.get(input);
+            if (!Files.isDirectory(folder)) {
+                err.println("--watch needs folders, " + input + " is not a folder");
+                return 2;
+            }
+            folders.add(folder);
+        }
+        FolderWatcher watcher = new FolderWatcher(converter, folders, Duration.ofSeconds(2), 1024,
+                result -> (result.isSuccess() ? out : err).println(result));
+        // Ctrl+C stops the watcher. The JVM halts once the hook returns, so the hook waits until run() has finished the
+        // conversions in progress and saved the manifests. Closing twice does no harm.
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                watcher.close();
+                stopped.await();
+            } catch (IOException | InterruptedException e) {
+                // Exiting anyway
+            }
+        }));
+        try {
+            watcher.run();
+        } finally {
+            watcher.close();
+            stopped.countDown();
+        }
+        return 0;
+    }
+
+    // Files, folders and globs, in argument order without duplicates
+    static List<Path> resolveInputs(List<String> inputs) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String input : inputs) {
+            if (isGlob(input)) {
+                addGlobMatches(input, files);
+            } else {
+                Path path = Paths.get(input);
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> entries = Files.list(path)) {
+                        entries.filter(Files::isRegularFile).filter(ConverterCli::isSupported).sorted().forEach(files::add);
+                    }
+                } else if (Files.isRegularFile(path)) {
+                    files.add(path);
+                } else {
+                    throw new IOException("Not found: " + input);
+                }
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static boolean isGlob(String input) {
+        return input.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    // The walk starts at the last folder before the first wildcard, the rest is matched relative to it
+    private static void addGlobMatches(String glob, Set<Path> files) throws IOException {
+        String normalized = glob.replace('\\', '/');
+        int firstWildcard = 0;
+        while (!isGlob(String.valueOf(normalized.charAt(firstWildcard)))) {
+            firstWildcard++;
+        }
+        int lastSeparator = normalized.lastIndexOf('/', firstWildcard);
+        Path base = lastSeparator < 0 ? Paths.get(".") : Paths.get(lastSeparator == 0 ? "/" : normalized.substring(0, lastSeparator));
+        String pattern = normalized.substring(lastSeparator + 1);
+        if (!Files.isDirectory(base))
+            throw new IOException("Not found: " + base);
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        // **/ needs at least one folder in a Java glob, but "assets/**/*.glb" should also find assets/a.glb
+        PathMatcher topLevel = pattern.startsWith("**/") ? FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(3)) : matcher;
+        try (Stream<Path> entries = Files.walk(base)) {
+            entries.filter(Files::isRegularFile)
+                    .filter(file -> matcher.matches(base.relativize(file)) || topLevel.matches(base.relativize(file)))
+                    .filter(ConverterCli::isSupported)
+                    .sorted()
+                    .forEach(files::add);
+        }
+    }
+
+    private static boolean isSupported(Path file) {
+        String fileExtension = BatchConverter.getFileExtension(file);
+        return fileExtension != null && SUPPORTED_FILE_EXTENSIONS.contains(fileExtension);
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length)
+            throw new IllegalArgumentException("Missing value for " + option);
+        return args[index];
+    }
+}
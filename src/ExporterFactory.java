@@ -1,5 +1,7 @@
 import exporters.DaeExporter;
+import exporters.ExportOptions;
 import exporters.Exporter;
+import exporters.GlbExporter;
 import exporters.ObjExporter;
 import exporters.StlExporter;
 
@@ -7,10 +9,15 @@ import java.util.UnknownFormatConversionException;
 
 public class ExporterFactory {
     public Exporter getExporter(String fileExtension) {
+        return getExporter(fileExtension, new ExportOptions());
+    }
+
+    public Exporter getExporter(String fileExtension, ExportOptions options) {
         return switch (fileExtension) {
-            case "obj" -> new ObjExporter();
-            case "stl" -> new StlExporter();
-            case "dae" -> new DaeExporter();
+            case "obj" -> new ObjExporter(options);
+            case "stl" -> new StlExporter(options);
+            case "dae" -> new DaeExporter(options);
+            case "glb" -> new GlbExporter(options);
             default -> throw new UnknownFormatConversionException("Dateityp nicht unterstützt");
         };
     }
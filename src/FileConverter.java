@@ -1,6 +1,4 @@
-import core.Object3d;
-import exporters.Exporter;
-import parsers.Parser;
+import exporters.ExportOptions;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -15,21 +13,23 @@ import java.io.InvalidObjectException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class FileConverter implements ActionListener {
 
     private static final String[] SUPPORTED_FILE_EXTENSIONS = {"gltf", "glb"};
-    private static final String[] SUPPORTED_OUTPUT_FORMATS = {"obj", "dae", "stl" };
+    private static final String[] SUPPORTED_OUTPUT_FORMATS = {"obj", "dae", "stl", "glb" };
 
     private final JFrame frame;
     private final JFileChooser fileChooser;
     private final JCheckBox keepOriginalCheckBox;
+    private final JCheckBox binaryStlCheckBox;
+    private final JCheckBox incrementalCheckBox;
+    private final JCheckBox weldCheckBox;
     private final JComboBox<String> outputFormatComboBox;
 
-    private final ParserFactory parsers = new ParserFactory();
-
-    private final ExporterFactory exporters = new ExporterFactory();
-
     public FileConverter() {
         frame = new JFrame("glTF Konverter");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -46,12 +46,21 @@ public class FileConverter implements ActionListener {
 
         keepOriginalCheckBox = new JCheckBox("Ursprungsdatei behalten", true);
 
+        binaryStlCheckBox = new JCheckBox("STL binär", false);
+
+        incrementalCheckBox = new JCheckBox("Nur geänderte Dateien", false);
+
+        weldCheckBox = new JCheckBox("Doppelte Vertices zusammenführen", false);
+
         outputFormatComboBox = new JComboBox<>(SUPPORTED_OUTPUT_FORMATS);
 
         JPanel optionsPanel = new JPanel();
         optionsPanel.add(selectButton);
         optionsPanel.add(keepOriginalCheckBox);
         optionsPanel.add(outputFormatComboBox);
+        optionsPanel.add(binaryStlCheckBox);
+        optionsPanel.add(incrementalCheckBox);
+        optionsPanel.add(weldCheckBox);
 
         // Panel for drag and drop functionality
         JPanel dropPanel = new JPanel();
@@ -76,7 +85,7 @@ public class FileConverter implements ActionListener {
                         convertFile(selectedFile.getAbsolutePath());
                     }
                 } catch (IOException exception) {
-                    System.out.println(exception.getMessage());
+                    JOptionPane.showMessageDialog(frame, exception.getMessage(), "glTF Konverter", JOptionPane.ERROR_MESSAGE);
                 }
             }
         }
@@ -96,14 +105,17 @@ public class FileConverter implements ActionListener {
 
             Transferable transferable = support.getTransferable();
             try {
-                java.util.List<File> fileList = (java.util.List<File>) transferable.getTransferData(DataFlavor.javaFileListFlavor);
+                List<File> fileList = (List<File>) transferable.getTransferData(DataFlavor.javaFileListFlavor);
+                // All dropped files and folders are converted as one batch
+                List<Path> files = new ArrayList<>();
                 for (File file : fileList) {
                     if (file.isDirectory()) {
-                        convertFolder(file.getAbsolutePath());
+                        collectFiles(file, files);
                     } else {
-                        convertFile(file.getAbsolutePath());
+                        files.add(file.toPath());
                     }
                 }
+                convertInBackground(files);
                 return true;
             } catch (Exception e) {
                 e.printStackTrace();
@@ -115,15 +127,20 @@ public class FileConverter implements ActionListener {
     public void convertFolder(String folderPath) throws IOException {
         File folder = new File(folderPath);
         if (!folder.exists() || !folder.isDirectory()) {
-            System.out.println("Invalid folder path: " + folderPath);
-            return;
+            throw new InvalidObjectException("Invalid folder path: " + folderPath);
         }
 
-        File[] files = folder.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isFile()) {
-                    convertFile(file.getAbsolutePath());
+        List<Path> files = new ArrayList<>();
+        collectFiles(folder, files);
+        convertInBackground(files);
+    }
+
+    private static void collectFiles(File folder, List<Path> files) {
+        File[] entries = folder.listFiles();
+        if (entries != null) {
+            for (File file : entries) {
+                if (file.isFile() && isSupported(file.toPath())) {
+                    files.add(file.toPath());
                 }
             }
         }
@@ -135,32 +152,61 @@ public class FileConverter implements ActionListener {
         if (fileExtension == null)
             throw new InvalidObjectException("file extension not found.");
 
+        convertInBackground(List.of(Paths.get(filePath)));
+    }
+
+    // Runs the conversions off the event dispatch thread and reports the outcome in a dialog
+    private void convertInBackground(List<Path> files) throws InvalidObjectException {
         String outputFormat = (String) outputFormatComboBox.getSelectedItem();
 
         if (outputFormat == null)
             throw new InvalidObjectException("output format was null.");
 
+        BatchConverter converter = new BatchConverter(outputFormat)
+                .setKeepOriginal(keepOriginalCheckBox.isSelected())
+                .setIncremental(incrementalCheckBox.isSelected())
+                .setExportOptions(new ExportOptions()
+                        .setBinaryStl(binaryStlCheckBox.isSelected())
+                        .setWeldVertices(weldCheckBox.isSelected()));
+
+        new SwingWorker<List<ConversionResult>, Void>() {
+            @Override
+            protected List<ConversionResult> doInBackground() throws Exception {
+                return converter.convertAll(files);
+            }
 
+            @Override
+            protected void done() {
+                try {
+                    showSummary(get());
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(frame, e.getMessage(), "glTF Konverter", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
 
-        Parser parser = parsers.getParser(fileExtension);
-        Exporter exporter = exporters.getExporter(outputFormat);
-
-        String outputFilePath = filePath.replace(fileExtension, outputFormat);
-        outputFilePath = insertSubfolderBeforeFile(outputFilePath, "output");
-
-        try {
-            Object3d object = parser.parse(filePath);
-            exporter.export(object, outputFilePath);
-            System.out.println("Converted file: " + outputFilePath);
-        } catch (IOException e) {
-            e.printStackTrace();
+    private void showSummary(List<ConversionResult> results) {
+        int failed = 0;
+        int skipped = 0;
+        StringBuilder errors = new StringBuilder();
+        for (ConversionResult result : results) {
+            if (result.isSkipped()) {
+                skipped++;
+            } else if (!result.isSuccess()) {
+                failed++;
+                errors.append("\n").append(result.getInput().getFileName()).append(": ").append(result.getError().getMessage());
+            }
         }
+        String message = (results.size() - failed - skipped) + " von " + results.size() + " Dateien konvertiert"
+                + (skipped > 0 ? ", " + skipped + " unverändert übersprungen" : "") + errors;
+        JOptionPane.showMessageDialog(frame, message, "glTF Konverter",
+                failed == 0 ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+    }
 
-        // Delete the original file if required
-        if (!keepOriginalCheckBox.isSelected()) {
-            File originalFile = new File(filePath);
-            originalFile.delete();
-        }
+    private static boolean isSupported(Path file) {
+        String fileExtension = getFileExtension(file.toString());
+        return fileExtension != null && Arrays.asList(SUPPORTED_FILE_EXTENSIONS).contains(fileExtension);
     }
 
     public static String insertSubfolderBeforeFile(String originalPath, String subfolderName) {
@@ -170,12 +216,7 @@ public class FileConverter implements ActionListener {
         Path newPath = subfolder.resolve(path.getFileName());
 
         try {
-            if (!Files.exists(subfolder)) {
-                Files.createDirectories(subfolder);
-                System.out.println("Directory created: " + subfolder);
-            } else {
-                System.out.println("Directory already exists: " + subfolder);
-            }
+            Files.createDirectories(subfolder);
         } catch (IOException e) {
             e.printStackTrace();
         }
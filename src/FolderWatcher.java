@@ -0,0 +1,292 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Headless daemon: watches folder trees and converts new or changed .gltf/.glb files shortly after they were written.
+// A file is picked up once it saw no events for the debounce time and its size and mtime stayed the same, so files that
+// are still being copied are not converted half written. Ready files go through a bounded queue to the conversion threads.
+public class FolderWatcher implements Closeable {
+
+    private static final Set<String> SUPPORTED_FILE_EXTENSIONS = Set.of("gltf", "glb");
+
+    // Manifests are written when the queue runs empty, or at least this often while busy
+    private static final long SAVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    // How quickly idle conversion threads notice close()
+    private static final long WORKER_POLL_MILLIS = 200;
+
+    private final BatchConverter converter;
+    private final List<Path> roots;
+    private final Duration debounce;
+    private final BlockingQueue<Path> queue;
+    private final Consumer<ConversionResult> listener;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedFolders = new HashMap<>();
+    private final Set<Path> registeredFolders = new HashSet<>();
+    private final Map<Path, Pending> pending = new HashMap<>();
+    private final Set<Path> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger converting = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean closed;
+
+    // The converter should be incremental, so rescans and restarts skip files that were already converted
+    public FolderWatcher(BatchConverter converter, List<Path> roots, Duration debounce, int queueCapacity,
+                         Consumer<ConversionResult> listener) throws IOException {
+        if (roots.isEmpty())
+            throw new IllegalArgumentException("at least one folder to watch is needed");
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("queueCapacity must be at least 1, got " + queueCapacity);
+        this.converter = converter;
+        this.roots = new ArrayList<>();
+        for (Path root : roots) {
+            this.roots.add(root.toAbsolutePath());
+        }
+        this.debounce = debounce;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    // Blocks until close() is called and the conversions in progress are done, existing files are checked first
+    public void run() throws IOException, InterruptedException {
+        for (int i = 0; i < converter.getParallelism(); i++) {
+            Thread worker = new Thread(this::convertQueued, "folder-watcher-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+
+        for (Path root : roots) {
+            registerTree(root);
+        }
+
+        long pollMillis = Math.max(50, debounce.toMillis() / 4);
+        long lastSave = System.nanoTime();
+        try {
+            while (!closed) {
+                WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handle(key);
+                    key = watchService.poll();
+                }
+                enqueueSettledFiles();
+
+                boolean idle = queue.isEmpty() && converting.get() == 0;
+                if (idle || System.nanoTime() - lastSave > SAVE_INTERVAL_NANOS) {
+                    converter.saveCaches();
+                    lastSave = System.nanoTime();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // close() was called
+        } finally {
+            // Conversions in progress finish so no output is left half written, queued files are found again on the
+            // next start
+            closed = true;
+            try {
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+            } catch (InterruptedException e) {
+                workers.forEach(Thread::interrupt);
+                Thread.currentThread().interrupt();
+            }
+            converter.saveCaches();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+    }
+
+    private void handle(WatchKey key) throws IOException {
+        Path folder = watchedFolders.get(key);
+        if (folder != null) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost, fall back to checking everything again
+                    for (Path root : roots) {
+                        registerTree(root);
+                    }
+                    continue;
+                }
+                Path path = folder.resolve((Path) event.context());
+                if (Files.isDirectory(path)) {
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE)
+                        registerTree(path);
+                } else if (isSupported(path)) {
+                    touch(path);
+                } else if (event.kind() != StandardWatchEventKinds.ENTRY_DELETE) {
+                    // A changed .bin or image may belong to any model of the folder, unchanged ones are skipped by the converter
+                    touchModelsIn(folder);
+                }
+            }
+        }
+        if (!key.reset()) {
+            // The folder is gone
+            registeredFolders.remove(watchedFolders.remove(key));
+        }
+    }
+
+    // Registers the folder and every subfolder, files already present are checked as well
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                // The converter writes into these, there is nothing to pick up
+                if (!roots.contains(dir) && (dir.getFileName().toString().equals(converter.getOutputSubfolder())
+                        || isOutputDirectory(dir)))
+                    return FileVisitResult.SKIP_SUBTREE;
+                if (registeredFolders.add(dir)) {
+                    try {
+                        WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                        watchedFolders.put(key, dir);
+                    } catch (NoSuchFileException e) {
+                        // Removed again right after it was created
+                        registeredFolders.remove(dir);
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (isSupported(file))
+                    touch(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Deleted or unreadable while walking, a later event brings it back
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private boolean isOutputDirectory(Path dir) {
+        Path outputDirectory = converter.getOutputDirectory();
+        return outputDirectory != null && dir.normalize().equals(outputDirectory.toAbsolutePath().normalize());
+    }
+
+    private void touchModelsIn(Path folder) {
+        try (var files = Files.list(folder)) {
+            files.filter(FolderWatcher::isSupported).forEach(this::touch);
+        } catch (IOException e) {
+            // The folder is gone, its key is cancelled on reset
+        }
+    }
+
+    private void touch(Path file) {
+        pending.computeIfAbsent(file, f -> new Pending()).lastEvent = System.nanoTime();
+    }
+
+    // Files that were quiet for the debounce time and did not change since the last look go to the queue
+    private void enqueueSettledFiles() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, Pending>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, Pending> entry = entries.next();
+            Path file = entry.getKey();
+            Pending state = entry.getValue();
+            if (now - state.lastEvent < debounce.toNanos())
+                continue;
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Deleted again before it settled
+                entries.remove();
+                continue;
+            }
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (size != state.size || modified != state.modified) {
+                // Still growing, look again after another debounce period
+                state.size = size;
+                state.modified = modified;
+                state.lastEvent = now;
+                continue;
+            }
+
+            // A file that is already waiting in the queue is converted with its latest content anyway
+            if (queued.add(file) && !queue.offer(file)) {
+                // Queue full: the file stays pending and is offered again on the next round
+                queued.remove(file);
+                continue;
+            }
+            entries.remove();
+        }
+    }
+
+    private void convertQueued() {
+        try {
+            while (!closed) {
+                Path file = queue.poll(WORKER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (file == null)
+                    continue;
+                converting.incrementAndGet();
+                try {
+                    queued.remove(file);
+                    ConversionResult result;
+                    try {
+                        result = converter.convert(file);
+                    } catch (RuntimeException e) {
+                        result = ConversionResult.failure(file, null, e, Duration.ZERO, 0);
+                    }
+                    try {
+                        listener.accept(result);
+                    } catch (RuntimeException e) {
+                        // A failing listener must not end the worker, the files after this one still need converting
+                    }
+                } finally {
+                    converting.decrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped without waiting for the current file
+        }
+    }
+
+    private static boolean isSupported(Path file) {
+        String fileExtension = BatchConverter.getFileExtension(file);
+        return fileExtension != null && SUPPORTED_FILE_EXTENSIONS.contains(fileExtension);
+    }
+
+    private static class Pending {
+        long lastEvent;
+        long size = -1;
+        long modified = -1;
+    }
+}
@@ -0,0 +1,31 @@
+// Bytes of heap that running conversions may claim together. A claim larger than the whole budget is granted once
+// nothing else holds any, so every file gets converted, the oversized ones alone.
+final class MemoryBudget {
+
+    private final long capacity;
+    private long used;
+
+    MemoryBudget(long capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("memory budget must be positive, got " + capacity);
+        this.capacity = capacity;
+    }
+
+    synchronized boolean tryAcquire(long bytes) {
+        if (used > 0 && used + bytes > capacity)
+            return false;
+        used += bytes;
+        return true;
+    }
+
+    synchronized void acquire(long bytes) throws InterruptedException {
+        while (!tryAcquire(bytes)) {
+            wait();
+        }
+    }
+
+    synchronized void release(long bytes) {
+        used -= bytes;
+        notifyAll();
+    }
+}
@@ -0,0 +1,87 @@
+package core;
+
+import java.util.Arrays;
+
+// Growable int array without per-element boxing
+public final class IntList {
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private int[] data;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int initialCapacity) {
+        data = new int[Math.max(initialCapacity, 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        data[index] = value;
+    }
+
+    public void add(int value) {
+        ensureCapacity(size + 1);
+        data[size++] = value;
+    }
+
+    public void add(int a, int b) {
+        ensureCapacity(size + 2);
+        data[size++] = a;
+        data[size++] = b;
+    }
+
+    public void add(int a, int b, int c) {
+        ensureCapacity(size + 3);
+        data[size++] = a;
+        data[size++] = b;
+        data[size++] = c;
+    }
+
+    public void addAll(int[] source, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(source, offset, data, size, length);
+        size += length;
+    }
+
+    // Copies length values starting at from into target
+    public void getAll(int from, int[] target, int targetOffset, int length) {
+        if (from < 0 || length < 0 || from + length > size)
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + (from + length) + ") out of bounds for size " + size);
+        System.arraycopy(data, from, target, targetOffset, length);
+    }
+
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity < 0 || minCapacity > MAX_CAPACITY)
+            throw new OutOfMemoryError("Required int capacity too large: " + minCapacity);
+        if (minCapacity > data.length) {
+            int newCapacity = data.length + (data.length >> 1);
+            if (newCapacity < minCapacity || newCapacity > MAX_CAPACITY)
+                newCapacity = Math.max(minCapacity, Math.min(newCapacity, MAX_CAPACITY));
+            data = Arrays.copyOf(data, newCapacity);
+        }
+    }
+
+    public void trimToSize() {
+        if (data.length > size)
+            data = Arrays.copyOf(data, Math.max(size, 1));
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
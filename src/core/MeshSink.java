@@ -0,0 +1,21 @@
+package core;
+
+import java.io.IOException;
+
+// Push-style receiver for mesh data, producers emit materials first and then geometry in batches.
+// Triangle indices are absolute, they refer to every vertex emitted so far.
+public interface MeshSink {
+
+    // Hint about how many more elements will follow, sinks may use it to pre-size storage
+    default void reserve(int vertexCount, int texCoordCount, int triangleCount) {
+    }
+
+    void addMaterial(Object3d.Material material) throws IOException;
+
+    // count is the number of vertices, texture coordinates or triangles in the batch
+    void addVertices(float[] xyz, int offset, int count) throws IOException;
+
+    void addTexCoords(float[] uv, int offset, int count) throws IOException;
+
+    void addTriangles(int[] indices, int offset, int count) throws IOException;
+}
@@ -1,9 +1,16 @@
 package core;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntSupplier;
 
-public class Object3d {
+public class Object3d implements MeshSink, Closeable {
 
         // Inner classes to represent different data types
     public static class Vertex {
@@ -33,39 +40,329 @@ public class Object3d {
         }
     }
 
-    // Lists to store the data
-    private List<Vertex> vertices = new ArrayList<>();
-    private List<TexCoord> texCoords = new ArrayList<>();
-    private List<Face> faces = new ArrayList<>();
+    // Values per copy when moving out of core
+    private static final int COPY_BLOCK = 1 << 16;
+
+    // Compact storage: xyz per vertex, uv per texture coordinate, three indices per triangle.
+    // Out of core the same values live in memory-mapped temporary files and the heap lists stay empty.
+    private FloatList positions = new FloatList(1024);
+    private FloatList texCoords = new FloatList(1024);
+    private IntList triangles = new IntList(1024);
+    private PagedStore pagedPositions;
+    private PagedStore pagedTexCoords;
+    private PagedStore pagedTriangles;
+
+    private final long outOfCoreThreshold;
+    private final Path spillDirectory;
+
+    // Keeps everything on the heap
+    public Object3d() {
+        this(Long.MAX_VALUE, null);
+    }
+
+    // Moves the geometry out of core once reserve() announces more than outOfCoreThreshold bytes of it.
+    // The temporary files are created in spillDirectory and deleted by close().
+    public Object3d(long outOfCoreThreshold, Path spillDirectory) {
+        this.outOfCoreThreshold = outOfCoreThreshold;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public boolean isOutOfCore() {
+        return pagedPositions != null;
+    }
 
     // Methods to add data
     public void addVertex(double x, double y, double z) {
-        vertices.add(new Vertex(x, y, z));
+        if (isOutOfCore())
+            pagedPositions.add((float) x, (float) y, (float) z);
+        else
+            positions.add((float) x, (float) y, (float) z);
     }
 
     public void addTexCoord(double u, double v) {
-        texCoords.add(new TexCoord(u, v));
+        if (isOutOfCore())
+            pagedTexCoords.add((float) u, (float) v);
+        else
+            texCoords.add((float) u, (float) v);
     }
 
+    // Faces are stored as triangles, polygons are split into a fan around the first index
     public void addFace(int... indices) {
-        faces.add(new Face(indices));
+        if (indices.length < 3)
+            throw new IllegalArgumentException("A face needs at least 3 indices, got " + indices.length);
+        for (int i = 1; i < indices.length - 1; i++) {
+            if (isOutOfCore())
+                pagedTriangles.add(indices[0], indices[i], indices[i + 1]);
+            else
+                triangles.add(indices[0], indices[i], indices[i + 1]);
+        }
+    }
+
+    // Bulk methods, count is the number of vertices, texture coordinates or triangles
+    @Override
+    public void addVertices(float[] xyz, int offset, int count) {
+        if (isOutOfCore())
+            pagedPositions.addAll(xyz, offset, count * 3);
+        else
+            positions.addAll(xyz, offset, count * 3);
+    }
+
+    @Override
+    public void addTexCoords(float[] uv, int offset, int count) {
+        if (isOutOfCore())
+            pagedTexCoords.addAll(uv, offset, count * 2);
+        else
+            texCoords.addAll(uv, offset, count * 2);
+    }
+
+    @Override
+    public void addTriangles(int[] indices, int offset, int count) {
+        if (isOutOfCore())
+            pagedTriangles.addAll(indices, offset, count * 3);
+        else
+            triangles.addAll(indices, offset, count * 3);
+    }
+
+    // Pre-sizes the storage when the final counts are known up front
+    public void ensureCapacity(int vertexCount, int texCoordCount, int triangleCount) {
+        if (isOutOfCore()) {
+            pagedPositions.ensureCapacity(vertexCount * 3);
+            pagedTexCoords.ensureCapacity(texCoordCount * 2);
+            pagedTriangles.ensureCapacity(triangleCount * 3);
+        } else {
+            positions.ensureCapacity(vertexCount * 3);
+            texCoords.ensureCapacity(texCoordCount * 2);
+            triangles.ensureCapacity(triangleCount * 3);
+        }
+    }
+
+    // Also decides whether the object goes out of core, the announced counts are the only size estimate before the
+    // data arrives
+    @Override
+    public void reserve(int vertexCount, int texCoordCount, int triangleCount) {
+        int vertexTotal = getVertexCount() + vertexCount;
+        int texCoordTotal = getTexCoordCount() + texCoordCount;
+        int triangleTotal = getTriangleCount() + triangleCount;
+        if (!isOutOfCore() && estimatedBytes(vertexTotal, texCoordTotal, triangleTotal) > outOfCoreThreshold)
+            moveOutOfCore();
+        ensureCapacity(vertexTotal, texCoordTotal, triangleTotal);
     }
 
-    // Getter methods if you need to access data
+    // Bytes of geometry storage for these counts
+    public static long estimatedBytes(long vertexCount, long texCoordCount, long triangleCount) {
+        return (vertexCount * 3 + texCoordCount * 2 + triangleCount * 3) * 4;
+    }
+
+    // Copies what was added so far into the paged files and releases the heap lists
+    private void moveOutOfCore() {
+        try {
+            pagedPositions = new PagedStore(spillDirectory);
+            pagedTexCoords = new PagedStore(spillDirectory);
+            pagedTriangles = new PagedStore(spillDirectory);
+        } catch (IOException e) {
+            closeQuietly();
+            throw new UncheckedIOException("Creating the out-of-core files in " + spillDirectory + " failed", e);
+        }
+        float[] floats = new float[COPY_BLOCK];
+        for (int first = 0; first < positions.size(); first += COPY_BLOCK) {
+            int count = Math.min(COPY_BLOCK, positions.size() - first);
+            positions.getAll(first, floats, 0, count);
+            pagedPositions.addAll(floats, 0, count);
+        }
+        for (int first = 0; first < texCoords.size(); first += COPY_BLOCK) {
+            int count = Math.min(COPY_BLOCK, texCoords.size() - first);
+            texCoords.getAll(first, floats, 0, count);
+            pagedTexCoords.addAll(floats, 0, count);
+        }
+        int[] ints = new int[COPY_BLOCK];
+        for (int first = 0; first < triangles.size(); first += COPY_BLOCK) {
+            int count = Math.min(COPY_BLOCK, triangles.size() - first);
+            triangles.getAll(first, ints, 0, count);
+            pagedTriangles.addAll(ints, 0, count);
+        }
+        positions = new FloatList(1);
+        texCoords = new FloatList(1);
+        triangles = new IntList(1);
+    }
+
+    // Drops all vertices, texture coordinates and triangles, the materials and the allocated storage are kept
+    public void clearGeometry() {
+        if (isOutOfCore()) {
+            pagedPositions.clear();
+            pagedTexCoords.clear();
+            pagedTriangles.clear();
+        } else {
+            positions.clear();
+            texCoords.clear();
+            triangles.clear();
+        }
+    }
+
+    // Deletes the out-of-core files, the geometry is gone afterwards. Does nothing for objects on the heap.
+    @Override
+    public void close() throws IOException {
+        PagedStore[] stores = {pagedPositions, pagedTexCoords, pagedTriangles};
+        pagedPositions = pagedTexCoords = pagedTriangles = null;
+        IOException failure = null;
+        for (PagedStore store : stores) {
+            try {
+                if (store != null)
+                    store.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            // Already failing, the original error is the one to report
+        }
+    }
+
+    // Replays the whole object into a sink, geometry is sent in blocks of blockSize elements
+    public void writeTo(MeshSink sink, int blockSize) throws IOException {
+        sink.reserve(getVertexCount(), getTexCoordCount(), getTriangleCount());
+        for (Material material : materials) {
+            sink.addMaterial(material);
+        }
+
+        float[] floats = new float[blockSize * 3];
+        for (int first = 0; first < getVertexCount(); first += blockSize) {
+            int count = Math.min(blockSize, getVertexCount() - first);
+            copyVertices(first, count, floats, 0);
+            sink.addVertices(floats, 0, count);
+        }
+        for (int first = 0; first < getTexCoordCount(); first += blockSize) {
+            int count = Math.min(blockSize, getTexCoordCount() - first);
+            copyTexCoords(first, count, floats, 0);
+            sink.addTexCoords(floats, 0, count);
+        }
+
+        int[] indices = new int[blockSize * 3];
+        for (int first = 0; first < getTriangleCount(); first += blockSize) {
+            int count = Math.min(blockSize, getTriangleCount() - first);
+            copyTriangles(first, count, indices, 0);
+            sink.addTriangles(indices, 0, count);
+        }
+    }
+
+    public int getVertexCount() {
+        return (isOutOfCore() ? pagedPositions.size() : positions.size()) / 3;
+    }
+
+    public int getTexCoordCount() {
+        return (isOutOfCore() ? pagedTexCoords.size() : texCoords.size()) / 2;
+    }
+
+    public int getTriangleCount() {
+        return (isOutOfCore() ? pagedTriangles.size() : triangles.size()) / 3;
+    }
+
+    public float getVertexX(int vertex) {
+        return position(vertex * 3);
+    }
+
+    public float getVertexY(int vertex) {
+        return position(vertex * 3 + 1);
+    }
+
+    public float getVertexZ(int vertex) {
+        return position(vertex * 3 + 2);
+    }
+
+    public float getTexCoordU(int texCoord) {
+        return texCoord(texCoord * 2);
+    }
+
+    public float getTexCoordV(int texCoord) {
+        return texCoord(texCoord * 2 + 1);
+    }
+
+    public int getTriangleIndex(int triangle, int corner) {
+        int index = triangle * 3 + corner;
+        return isOutOfCore() ? pagedTriangles.getInt(index) : triangles.get(index);
+    }
+
+    private float position(int index) {
+        return isOutOfCore() ? pagedPositions.getFloat(index) : positions.get(index);
+    }
+
+    private float texCoord(int index) {
+        return isOutOfCore() ? pagedTexCoords.getFloat(index) : texCoords.get(index);
+    }
+
+    // Bulk reads into caller owned arrays, first and count are in vertices, texture coordinates or triangles.
+    // Exporters read out-of-core objects this way, front to back, so the pages are touched in order.
+    public void copyVertices(int first, int count, float[] xyz, int offset) {
+        if (isOutOfCore())
+            pagedPositions.getAll(first * 3, xyz, offset, count * 3);
+        else
+            positions.getAll(first * 3, xyz, offset, count * 3);
+    }
+
+    public void copyTexCoords(int first, int count, float[] uv, int offset) {
+        if (isOutOfCore())
+            pagedTexCoords.getAll(first * 2, uv, offset, count * 2);
+        else
+            texCoords.getAll(first * 2, uv, offset, count * 2);
+    }
+
+    public void copyTriangles(int first, int count, int[] indices, int offset) {
+        if (isOutOfCore())
+            pagedTriangles.getAll(first * 3, indices, offset, count * 3);
+        else
+            triangles.getAll(first * 3, indices, offset, count * 3);
+    }
+
+    // Read-only object views, every element is created on access
     public List<Vertex> getVertices() {
-        return vertices;
+        return new View<>(this::getVertexCount) {
+            @Override
+            public Vertex get(int index) {
+                return new Vertex(getVertexX(index), getVertexY(index), getVertexZ(index));
+            }
+        };
     }
 
     public List<TexCoord> getTexCoords() {
-        return texCoords;
+        return new View<>(this::getTexCoordCount) {
+            @Override
+            public TexCoord get(int index) {
+                return new TexCoord(getTexCoordU(index), getTexCoordV(index));
+            }
+        };
     }
 
     public List<Face> getFaces() {
-        return faces;
+        return new View<>(this::getTriangleCount) {
+            @Override
+            public Face get(int index) {
+                return new Face(getTriangleIndex(index, 0), getTriangleIndex(index, 1), getTriangleIndex(index, 2));
+            }
+        };
+    }
+
+    private abstract static class View<T> extends AbstractList<T> implements RandomAccess {
+        private final IntSupplier size;
+
+        View(IntSupplier size) {
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size.getAsInt();
+        }
     }
 
     private List<Material> materials = new ArrayList<>();
 
+    @Override
     public void addMaterial(Material material) {
         materials.add(material);
     }
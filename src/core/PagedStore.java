@@ -0,0 +1,164 @@
+package core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Growable array of 32 bit values, floats or ints, kept in a memory-mapped temporary file instead of the heap.
+// The file grows in fixed-size pages that are mapped once and stay mapped, the operating system pages them in and
+// out as they are used. Sequential access is fast, random access costs a page fault when the page is not resident.
+// Mapping failures are thrown as UncheckedIOException, the list interfaces this replaces have no checked exceptions.
+public final class PagedStore implements Closeable {
+
+    // 4 MiB pages, 1M values each
+    private static final int PAGE_SHIFT = 20;
+    private static final int PAGE_VALUES = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_VALUES - 1;
+    private static final long PAGE_BYTES = (long) PAGE_VALUES * Integer.BYTES;
+
+    private final FileChannel channel;
+    private final List<FloatBuffer> floatPages = new ArrayList<>();
+    private final List<IntBuffer> intPages = new ArrayList<>();
+    private int size;
+
+    // The file is created in directory and deleted on close
+    public PagedStore(Path directory) throws IOException {
+        Path file = Files.createTempFile(directory, "gltf-konverter-", ".pages");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float getFloat(int index) {
+        checkIndex(index);
+        return floatPages.get(index >>> PAGE_SHIFT).get(index & PAGE_MASK);
+    }
+
+    public int getInt(int index) {
+        checkIndex(index);
+        return intPages.get(index >>> PAGE_SHIFT).get(index & PAGE_MASK);
+    }
+
+    public void add(float a, float b) {
+        ensureCapacity(size + 2);
+        putFloat(size++, a);
+        putFloat(size++, b);
+    }
+
+    public void add(float a, float b, float c) {
+        ensureCapacity(size + 3);
+        putFloat(size++, a);
+        putFloat(size++, b);
+        putFloat(size++, c);
+    }
+
+    public void add(int a, int b, int c) {
+        ensureCapacity(size + 3);
+        putInt(size++, a);
+        putInt(size++, b);
+        putInt(size++, c);
+    }
+
+    // Bulk copies run page by page
+    public void addAll(float[] source, int offset, int length) {
+        ensureCapacity(size + length);
+        for (int done = 0; done < length; ) {
+            int index = size + done;
+            int count = Math.min(length - done, PAGE_VALUES - (index & PAGE_MASK));
+            floatPages.get(index >>> PAGE_SHIFT).put(index & PAGE_MASK, source, offset + done, count);
+            done += count;
+        }
+        size += length;
+    }
+
+    public void addAll(int[] source, int offset, int length) {
+        ensureCapacity(size + length);
+        for (int done = 0; done < length; ) {
+            int index = size + done;
+            int count = Math.min(length - done, PAGE_VALUES - (index & PAGE_MASK));
+            intPages.get(index >>> PAGE_SHIFT).put(index & PAGE_MASK, source, offset + done, count);
+            done += count;
+        }
+        size += length;
+    }
+
+    public void getAll(int from, float[] target, int targetOffset, int length) {
+        checkRange(from, length);
+        for (int done = 0; done < length; ) {
+            int index = from + done;
+            int count = Math.min(length - done, PAGE_VALUES - (index & PAGE_MASK));
+            floatPages.get(index >>> PAGE_SHIFT).get(index & PAGE_MASK, target, targetOffset + done, count);
+            done += count;
+        }
+    }
+
+    public void getAll(int from, int[] target, int targetOffset, int length) {
+        checkRange(from, length);
+        for (int done = 0; done < length; ) {
+            int index = from + done;
+            int count = Math.min(length - done, PAGE_VALUES - (index & PAGE_MASK));
+            intPages.get(index >>> PAGE_SHIFT).get(index & PAGE_MASK, target, targetOffset + done, count);
+            done += count;
+        }
+    }
+
+    // Maps pages until minCapacity values fit, mapping past the end of the file grows it
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity < 0)
+            throw new OutOfMemoryError("Required capacity too large: " + minCapacity);
+        try {
+            while ((long) floatPages.size() * PAGE_VALUES < minCapacity) {
+                ByteBuffer page = channel.map(FileChannel.MapMode.READ_WRITE, floatPages.size() * PAGE_BYTES, PAGE_BYTES)
+                        .order(ByteOrder.nativeOrder());
+                floatPages.add(page.asFloatBuffer());
+                intPages.add(page.asIntBuffer());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Mapping a page of mesh data failed", e);
+        }
+    }
+
+    // The pages stay mapped and are reused
+    public void clear() {
+        size = 0;
+    }
+
+    // Deletes the file. The mappings are released once they are garbage collected, the store must not be used anymore.
+    @Override
+    public void close() throws IOException {
+        floatPages.clear();
+        intPages.clear();
+        size = 0;
+        channel.close();
+    }
+
+    private void putFloat(int index, float value) {
+        floatPages.get(index >>> PAGE_SHIFT).put(index & PAGE_MASK, value);
+    }
+
+    private void putInt(int index, int value) {
+        intPages.get(index >>> PAGE_SHIFT).put(index & PAGE_MASK, value);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+    }
+
+    private void checkRange(int from, int length) {
+        if (from < 0 || length < 0 || from + length > size)
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + (from + length) + ") out of bounds for size " + size);
+    }
+}
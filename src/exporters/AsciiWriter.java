@@ -0,0 +1,344 @@
+package exporters;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Formats text and numbers as ASCII straight into a reusable byte buffer, numbers are written without allocating
+public final class AsciiWriter implements Closeable {
+
+    // Pass as decimals to write the shortest decimal that reads back as the same float
+    public static final int SHORTEST = -1;
+
+    private static final int MAX_DECIMALS = 9;
+    private static final long[] POWERS_OF_TEN = new long[19];
+    private static final double[] DOUBLE_POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+        DOUBLE_POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < DOUBLE_POWERS_OF_TEN.length; i++) {
+            DOUBLE_POWERS_OF_TEN[i] = DOUBLE_POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // null for a writer that collects everything in memory
+    private final OutputStream out;
+    private byte[] buffer;
+    private final int decimals;
+    private int position;
+
+    // decimals is either SHORTEST or the number of fixed decimals (0 to 9) used for floating point values
+    public AsciiWriter(OutputStream out, int bufferSize, int decimals) {
+        if (decimals != SHORTEST && (decimals < 0 || decimals > MAX_DECIMALS))
+            throw new IllegalArgumentException("decimals must be SHORTEST or between 0 and " + MAX_DECIMALS + ", got " + decimals);
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 64)];
+        this.decimals = decimals;
+    }
+
+    // Collects the text in a growing buffer instead of writing it anywhere, see contents()
+    public static AsciiWriter inMemory(int initialSize, int decimals) {
+        return new AsciiWriter(null, initialSize, decimals);
+    }
+
+    // Everything written to an in-memory writer so far, shares the buffer until the next write or reset()
+    public ByteBuffer contents() {
+        return ByteBuffer.wrap(buffer, 0, position);
+    }
+
+    public int size() {
+        return position;
+    }
+
+    // Starts an in-memory writer over, the buffer is kept
+    public void reset() {
+        position = 0;
+    }
+
+    public AsciiWriter write(String text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                // Rare non-ASCII text such as file names, encoded as UTF-8
+                write(text.substring(i).getBytes(StandardCharsets.UTF_8));
+                return this;
+            }
+            if (position == buffer.length)
+                makeRoom(1);
+            buffer[position++] = (byte) c;
+        }
+        return this;
+    }
+
+    public AsciiWriter write(char c) throws IOException {
+        if (position == buffer.length)
+            makeRoom(1);
+        buffer[position++] = (byte) c;
+        return this;
+    }
+
+    public AsciiWriter write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            makeRoom(bytes.length);
+            if (bytes.length > buffer.length - position) {
+                out.write(bytes);
+                return this;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+        return this;
+    }
+
+    public AsciiWriter write(int value) throws IOException {
+        return write((long) value);
+    }
+
+    public AsciiWriter write(long value) throws IOException {
+        ensureRoom(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE)
+                return write(Long.toString(value));
+            buffer[position++] = '-';
+            value = -value;
+        }
+        writeDigits(value, 1);
+        return this;
+    }
+
+    // Floating point values use the configured precision
+    public AsciiWriter write(float value) throws IOException {
+        if (decimals == SHORTEST)
+            writeShortest(value);
+        else
+            writeFixed(value, decimals);
+        return this;
+    }
+
+    // Doubles that hold a float are formatted exactly like that float
+    public AsciiWriter write(double value) throws IOException {
+        if ((double) (float) value == value)
+            return write((float) value);
+        if (decimals == SHORTEST)
+            return write(Double.toString(value));
+        writeFixed(value, decimals);
+        return this;
+    }
+
+    public void flush() throws IOException {
+        if (out == null)
+            return;
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out == null)
+            return;
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (buffer.length - position < bytes)
+            makeRoom(bytes);
+    }
+
+    // Empties the buffer into the stream, or grows it when there is no stream
+    private void makeRoom(int bytes) throws IOException {
+        if (out != null) {
+            flushBuffer();
+        } else {
+            long capacity = Math.max(buffer.length * 2L, (long) position + bytes);
+            if (capacity > Integer.MAX_VALUE - 8)
+                throw new OutOfMemoryError("In-memory text too large: " + capacity + " bytes");
+            buffer = Arrays.copyOf(buffer, (int) capacity);
+        }
+    }
+
+    // Writes value with at least minDigits digits, zero padded on the left
+    private void writeDigits(long value, int minDigits) {
+        int digits = 1;
+        while (digits < 19 && value >= POWERS_OF_TEN[digits]) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private boolean writeSpecial(double value) throws IOException {
+        if (Double.isNaN(value)) {
+            write("NaN");
+            return true;
+        }
+        if (Double.isInfinite(value)) {
+            write(value > 0 ? "Infinity" : "-Infinity");
+            return true;
+        }
+        return false;
+    }
+
+    // Same output as String.format("%.<decimals>f"), rounding half up on the exact binary value
+    private void writeFixed(float value, int decimals) throws IOException {
+        if (writeSpecial(value))
+            return;
+        if (Math.abs(value) >= 1e17f) {
+            writeFixed((double) value, decimals);
+            return;
+        }
+
+        int bits = Float.floatToRawIntBits(value);
+        boolean negative = bits < 0;
+        int exponentBits = (bits >>> 23) & 0xFF;
+        long mantissa = bits & 0x7FFFFF;
+        int exponent;
+        if (exponentBits == 0) {
+            exponent = -149;
+        } else {
+            mantissa |= 0x800000;
+            exponent = exponentBits - 150;
+        }
+
+        // |value| * 10^decimals = mantissa * 10^decimals * 2^exponent, exact while it fits into a long
+        long scaled = mantissa * POWERS_OF_TEN[decimals];
+        long rounded;
+        if (exponent >= 0) {
+            if (exponent > Long.numberOfLeadingZeros(scaled) - 2) {
+                writeFixed((double) value, decimals);
+                return;
+            }
+            rounded = scaled << exponent;
+        } else if (-exponent >= 62) {
+            rounded = 0;
+        } else {
+            int shift = -exponent;
+            rounded = scaled >>> shift;
+            if (((scaled >>> (shift - 1)) & 1) != 0)
+                rounded++;
+        }
+        writeScaled(negative, rounded, decimals);
+    }
+
+    private void writeFixed(double value, int decimals) throws IOException {
+        if (writeSpecial(value))
+            return;
+        boolean negative = Double.doubleToRawLongBits(value) < 0;
+        double scaled = Math.abs(value) * DOUBLE_POWERS_OF_TEN[decimals];
+        long rounded = (long) scaled;
+        double fraction = scaled - rounded;
+        // String.format rounds the shortest decimal of the value half up. That agrees with rounding scaled unless
+        // scaled lost integer digits or lies within its rounding error of a tie, both rare enough to leave to the JDK.
+        if (scaled >= 0x1p52 || Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled)) {
+            write(String.format(Locale.ROOT, "%." + decimals + "f", value));
+            return;
+        }
+        if (fraction > 0.5)
+            rounded++;
+        writeScaled(negative, rounded, decimals);
+    }
+
+    private void writeScaled(boolean negative, long rounded, int decimals) throws IOException {
+        ensureRoom(32);
+        if (negative)
+            buffer[position++] = '-';
+        writeDigits(rounded / POWERS_OF_TEN[decimals], 1);
+        if (decimals > 0) {
+            buffer[position++] = '.';
+            writeDigits(rounded % POWERS_OF_TEN[decimals], decimals);
+        }
+    }
+
+    // Shortest decimal that reads back as exactly this float, without an exponent
+    private void writeShortest(float value) throws IOException {
+        if (writeSpecial(value))
+            return;
+        ensureRoom(64);
+        if (Float.floatToRawIntBits(value) < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        if (value == 0) {
+            buffer[position++] = '0';
+            return;
+        }
+        if (value < 1e-9f || value >= 1e9f) {
+            // Outside the range the double arithmetic below handles exactly
+            write(Float.toString(value));
+            return;
+        }
+
+        // Rounding interval of the float, every decimal strictly inside it reads back as value
+        double exact = value;
+        double lower = (exact + Math.nextDown(value)) / 2;
+        double upper = (exact + Math.nextUp(value)) / 2;
+
+        int magnitude = (int) Math.floor(Math.log10(exact));
+        for (int digits = 1; digits <= 9; digits++) {
+            // Candidates digits * 10^power with the given number of significant digits, nearest first
+            int power = magnitude - digits + 1;
+            long nearest = Math.round(power < 0 ? exact * DOUBLE_POWERS_OF_TEN[-power] : exact / DOUBLE_POWERS_OF_TEN[power]);
+            if (tryPlain(nearest, power, lower, upper)
+                    || tryPlain(nearest - 1, power, lower, upper)
+                    || tryPlain(nearest + 1, power, lower, upper))
+                return;
+        }
+        write(Float.toString(value));
+    }
+
+    // The double arithmetic is exact enough here: digits < 10^10 and |power| <= 18 keep both operands exact,
+    // and a correctly rounded result strictly inside the interval implies the exact decimal is inside too
+    private boolean tryPlain(long digits, int power, double lower, double upper) {
+        if (digits <= 0)
+            return false;
+        double decimal = power < 0 ? digits / DOUBLE_POWERS_OF_TEN[-power] : digits * DOUBLE_POWERS_OF_TEN[power];
+        if (decimal <= lower || decimal >= upper)
+            return false;
+        writePlain(digits, power);
+        return true;
+    }
+
+    // Writes digits * 10^power in plain decimal notation without trailing zeros
+    private void writePlain(long digits, int power) {
+        while (digits % 10 == 0) {
+            digits /= 10;
+            power++;
+        }
+        if (power >= 0) {
+            writeDigits(digits, 1);
+            for (int i = 0; i < power; i++) {
+                buffer[position++] = '0';
+            }
+            return;
+        }
+        int fractionDigits = -power;
+        writeDigits(digits / POWERS_OF_TEN[fractionDigits], 1);
+        buffer[position++] = '.';
+        long fraction = digits % POWERS_OF_TEN[fractionDigits];
+        writeDigits(fraction, fractionDigits);
+    }
+}
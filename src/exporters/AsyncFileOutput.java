@@ -0,0 +1,211 @@
+package exporters;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Output file that is filled through one buffer while the buffers filled before it are written in the background.
+// Every buffer is written at its own file position, so writes may complete in any order. With two buffers encoding
+// and writing overlap completely, more buffers absorb uneven write latencies as on network filesystems. A single
+// buffer makes every write wait for the one before, like a plain buffered stream.
+public final class AsyncFileOutput extends ExportOutput {
+
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(new WriterThreadFactory());
+
+    private final String outputPath;
+    private final AsynchronousFileChannel channel;
+    private final int bufferCount;
+    private final BlockingQueue<ByteBuffer> free;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private ByteBuffer current;
+    // File position of the first byte in current
+    private long position;
+    private boolean closed;
+
+    public AsyncFileOutput(String outputPath, int bufferSize, int bufferCount) throws IOException {
+        if (bufferSize < 64)
+            throw new IllegalArgumentException("bufferSize must be at least 64, got " + bufferSize);
+        if (bufferCount < 1)
+            throw new IllegalArgumentException("bufferCount must be at least 1, got " + bufferCount);
+        this.outputPath = outputPath;
+        this.channel = AsynchronousFileChannel.open(Paths.get(outputPath), Set.of(StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), WRITERS);
+        this.bufferCount = bufferCount;
+        this.free = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 1; i < bufferCount; i++) {
+            free.add(newBuffer(bufferSize));
+        }
+        current = newBuffer(bufferSize);
+    }
+
+    // Little-endian and direct, binary writers put their values straight into it
+    private static ByteBuffer newBuffer(int bufferSize) {
+        return ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public ByteBuffer buffer(int bytes) throws IOException {
+        if (bytes > current.capacity())
+            throw new IllegalArgumentException("At most " + current.capacity() + " bytes fit into a buffer, got " + bytes);
+        if (current.remaining() < bytes)
+            submit();
+        return current;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer(1).put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!current.hasRemaining())
+                submit();
+            int count = Math.min(length, current.remaining());
+            current.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            if (!current.hasRemaining())
+                submit();
+            int count = Math.min(source.remaining(), current.remaining());
+            ByteBuffer part = source.duplicate();
+            part.limit(part.position() + count);
+            current.put(part);
+            source.position(source.position() + count);
+        }
+    }
+
+    // Bytes written so far, the file position of the next byte
+    public long size() {
+        return position + current.position();
+    }
+
+    // Waits until everything written so far is in the file, reports a failed write
+    @Override
+    public void flush() throws IOException {
+        if (current.position() > 0)
+            submit();
+        // Every buffer but current is back once no write is pending
+        ByteBuffer[] returned = new ByteBuffer[bufferCount - 1];
+        for (int i = 0; i < returned.length; i++) {
+            returned[i] = take();
+        }
+        for (ByteBuffer buffer : returned) {
+            free.add(buffer);
+        }
+        checkFailure();
+    }
+
+    // Overwrites bytes that were already written, e.g. a count in a header. Flushes first.
+    public void writeAt(ByteBuffer source, long filePosition) throws IOException {
+        flush();
+        try {
+            while (source.hasRemaining()) {
+                filePosition += channel.write(source, filePosition).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + outputPath);
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Hands current to the background and continues with the next free buffer, which may mean waiting for a write
+    private void submit() throws IOException {
+        checkFailure();
+        ByteBuffer buffer = current;
+        buffer.flip();
+        long filePosition = position;
+        position += buffer.remaining();
+        writeInBackground(buffer, filePosition);
+        current = take();
+    }
+
+    private void writeInBackground(ByteBuffer buffer, long filePosition) {
+        channel.write(buffer, filePosition, filePosition, new CompletionHandler<>() {
+            @Override
+            public void completed(Integer written, Long start) {
+                // Partial writes continue where they stopped
+                if (buffer.hasRemaining()) {
+                    writeInBackground(buffer, start + written);
+                    return;
+                }
+                buffer.clear();
+                free.add(buffer);
+            }
+
+            @Override
+            public void failed(Throwable exception, Long start) {
+                failure.compareAndSet(null, exception);
+                buffer.clear();
+                free.add(buffer);
+            }
+        });
+    }
+
+    private ByteBuffer take() throws IOException {
+        try {
+            return free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + outputPath);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable exception = failure.get();
+        if (exception != null)
+            throw asIOException(exception);
+    }
+
+    private IOException asIOException(Throwable exception) {
+        if (exception instanceof IOException)
+            return (IOException) exception;
+        return new IOException("Writing " + outputPath + " failed", exception);
+    }
+
+    private static class WriterThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "output-writer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package exporters;
+
+import core.Object3d;
+
+import java.io.IOException;
+
+// Fallback for formats that need the whole mesh up front, collects everything and exports on finish
+class BufferedExportSink implements ExportSink {
+
+    private final Exporter exporter;
+    private final String outputPath;
+    private Object3d object;
+
+    BufferedExportSink(Exporter exporter, String outputPath) {
+        this(exporter, outputPath, new ExportOptions());
+    }
+
+    // Large meshes go out of core as configured in options
+    BufferedExportSink(Exporter exporter, String outputPath, ExportOptions options) {
+        this.exporter = exporter;
+        this.outputPath = outputPath;
+        this.object = new Object3d(options.getOutOfCoreThreshold(), options.getSpillDirectory());
+    }
+
+    @Override
+    public void reserve(int vertexCount, int texCoordCount, int triangleCount) {
+        object.reserve(vertexCount, texCoordCount, triangleCount);
+    }
+
+    @Override
+    public void addMaterial(Object3d.Material material) {
+        object.addMaterial(material);
+    }
+
+    @Override
+    public void addVertices(float[] xyz, int offset, int count) {
+        object.addVertices(xyz, offset, count);
+    }
+
+    @Override
+    public void addTexCoords(float[] uv, int offset, int count) {
+        object.addTexCoords(uv, offset, count);
+    }
+
+    @Override
+    public void addTriangles(int[] indices, int offset, int count) {
+        object.addTriangles(indices, offset, count);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        exporter.export(object, outputPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            object.close();
+        } finally {
+            object = null;
+        }
+    }
+}
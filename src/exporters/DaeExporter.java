@@ -2,19 +2,43 @@ package exporters;
 
 import core.Object3d;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 public class DaeExporter implements Exporter {
 
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ExportOptions options;
+
+    public DaeExporter() {
+        this(new ExportOptions());
+    }
+
+    public DaeExporter(ExportOptions options) {
+        this.options = options;
+    }
+
+    // The whole mesh is needed for the counts in the markup, it is collected first
+    @Override
+    public ExportSink open(String outputPath) {
+        return new BufferedExportSink(this, outputPath, options);
+    }
+
     @Override
-    public void export(Object3d object, String outputPath) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
+    public void export(Object3d object, String outputPath) throws IOException {
+        int decimals = options.getDecimals(6);
+        // In parallel mode writer only collects the markup, the number lists are encoded as chunks on worker threads
+        try (TextureWriter textures = new TextureWriter();
+             ParallelTextWriter parallel = options.getEncodingThreads() > 1
+                     ? new ParallelTextWriter(ExportOutput.open(outputPath, options), options.getEncodingThreads(), decimals) : null;
+             AsciiWriter writer = parallel != null
+                     ? parallel.text() : new AsciiWriter(ExportOutput.open(outputPath, options), BUFFER_SIZE, decimals)) {
             Path baseOutputPath = Paths.get(outputPath).getParent();
+            // Texture names carry the model name so models sharing an output folder don't overwrite each other
+            String modelName = Paths.get(outputPath).getFileName().toString().replaceFirst("\\.dae(\\.gz)?$", "");
             writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
             writer.write("<COLLADA xmlns=\"http://www.collada.org/2005/11/COLLADASchema\" version=\"1.4.1\">\n");
 
@@ -23,60 +47,15 @@ public class DaeExporter implements Exporter {
             writer.write("  </asset>\n");
 
 
-// Library Images (for textures)
+// Library Images (for textures), the files are written in the background while the geometry follows
             writer.write("  <library_images>\n");
             for (int i = 0; i < object.getMaterials().size(); i++) {
                 Object3d.Material material = object.getMaterials().get(i);
-
-                if (material.baseColorTexture != null) {
-                    String textureFileName = "baseColorTexture_" + i + ".png"; // Assuming PNG format
-                    Path texturePath = baseOutputPath.resolve(textureFileName);
-                    Files.write(texturePath, material.baseColorTexture);
-
-                    writer.write("    <image id=\"baseColorTexture-" + i + "-image\">\n");
-                    writer.write("      <init_from>" + textureFileName + "</init_from>\n");
-                    writer.write("    </image>\n");
-                }
-
-                if (material.metallicRoughness != null) {
-                    String textureFileName = "metallicRoughness_" + i + ".png"; // Assuming PNG format
-                    Path texturePath = baseOutputPath.resolve(textureFileName);
-                    Files.write(texturePath, material.metallicRoughness);
-
-                    writer.write("    <image id=\"metallicRoughness-" + i + "-image\">\n");
-                    writer.write("      <init_from>" + textureFileName + "</init_from>\n");
-                    writer.write("    </image>\n");
-                }
-
-                if (material.normalTexture != null) {
-                    String textureFileName = "normalTexture_" + i + ".png"; // Assuming PNG format
-                    Path texturePath = baseOutputPath.resolve(textureFileName);
-                    Files.write(texturePath, material.normalTexture);
-
-                    writer.write("    <image id=\"normalTexture-" + i + "-image\">\n");
-                    writer.write("      <init_from>" + textureFileName + "</init_from>\n");
-                    writer.write("    </image>\n");
-                }
-
-                if (material.occlusionTexture != null) {
-                    String textureFileName = "occlusionTexture_" + i + ".png"; // Assuming PNG format
-                    Path texturePath = baseOutputPath.resolve(textureFileName);
-                    Files.write(texturePath, material.occlusionTexture);
-
-                    writer.write("    <image id=\"occlusionTexture-" + i + "-image\">\n");
-                    writer.write("      <init_from>" + textureFileName + "</init_from>\n");
-                    writer.write("    </image>\n");
-                }
-
-                if (material.emissiveTexture != null) {
-                    String textureFileName = "emissiveTexture_" + i + ".png"; // Assuming PNG format
-                    Path texturePath = baseOutputPath.resolve(textureFileName);
-                    Files.write(texturePath, material.emissiveTexture);
-
-                    writer.write("    <image id=\"emissiveTexture-" + i + "-image\">\n");
-                    writer.write("      <init_from>" + textureFileName + "</init_from>\n");
-                    writer.write("    </image>\n");
-                }
+                writeImage(writer, textures, baseOutputPath, modelName, "baseColorTexture", i, material.baseColorTexture);
+                writeImage(writer, textures, baseOutputPath, modelName, "metallicRoughness", i, material.metallicRoughness);
+                writeImage(writer, textures, baseOutputPath, modelName, "normalTexture", i, material.normalTexture);
+                writeImage(writer, textures, baseOutputPath, modelName, "occlusionTexture", i, material.occlusionTexture);
+                writeImage(writer, textures, baseOutputPath, modelName, "emissiveTexture", i, material.emissiveTexture);
             }
             writer.write("  </library_images>\n");
 
@@ -121,13 +100,20 @@ public class DaeExporter implements Exporter {
             writer.write("      <mesh>\n");
 
             writer.write("        <source id=\"object-positions\">\n");
-            writer.write("          <float_array id=\"object-positions-array\" count=\"" + (object.getVertices().size() * 3) + "\">");
-            for (Object3d.Vertex vertex : object.getVertices()) {
-                writer.write(String.format("%.6f %.6f %.6f ", vertex.x, vertex.y, vertex.z));
+            writer.write("          <float_array id=\"object-positions-array\" count=\"" + (object.getVertexCount() * 3) + "\">");
+            float[] xyz = new float[BLOCK_SIZE * 3];
+            int vertexCount = object.getVertexCount();
+            for (int first = 0; first < vertexCount; first += BLOCK_SIZE) {
+                int block = first;
+                int count = Math.min(BLOCK_SIZE, vertexCount - first);
+                if (parallel != null)
+                    parallel.submit(out -> writePositions(out, object, block, count, new float[count * 3]));
+                else
+                    writePositions(writer, object, block, count, xyz);
             }
             writer.write("</float_array>\n");
             writer.write("          <technique_common>\n");
-            writer.write("            <accessor source=\"#object-positions-array\" count=\"" + object.getVertices().size() + "\" stride=\"3\">\n");
+            writer.write("            <accessor source=\"#object-positions-array\" count=\"" + object.getVertexCount() + "\" stride=\"3\">\n");
             writer.write("              <param name=\"X\" type=\"float\"/>\n");
             writer.write("              <param name=\"Y\" type=\"float\"/>\n");
             writer.write("              <param name=\"Z\" type=\"float\"/>\n");
@@ -139,13 +125,18 @@ public class DaeExporter implements Exporter {
             writer.write("          <input semantic=\"POSITION\" source=\"#object-positions\"/>\n");
             writer.write("        </vertices>\n");
 
-            writer.write("        <triangles count=\"" + object.getFaces().size() + "\">\n");
+            writer.write("        <triangles count=\"" + object.getTriangleCount() + "\">\n");
             writer.write("          <input semantic=\"VERTEX\" source=\"#object-vertices\" offset=\"0\"/>\n");
             writer.write("          <p>");
-            for (Object3d.Face face : object.getFaces()) {
-                for (int index : face.indices) {
-                    writer.write(index + " ");
-                }
+            int[] indices = new int[BLOCK_SIZE * 3];
+            int triangleCount = object.getTriangleCount();
+            for (int first = 0; first < triangleCount; first += BLOCK_SIZE) {
+                int block = first;
+                int count = Math.min(BLOCK_SIZE, triangleCount - first);
+                if (parallel != null)
+                    parallel.submit(out -> writeIndices(out, object, block, count, new int[count * 3]));
+                else
+                    writeIndices(writer, object, block, count, indices);
             }
             writer.write("</p>\n");
             writer.write("        </triangles>\n");
@@ -176,8 +167,38 @@ public class DaeExporter implements Exporter {
             writer.write("  </scene>\n");
 
             writer.write("</COLLADA>\n");
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (parallel != null)
+                parallel.finish();
+            else
+                writer.flush();
+            textures.await();
         }
     }
+
+    private static void writePositions(AsciiWriter out, Object3d object, int first, int count, float[] xyz) throws IOException {
+        object.copyVertices(first, count, xyz, 0);
+        for (int i = 0; i < count * 3; i += 3) {
+            out.write(xyz[i]).write(' ').write(xyz[i + 1]).write(' ').write(xyz[i + 2]).write(' ');
+        }
+    }
+
+    private static void writeIndices(AsciiWriter out, Object3d object, int first, int count, int[] indices) throws IOException {
+        object.copyTriangles(first, count, indices, 0);
+        for (int i = 0; i < count * 3; i++) {
+            out.write(indices[i]).write(' ');
+        }
+    }
+
+    // Identical images are written once, every image element referencing them points to that file
+    private static void writeImage(AsciiWriter writer, TextureWriter textures, Path baseOutputPath, String modelName,
+                                   String kind, int materialIndex, byte[] image) throws IOException {
+        if (image == null)
+            return;
+        String textureFileName = modelName + "_" + kind + "_" + materialIndex + ".png"; // Assuming PNG format
+        Path texturePath = textures.write(image, baseOutputPath.resolve(textureFileName));
+
+        writer.write("    <image id=\"" + kind + "-" + materialIndex + "-image\">\n");
+        writer.write("      <init_from>" + texturePath.getFileName() + "</init_from>\n");
+        writer.write("    </image>\n");
+    }
 }
@@ -0,0 +1,217 @@
+package exporters;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Settings shared by the exporters, the defaults reproduce the classic output
+public class ExportOptions {
+
+    private boolean binaryStl = false;
+    private Integer decimals = null;
+    private boolean weldVertices = false;
+    private float weldTolerance = 0;
+    private float decimationRatio = 1;
+    private int decimationTarget = 0;
+    private int lodLevels = 0;
+    private int encodingThreads = 1;
+    private boolean quantize = false;
+    // A quarter of the heap leaves room for the parser's buffers and the exporter
+    private long outOfCoreThreshold = Runtime.getRuntime().maxMemory() / 4;
+    private Path spillDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+    private int outputBufferSize = 1 << 20;
+    private int outputBufferCount = 2;
+    private boolean gzip = false;
+
+    public boolean isBinaryStl() {
+        return binaryStl;
+    }
+
+    // Binary STL is about five times smaller than ASCII and much faster to write
+    public ExportOptions setBinaryStl(boolean binaryStl) {
+        this.binaryStl = binaryStl;
+        return this;
+    }
+
+    // Decimals for floating point values in text formats, AsciiWriter.SHORTEST writes the shortest exact form
+    public ExportOptions setDecimals(int decimals) {
+        if (decimals != AsciiWriter.SHORTEST && (decimals < 0 || decimals > 9))
+            throw new IllegalArgumentException("decimals must be AsciiWriter.SHORTEST or between 0 and 9, got " + decimals);
+        this.decimals = decimals;
+        return this;
+    }
+
+    // The configured decimals, or the format's own default when none were set
+    public int getDecimals(int formatDefault) {
+        return decimals != null ? decimals : formatDefault;
+    }
+
+    public boolean isWeldVertices() {
+        return weldVertices;
+    }
+
+    // Merges duplicate vertices and drops the ones no triangle uses before the mesh is written
+    public ExportOptions setWeldVertices(boolean weldVertices) {
+        this.weldVertices = weldVertices;
+        return this;
+    }
+
+    public float getWeldTolerance() {
+        return weldTolerance;
+    }
+
+    // 0 welds only exactly equal vertices, larger values merge positions and texture coordinates on a grid of this size
+    public ExportOptions setWeldTolerance(float weldTolerance) {
+        if (!(weldTolerance >= 0) || Float.isInfinite(weldTolerance))
+            throw new IllegalArgumentException("weldTolerance must be a finite value of at least 0, got " + weldTolerance);
+        this.weldTolerance = weldTolerance;
+        return this;
+    }
+
+    public boolean isDecimating() {
+        return decimationRatio < 1 || decimationTarget > 0;
+    }
+
+    // Keeps this share of the triangles, replaces a target set with setDecimationTarget
+    public ExportOptions setDecimationRatio(float decimationRatio) {
+        if (!(decimationRatio > 0 && decimationRatio <= 1))
+            throw new IllegalArgumentException("decimationRatio must be above 0 and at most 1, got " + decimationRatio);
+        this.decimationRatio = decimationRatio;
+        this.decimationTarget = 0;
+        return this;
+    }
+
+    // Reduces every mesh to at most this many triangles, replaces a ratio set with setDecimationRatio
+    public ExportOptions setDecimationTarget(int decimationTarget) {
+        if (decimationTarget < 1)
+            throw new IllegalArgumentException("decimationTarget must be at least 1, got " + decimationTarget);
+        this.decimationTarget = decimationTarget;
+        this.decimationRatio = 1;
+        return this;
+    }
+
+    // Triangles left after decimating a mesh with triangleCount triangles
+    public int getTargetTriangles(int triangleCount) {
+        if (decimationTarget > 0)
+            return Math.min(decimationTarget, triangleCount);
+        return (int) Math.round(triangleCount * (double) decimationRatio);
+    }
+
+    public int getLodLevels() {
+        return lodLevels;
+    }
+
+    // Writes this many extra levels of detail next to every output, see getLodRatio
+    public ExportOptions setLodLevels(int lodLevels) {
+        if (lodLevels < 0 || lodLevels > 8)
+            throw new IllegalArgumentException("lodLevels must be between 0 and 8, got " + lodLevels);
+        this.lodLevels = lodLevels;
+        return this;
+    }
+
+    // Every level keeps this share of the triangles of the level before: the decimation ratio, or half without one
+    public float getLodRatio() {
+        return decimationRatio < 1 ? decimationRatio : 0.5f;
+    }
+
+    public int getEncodingThreads() {
+        return encodingThreads;
+    }
+
+    // Above 1, OBJ and DAE text is formatted in chunks on up to this many threads of a pool with one per core, the bytes
+    // are the same as with 1
+    public ExportOptions setEncodingThreads(int encodingThreads) {
+        if (encodingThreads < 1)
+            throw new IllegalArgumentException("encodingThreads must be at least 1, got " + encodingThreads);
+        this.encodingThreads = encodingThreads;
+        return this;
+    }
+
+    public boolean isQuantize() {
+        return quantize;
+    }
+
+    // GLB only: positions and texture coordinates become normalized 16 bit integers under KHR_mesh_quantization
+    public ExportOptions setQuantize(boolean quantize) {
+        this.quantize = quantize;
+        return this;
+    }
+
+    public long getOutOfCoreThreshold() {
+        return outOfCoreThreshold;
+    }
+
+    // Meshes whose announced geometry takes more bytes than this are kept in memory-mapped temporary files instead
+    // of the heap, 0 keeps every mesh out of core and Long.MAX_VALUE none
+    public ExportOptions setOutOfCoreThreshold(long outOfCoreThreshold) {
+        if (outOfCoreThreshold < 0)
+            throw new IllegalArgumentException("outOfCoreThreshold must be at least 0, got " + outOfCoreThreshold);
+        this.outOfCoreThreshold = outOfCoreThreshold;
+        return this;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    // Where out-of-core meshes are kept, the default temporary folder is often a RAM disk in containers
+    public ExportOptions setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
+    public int getOutputBufferSize() {
+        return outputBufferSize;
+    }
+
+    // Bytes per output buffer, every output file holds outputBufferCount of them
+    public ExportOptions setOutputBufferSize(int outputBufferSize) {
+        if (outputBufferSize < 4096)
+            throw new IllegalArgumentException("outputBufferSize must be at least 4096, got " + outputBufferSize);
+        this.outputBufferSize = outputBufferSize;
+        return this;
+    }
+
+    public int getOutputBufferCount() {
+        return outputBufferCount;
+    }
+
+    // Output is encoded into one buffer while the others are written in the background, 1 writes synchronously
+    public ExportOptions setOutputBufferCount(int outputBufferCount) {
+        if (outputBufferCount < 1)
+            throw new IllegalArgumentException("outputBufferCount must be at least 1, got " + outputBufferCount);
+        this.outputBufferCount = outputBufferCount;
+        return this;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    // Compresses the output files with gzip as they are written, blocks are compressed in parallel.
+    // Textures and .mtl files stay as they are.
+    public ExportOptions setGzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    // Stable description of the settings, outputs written with different settings are not interchangeable.
+    // The encoding threads, out-of-core and output buffer settings are left out, they do not change the output.
+    @Override
+    public String toString() {
+        String description = "binaryStl=" + binaryStl + ", decimals=" + (decimals != null ? decimals.toString() : "default");
+        // Only listed when enabled, so outputs recorded before these settings existed still count as current
+        if (weldVertices)
+            description += ", weld=" + weldTolerance;
+        if (decimationTarget > 0)
+            description += ", decimate=" + decimationTarget + " triangles";
+        else if (decimationRatio < 1)
+            description += ", decimate=" + decimationRatio;
+        if (lodLevels > 0)
+            description += ", lods=" + lodLevels;
+        if (quantize)
+            description += ", quantize";
+        if (gzip)
+            description += ", gzip";
+        return description;
+    }
+}
@@ -0,0 +1,22 @@
+package exporters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+// Output file of an exporter. Text goes through the OutputStream methods, binary writers put their values straight
+// into buffer(). Closing completes the file.
+public abstract class ExportOutput extends OutputStream {
+
+    // The file at outputPath with the buffers configured in options, gzip compressed when the options ask for it
+    public static ExportOutput open(String outputPath, ExportOptions options) throws IOException {
+        AsyncFileOutput file = new AsyncFileOutput(outputPath, options.getOutputBufferSize(), options.getOutputBufferCount());
+        return options.isGzip() ? new GzipOutput(file) : file;
+    }
+
+    // The little-endian buffer to put the next bytes into, with room for at least bytes. Only valid until the next call.
+    public abstract ByteBuffer buffer(int bytes) throws IOException;
+
+    // Copies the remaining bytes of source, its position is moved to the limit
+    public abstract void write(ByteBuffer source) throws IOException;
+}
@@ -0,0 +1,12 @@
+package exporters;
+
+import core.MeshSink;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// MeshSink that writes an output file, finish() completes the file and close() releases it
+public interface ExportSink extends MeshSink, Closeable {
+
+    void finish() throws IOException;
+}
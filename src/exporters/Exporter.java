@@ -6,5 +6,9 @@ import java.io.IOException;
 
 public interface Exporter {
     void export(Object3d object, String outputPath) throws IOException;
-}
 
+    // Streaming variant, exporters that can write incrementally override this
+    default ExportSink open(String outputPath) throws IOException {
+        return new BufferedExportSink(this, outputPath);
+    }
+}
@@ -0,0 +1,478 @@
+package exporters;
+
+import core.Object3d;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary glTF with one mesh, one buffer in the BIN chunk and the textures embedded as images.
+// The layout is computed from the counts first, so the buffer is streamed to the file and never built in memory.
+public class GlbExporter implements Exporter {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    private static final int MAGIC = 0x46546C67; // "glTF"
+    private static final int VERSION = 2;
+    private static final int CHUNK_JSON = 0x4E4F534A;
+    private static final int CHUNK_BIN = 0x004E4942;
+    private static final int HEADER_LENGTH = 12;
+    private static final int CHUNK_HEADER_LENGTH = 8;
+
+    private static final int UNSIGNED_BYTE = 5121;
+    private static final int SHORT = 5122;
+    private static final int UNSIGNED_SHORT = 5123;
+    private static final int UNSIGNED_INT = 5125;
+    private static final int FLOAT = 5126;
+
+    private static final int ARRAY_BUFFER = 34962;
+    private static final int ELEMENT_ARRAY_BUFFER = 34963;
+
+    static final String MESH_QUANTIZATION = "KHR_mesh_quantization";
+
+    private final ExportOptions options;
+    private final boolean quantize;
+
+    public GlbExporter() {
+        this(new ExportOptions());
+    }
+
+    public GlbExporter(ExportOptions options) {
+        this.options = options;
+        this.quantize = options.isQuantize();
+    }
+
+    // The counts, bounds and index size are needed before the first byte of the buffer, the mesh is collected first
+    @Override
+    public ExportSink open(String outputPath) {
+        return new BufferedExportSink(this, outputPath, options);
+    }
+
+    @Override
+    public void export(Object3d object, String outputPath) throws IOException {
+        Layout layout = new Layout(object, quantize);
+        byte[] json = layout.json().toString().getBytes(StandardCharsets.UTF_8);
+        int jsonLength = align(json.length);
+        long totalLength = HEADER_LENGTH + CHUNK_HEADER_LENGTH + jsonLength + CHUNK_HEADER_LENGTH + layout.byteLength;
+        if (totalLength > 0xFFFFFFFFL)
+            throw new IOException("GLB cannot be larger than 4 GB: " + totalLength + " bytes");
+
+        try (ExportOutput output = ExportOutput.open(outputPath, options)) {
+            BinaryOutput out = new BinaryOutput(output);
+            out.putInt(MAGIC).putInt(VERSION).putInt((int) totalLength);
+
+            // The JSON chunk is padded with spaces, the BIN chunk with zeros
+            out.putInt(jsonLength).putInt(CHUNK_JSON).put(json);
+            for (int i = json.length; i < jsonLength; i++) {
+                out.put((byte) ' ');
+            }
+            out.putInt((int) layout.byteLength).putInt(CHUNK_BIN);
+            layout.writeBuffer(object, out);
+            output.flush();
+        }
+    }
+
+    // Rounds up to the 4 byte alignment glTF requires for chunks, bufferViews and vertex attributes
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    private static long align(long length) {
+        return (length + 3) & ~3L;
+    }
+
+    // Decides the encoding of every attribute and the place of every bufferView in the buffer
+    private static final class Layout {
+
+        final int vertexCount;
+        final int texCoordCount;
+        final int triangleCount;
+        final float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+        final float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+
+        // Quantized positions are stored relative to the center of the bounds and scaled to [-1, 1] per axis,
+        // the node transform restores the original size
+        final boolean quantizePositions;
+        final float[] center = new float[3];
+        final float[] halfExtent = new float[3];
+        // Texture coordinates outside [0, 1] stay floats, a normalized unsigned short cannot represent them
+        final boolean quantizeTexCoords;
+
+        final int indexType;
+        final List<Object3d.Material> materials;
+        final List<byte[]> images = new ArrayList<>();
+        final List<String> mimeTypes = new ArrayList<>();
+        final List<Integer> imageViews = new ArrayList<>();
+        final long byteLength;
+
+        private final JSONArray bufferViews = new JSONArray();
+        private long offset;
+        private final Map<byte[], Integer> imagesByIdentity = new IdentityHashMap<>();
+        private final Map<ByteBuffer, Integer> imagesByContent = new HashMap<>();
+
+        Layout(Object3d object, boolean quantize) {
+            vertexCount = object.getVertexCount();
+            // Texture coordinates share the vertex numbering, missing ones are written as zeros
+            texCoordCount = object.getTexCoordCount() > 0 ? vertexCount : 0;
+            triangleCount = vertexCount > 0 ? object.getTriangleCount() : 0;
+            bounds(object);
+
+            quantizePositions = quantize;
+            for (int axis = 0; axis < 3; axis++) {
+                center[axis] = (min[axis] + max[axis]) / 2;
+                halfExtent[axis] = max[axis] > min[axis] ? (max[axis] - min[axis]) / 2 : 1;
+            }
+            quantizeTexCoords = quantize && texCoordsInUnitRange(object);
+
+            // 255 and 65535 are primitive restart values in some APIs, the smaller types stop short of them
+            if (vertexCount <= 255)
+                indexType = UNSIGNED_BYTE;
+            else if (vertexCount <= 65535)
+                indexType = UNSIGNED_SHORT;
+            else
+                indexType = UNSIGNED_INT;
+
+            if (triangleCount > 0) {
+                addBufferView(vertexCount * (long) positionStride(), positionStride(), ARRAY_BUFFER);
+                if (texCoordCount > 0)
+                    addBufferView(texCoordCount * (long) texCoordStride(), texCoordStride(), ARRAY_BUFFER);
+                addBufferView(triangleCount * 3L * indexSize(), 0, ELEMENT_ARRAY_BUFFER);
+            }
+            materials = object.getMaterials();
+            for (Object3d.Material material : materials) {
+                addImage(material.baseColorTexture);
+                addImage(material.metallicRoughness);
+                addImage(material.normalTexture);
+                addImage(material.occlusionTexture);
+                addImage(material.emissiveTexture);
+            }
+            for (byte[] image : images) {
+                imageViews.add(addBufferView(image.length, 0, 0));
+            }
+            byteLength = offset;
+        }
+
+        private void bounds(Object3d object) {
+            float[] xyz = new float[BLOCK_SIZE * 3];
+            for (int first = 0; first < vertexCount; first += BLOCK_SIZE) {
+                int count = Math.min(BLOCK_SIZE, vertexCount - first);
+                object.copyVertices(first, count, xyz, 0);
+                for (int i = 0; i < count * 3; i++) {
+                    int axis = i % 3;
+                    min[axis] = Math.min(min[axis], xyz[i]);
+                    max[axis] = Math.max(max[axis], xyz[i]);
+                }
+            }
+        }
+
+        private boolean texCoordsInUnitRange(Object3d object) {
+            int available = Math.min(object.getTexCoordCount(), vertexCount);
+            float[] uv = new float[BLOCK_SIZE * 2];
+            for (int first = 0; first < available; first += BLOCK_SIZE) {
+                int count = Math.min(BLOCK_SIZE, available - first);
+                object.copyTexCoords(first, count, uv, 0);
+                for (int i = 0; i < count * 2; i++) {
+                    if (!(uv[i] >= 0 && uv[i] <= 1))
+                        return false;
+                }
+            }
+            return true;
+        }
+
+        // Vertex attribute elements have to start on 4 byte boundaries, a SHORT VEC3 takes 8 bytes
+        int positionStride() {
+            return quantizePositions ? 8 : 12;
+        }
+
+        int texCoordStride() {
+            return quantizeTexCoords ? 4 : 8;
+        }
+
+        int indexSize() {
+            return indexType == UNSIGNED_BYTE ? 1 : indexType == UNSIGNED_SHORT ? 2 : 4;
+        }
+
+        private int addBufferView(long length, int stride, int target) {
+            JSONObject view = new JSONObject()
+                    .put("buffer", 0)
+                    .put("byteOffset", offset)
+                    .put("byteLength", length);
+            if (stride > 0)
+                view.put("byteStride", stride);
+            if (target > 0)
+                view.put("target", target);
+            bufferViews.put(view);
+            offset = align(offset + length);
+            return bufferViews.length() - 1;
+        }
+
+        // Images are stored once per content, core glTF only allows PNG and JPEG so other formats are left out
+        private void addImage(byte[] image) {
+            if (image == null || imagesByIdentity.containsKey(image))
+                return;
+            Integer existing = imagesByContent.get(ByteBuffer.wrap(image));
+            if (existing == null) {
+                String mimeType = mimeType(image);
+                if (mimeType != null) {
+                    existing = images.size();
+                    images.add(image);
+                    mimeTypes.add(mimeType);
+                    imagesByContent.put(ByteBuffer.wrap(image), existing);
+                } else {
+                    existing = -1;
+                }
+            }
+            imagesByIdentity.put(image, existing);
+        }
+
+        // Index of the texture showing the image, -1 without one
+        int texture(byte[] image) {
+            if (image == null)
+                return -1;
+            return imagesByIdentity.get(image);
+        }
+
+        JSONObject json() {
+            JSONObject gltf = new JSONObject()
+                    .put("asset", new JSONObject().put("version", "2.0").put("generator", "glTF Konverter"))
+                    .put("scene", 0);
+            JSONArray accessors = new JSONArray();
+            JSONObject scene = new JSONObject();
+
+            if (triangleCount > 0) {
+                int view = 0;
+                JSONObject attributes = new JSONObject();
+                JSONObject position = accessor(view++, quantizePositions ? SHORT : FLOAT, vertexCount, "VEC3")
+                        .put("min", positionBound(min))
+                        .put("max", positionBound(max));
+                if (quantizePositions)
+                    position.put("normalized", true);
+                attributes.put("POSITION", accessors.length());
+                accessors.put(position);
+                if (texCoordCount > 0) {
+                    JSONObject texCoord = accessor(view++, quantizeTexCoords ? UNSIGNED_SHORT : FLOAT, texCoordCount, "VEC2");
+                    if (quantizeTexCoords)
+                        texCoord.put("normalized", true);
+                    attributes.put("TEXCOORD_0", accessors.length());
+                    accessors.put(texCoord);
+                }
+                JSONObject primitive = new JSONObject()
+                        .put("attributes", attributes)
+                        .put("indices", accessors.length());
+                accessors.put(accessor(view, indexType, triangleCount * 3, "SCALAR"));
+                // Like the other formats, every triangle uses the first material
+                if (!materials.isEmpty())
+                    primitive.put("material", 0);
+                gltf.put("meshes", new JSONArray().put(new JSONObject().put("primitives", new JSONArray().put(primitive))));
+
+                JSONObject node = new JSONObject().put("mesh", 0);
+                if (quantizePositions)
+                    node.put("translation", new JSONArray(center)).put("scale", new JSONArray(halfExtent));
+                // Integer attributes are only valid with the extension, viewers without it have to refuse the file
+                if (quantizePositions || quantizeTexCoords) {
+                    gltf.put("extensionsUsed", new JSONArray().put(MESH_QUANTIZATION));
+                    gltf.put("extensionsRequired", new JSONArray().put(MESH_QUANTIZATION));
+                }
+                gltf.put("nodes", new JSONArray().put(node));
+                scene.put("nodes", new JSONArray().put(0));
+            }
+            gltf.put("scenes", new JSONArray().put(scene));
+
+            if (!materials.isEmpty())
+                materials(gltf);
+            if (accessors.length() > 0)
+                gltf.put("accessors", accessors);
+            if (bufferViews.length() > 0)
+                gltf.put("bufferViews", bufferViews);
+            if (byteLength > 0)
+                gltf.put("buffers", new JSONArray().put(new JSONObject().put("byteLength", byteLength)));
+            return gltf;
+        }
+
+        // min and max hold the values stored in the buffer, for quantized positions these are the integers
+        private JSONArray positionBound(float[] bound) {
+            JSONArray values = new JSONArray();
+            for (int axis = 0; axis < 3; axis++) {
+                if (quantizePositions)
+                    values.put(quantizePosition(bound[axis], axis));
+                else
+                    values.put(bound[axis]);
+            }
+            return values;
+        }
+
+        private static JSONObject accessor(int bufferView, int componentType, int count, String type) {
+            return new JSONObject()
+                    .put("bufferView", bufferView)
+                    .put("componentType", componentType)
+                    .put("count", count)
+                    .put("type", type);
+        }
+
+        private void materials(JSONObject gltf) {
+            JSONArray materialArray = new JSONArray();
+            for (Object3d.Material material : materials) {
+                JSONObject pbr = new JSONObject();
+                JSONObject entry = new JSONObject().put("pbrMetallicRoughness", pbr);
+                if (texture(material.baseColorTexture) >= 0)
+                    pbr.put("baseColorTexture", textureInfo(material.baseColorTexture));
+                // Without a texture the default metallic factor of 1 would turn everything into metal
+                if (texture(material.metallicRoughness) >= 0)
+                    pbr.put("metallicRoughnessTexture", textureInfo(material.metallicRoughness));
+                else
+                    pbr.put("metallicFactor", 0);
+                if (texture(material.normalTexture) >= 0)
+                    entry.put("normalTexture", textureInfo(material.normalTexture));
+                if (texture(material.occlusionTexture) >= 0)
+                    entry.put("occlusionTexture", textureInfo(material.occlusionTexture));
+                // The emissive factor defaults to black, which would hide the texture
+                if (texture(material.emissiveTexture) >= 0)
+                    entry.put("emissiveTexture", textureInfo(material.emissiveTexture))
+                            .put("emissiveFactor", new JSONArray().put(1).put(1).put(1));
+                materialArray.put(entry);
+            }
+            gltf.put("materials", materialArray);
+
+            if (images.isEmpty())
+                return;
+            JSONArray imageArray = new JSONArray();
+            JSONArray textures = new JSONArray();
+            for (int i = 0; i < images.size(); i++) {
+                imageArray.put(new JSONObject().put("bufferView", imageViews.get(i)).put("mimeType", mimeTypes.get(i)));
+                textures.put(new JSONObject().put("source", i));
+            }
+            gltf.put("images", imageArray);
+            gltf.put("textures", textures);
+        }
+
+        private JSONObject textureInfo(byte[] image) {
+            return new JSONObject().put("index", texture(image));
+        }
+
+        short quantizePosition(float value, int axis) {
+            double normalized = (value - center[axis]) / halfExtent[axis];
+            return (short) Math.max(-32767, Math.min(32767, Math.round(normalized * 32767)));
+        }
+
+        // Positions, texture coordinates, indices and images in bufferView order, each padded to 4 bytes
+        void writeBuffer(Object3d object, BinaryOutput out) throws IOException {
+            long written = 0;
+            if (triangleCount > 0) {
+                float[] floats = new float[BLOCK_SIZE * 3];
+                for (int first = 0; first < vertexCount; first += BLOCK_SIZE) {
+                    int count = Math.min(BLOCK_SIZE, vertexCount - first);
+                    object.copyVertices(first, count, floats, 0);
+                    for (int i = 0; i < count * 3; i += 3) {
+                        if (quantizePositions)
+                            out.putShort(quantizePosition(floats[i], 0)).putShort(quantizePosition(floats[i + 1], 1))
+                                    .putShort(quantizePosition(floats[i + 2], 2)).putShort((short) 0);
+                        else
+                            out.putFloat(floats[i]).putFloat(floats[i + 1]).putFloat(floats[i + 2]);
+                    }
+                }
+                written = align(vertexCount * (long) positionStride());
+
+                if (texCoordCount > 0) {
+                    int available = Math.min(object.getTexCoordCount(), vertexCount);
+                    for (int first = 0; first < texCoordCount; first += BLOCK_SIZE) {
+                        int count = Math.min(BLOCK_SIZE, texCoordCount - first);
+                        int copied = Math.max(0, Math.min(count, available - first));
+                        object.copyTexCoords(first, copied, floats, 0);
+                        Arrays.fill(floats, copied * 2, count * 2, 0f);
+                        for (int i = 0; i < count * 2; i += 2) {
+                            // The parsers flip v for the other formats, glTF keeps the origin at the top left
+                            float u = floats[i], v = i < copied * 2 ? 1 - floats[i + 1] : 0;
+                            if (quantizeTexCoords)
+                                out.putShort((short) Math.round(u * 65535)).putShort((short) Math.round(v * 65535));
+                            else
+                                out.putFloat(u).putFloat(v);
+                        }
+                    }
+                    written += align(texCoordCount * (long) texCoordStride());
+                }
+
+                int[] indices = new int[BLOCK_SIZE * 3];
+                for (int first = 0; first < triangleCount; first += BLOCK_SIZE) {
+                    int count = Math.min(BLOCK_SIZE, triangleCount - first);
+                    object.copyTriangles(first, count, indices, 0);
+                    for (int i = 0; i < count * 3; i++) {
+                        if (indexType == UNSIGNED_BYTE)
+                            out.put((byte) indices[i]);
+                        else if (indexType == UNSIGNED_SHORT)
+                            out.putShort((short) indices[i]);
+                        else
+                            out.putInt(indices[i]);
+                    }
+                }
+                long indexLength = triangleCount * 3L * indexSize();
+                out.pad(align(indexLength) - indexLength);
+                written += align(indexLength);
+            }
+            for (byte[] image : images) {
+                out.put(image);
+                out.pad(align(image.length) - image.length);
+                written += align(image.length);
+            }
+            if (written != byteLength)
+                throw new IllegalStateException("GLB buffer has " + written + " bytes, the layout expected " + byteLength);
+        }
+    }
+
+    // PNG and JPEG by their signature, null for anything else
+    private static String mimeType(byte[] image) {
+        if (image.length >= 8 && (image[0] & 0xFF) == 0x89 && image[1] == 'P' && image[2] == 'N' && image[3] == 'G')
+            return "image/png";
+        if (image.length >= 3 && (image[0] & 0xFF) == 0xFF && (image[1] & 0xFF) == 0xD8 && (image[2] & 0xFF) == 0xFF)
+            return "image/jpeg";
+        return null;
+    }
+
+    // Little-endian values put straight into the output's buffers
+    private static final class BinaryOutput {
+
+        private final ExportOutput output;
+
+        BinaryOutput(ExportOutput output) {
+            this.output = output;
+        }
+
+        BinaryOutput put(byte value) throws IOException {
+            output.buffer(1).put(value);
+            return this;
+        }
+
+        BinaryOutput putShort(short value) throws IOException {
+            output.buffer(2).putShort(value);
+            return this;
+        }
+
+        BinaryOutput putInt(int value) throws IOException {
+            output.buffer(4).putInt(value);
+            return this;
+        }
+
+        BinaryOutput putFloat(float value) throws IOException {
+            output.buffer(4).putFloat(value);
+            return this;
+        }
+
+        BinaryOutput put(byte[] bytes) throws IOException {
+            output.write(bytes);
+            return this;
+        }
+
+        void pad(long count) throws IOException {
+            for (long i = 0; i < count; i++) {
+                put((byte) 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package exporters;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// gzip compression in the style of pigz: the data is cut into blocks that are deflated on worker threads and
+// written in order, together they form one ordinary gzip member. Every block but the last ends with a sync flush,
+// which leaves the deflate stream byte aligned, and is primed with the last 32 KB of the block before it, so the
+// ratio stays close to that of a single-threaded gzip. The CRC is computed on the writing thread.
+final class GzipOutput extends ExportOutput {
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService COMPRESSORS = Executors.newFixedThreadPool(THREADS, new CompressorThreadFactory());
+
+    private static final int BLOCK_SIZE = 128 * 1024;
+    // The deflate window, matches can reach back this far
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    // Blocks compressed or waiting to be written, bounds the memory
+    private static final int WINDOW = Math.max(2, THREADS * 2);
+
+    // ID1, ID2, deflate, no flags, no modification time, no extra flags, unknown OS
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 255};
+
+    private final ExportOutput output;
+    private final CRC32 crc = new CRC32();
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private ByteBuffer block = newBlock();
+    // The block submitted last, its end is the dictionary of the next one
+    private byte[] previous;
+    private int previousLength;
+    private long uncompressedSize;
+    private boolean closed;
+
+    // The compressed stream is written to output, which is closed with this
+    GzipOutput(ExportOutput output) throws IOException {
+        this.output = output;
+        output.write(HEADER);
+    }
+
+    private static ByteBuffer newBlock() {
+        return ByteBuffer.allocate(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public ByteBuffer buffer(int bytes) throws IOException {
+        if (bytes > BLOCK_SIZE)
+            throw new IllegalArgumentException("At most " + BLOCK_SIZE + " bytes fit into a block, got " + bytes);
+        if (block.remaining() < bytes)
+            submit(false);
+        return block;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer(1).put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!block.hasRemaining())
+                submit(false);
+            int count = Math.min(length, block.remaining());
+            block.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            if (!block.hasRemaining())
+                submit(false);
+            int count = Math.min(source.remaining(), block.remaining());
+            ByteBuffer part = source.duplicate();
+            part.limit(part.position() + count);
+            block.put(part);
+            source.position(source.position() + count);
+        }
+    }
+
+    // Writes the blocks compressed so far. The current block stays open, compressing it early would cost ratio.
+    @Override
+    public void flush() throws IOException {
+        writeCompressed(pending.size());
+        output.flush();
+    }
+
+    // Compresses the last block and appends the gzip trailer
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            submit(true);
+            writeCompressed(pending.size());
+            ByteBuffer trailer = output.buffer(8);
+            trailer.putInt((int) crc.getValue());
+            trailer.putInt((int) uncompressedSize); // ISIZE is the length modulo 2^32
+        } finally {
+            for (Future<byte[]> compressed : pending) {
+                compressed.cancel(false);
+            }
+            pending.clear();
+            output.close();
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        byte[] data = block.array();
+        int length = block.position();
+        crc.update(data, 0, length);
+        uncompressedSize += length;
+        byte[] dictionary = previous;
+        int dictionaryEnd = previousLength;
+        pending.add(COMPRESSORS.submit(() -> deflate(data, length, dictionary, dictionaryEnd, last)));
+        previous = data;
+        previousLength = length;
+        block = newBlock();
+        if (pending.size() >= WINDOW)
+            writeCompressed(pending.size() - WINDOW / 2);
+    }
+
+    // Raw deflate data of one block, only the last one is final
+    private static byte[] deflate(byte[] data, int length, byte[] dictionary, int dictionaryEnd, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (dictionary != null) {
+                int dictionaryLength = Math.min(DICTIONARY_SIZE, dictionaryEnd);
+                deflater.setDictionary(dictionary, dictionaryEnd - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(data, 0, length);
+            byte[] compressed = new byte[length / 2 + 64];
+            int size = 0;
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (size == compressed.length)
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    size += deflater.deflate(compressed, size, compressed.length - size);
+                }
+            } else {
+                // A sync flush is complete once it leaves room in the output
+                while (true) {
+                    if (size == compressed.length)
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    int room = compressed.length - size;
+                    int written = deflater.deflate(compressed, size, room, Deflater.SYNC_FLUSH);
+                    size += written;
+                    if (written < room)
+                        break;
+                }
+            }
+            return Arrays.copyOf(compressed, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Waits for the first count blocks, blocks after them that are already done are written as well
+    private void writeCompressed(int count) throws IOException {
+        while (!pending.isEmpty() && (count > 0 || pending.peek().isDone())) {
+            output.write(await(pending.poll()));
+            count--;
+        }
+    }
+
+    private static byte[] await(Future<byte[]> compressed) throws IOException {
+        try {
+            return compressed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Compressing a block failed", e.getCause());
+        }
+    }
+
+    private static class CompressorThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gzip-compressor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package exporters;
+
+import core.Object3d;
+import metrics.ConversionMetrics;
+import metrics.Stage;
+
+import java.io.IOException;
+
+// Counts the mesh passed to the exporter and times everything the exporter does with it as the encode stage.
+// Parsers call the sink while decoding, the time spent in here is taken out of their decode stage.
+public final class MeteredSink implements ExportSink {
+
+    private final ExportSink target;
+    private final ConversionMetrics metrics;
+
+    private MeteredSink(ExportSink target, ConversionMetrics metrics) {
+        this.target = target;
+        this.metrics = metrics;
+    }
+
+    // target itself while nothing is measured
+    public static ExportSink wrap(ExportSink target, ConversionMetrics metrics) {
+        return metrics.isEnabled() ? new MeteredSink(target, metrics) : target;
+    }
+
+    @Override
+    public void reserve(int vertexCount, int texCoordCount, int triangleCount) {
+        target.reserve(vertexCount, texCoordCount, triangleCount);
+    }
+
+    @Override
+    public void addMaterial(Object3d.Material material) throws IOException {
+        ConversionMetrics.Timer encodeTimer = metrics.time(Stage.ENCODE);
+        try {
+            target.addMaterial(material);
+        } finally {
+            encodeTimer.close();
+        }
+    }
+
+    @Override
+    public void addVertices(float[] xyz, int offset, int count) throws IOException {
+        metrics.addMesh(count, 0, 0);
+        ConversionMetrics.Timer encodeTimer = metrics.time(Stage.ENCODE);
+        try {
+            target.addVertices(xyz, offset, count);
+        } finally {
+            encodeTimer.close();
+        }
+    }
+
+    @Override
+    public void addTexCoords(float[] uv, int offset, int count) throws IOException {
+        metrics.addMesh(0, count, 0);
+        ConversionMetrics.Timer encodeTimer = metrics.time(Stage.ENCODE);
+        try {
+            target.addTexCoords(uv, offset, count);
+        } finally {
+            encodeTimer.close();
+        }
+    }
+
+    @Override
+    public void addTriangles(int[] indices, int offset, int count) throws IOException {
+        metrics.addMesh(0, 0, count);
+        ConversionMetrics.Timer encodeTimer = metrics.time(Stage.ENCODE);
+        try {
+            target.addTriangles(indices, offset, count);
+        } finally {
+            encodeTimer.close();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        ConversionMetrics.Timer encodeTimer = metrics.time(Stage.ENCODE);
+        try {
+            target.finish();
+        } finally {
+            encodeTimer.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ConversionMetrics.Timer encodeTimer = metrics.time(Stage.ENCODE);
+        try {
+            target.close();
+        } finally {
+            encodeTimer.close();
+        }
+    }
+}
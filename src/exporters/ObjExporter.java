@@ -6,86 +6,189 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.OpenOption;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.Arrays;
 
 public class ObjExporter implements Exporter {
 
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Elements per chunk when encoding in parallel
+    private static final int CHUNK_SIZE = 16384;
+
+    private final ExportOptions options;
+
+    public ObjExporter() {
+        this(new ExportOptions());
+    }
+
+    public ObjExporter(ExportOptions options) {
+        this.options = options;
+    }
+
     @Override
     public void export(Object3d object, String objFilePath) throws IOException {
+        try (ExportSink sink = open(objFilePath)) {
+            object.writeTo(sink, BLOCK_SIZE);
+            sink.finish();
+        }
+    }
+
+    // OBJ lines are written as the batches arrive, the .mtl file is written on finish
+    @Override
+    public ExportSink open(String objFilePath) throws IOException {
+        return new ObjSink(objFilePath, options);
+    }
 
-        String outputDirectoryPath = objFilePath.replace(".obj", ""); // Removing the extension for further use
-        String mtlFilePath = outputDirectoryPath + ".mtl";
+    private static class ObjSink implements ExportSink {
 
-        // Write .obj file
-        BufferedWriter objWriter = new BufferedWriter(new FileWriter(objFilePath));
+        private final String outputDirectoryPath;
+        private final String mtlFilePath;
+        // The file itself, or in parallel mode the text between the encoded chunks
+        private final AsciiWriter objWriter;
+        private final ParallelTextWriter parallel;
+        private final TextureWriter textures = new TextureWriter();
+        private final StringBuilder mtl = new StringBuilder();
+        private int materialCount;
+
+        ObjSink(String objFilePath, ExportOptions options) throws IOException {
+            outputDirectoryPath = objFilePath.replaceFirst("\\.obj(\\.gz)?$", ""); // Removing the extension for further use
+            mtlFilePath = outputDirectoryPath + ".mtl";
+
+            // Write .obj file
+            int decimals = options.getDecimals(AsciiWriter.SHORTEST);
+            ExportOutput output = ExportOutput.open(objFilePath, options);
+            if (options.getEncodingThreads() > 1) {
+                parallel = new ParallelTextWriter(output, options.getEncodingThreads(), decimals);
+                objWriter = parallel.text();
+            } else {
+                parallel = null;
+                objWriter = new AsciiWriter(output, BUFFER_SIZE, decimals);
+            }
             objWriter.write("mtllib " + new File(mtlFilePath).getName() + "\n");
             objWriter.write("usemtl material0\n");
+        }
 
-            // Write vertices
-            for (Object3d.Vertex vertex : object.getVertices()) {
-                objWriter.write("v " + vertex.x + " " + vertex.y + " " + vertex.z + "\n");
-            }
+        // Textures start writing in the background right away, the .mtl file is written on finish
+        @Override
+        public void addMaterial(Object3d.Material material) {
+            int i = materialCount++;
+            mtl.append("newmtl material").append(i).append(System.lineSeparator());
 
-            // Write texture coordinates
-            for (Object3d.TexCoord texCoord : object.getTexCoords()) {
-                objWriter.write("vt " + texCoord.u + " " + texCoord.v + "\n");
-            }
+            // Check for a diffuse texture
+            if (material.baseColorTexture != null)
+                addTexture("map_Kd", material.baseColorTexture, "_base" + i);
+            if (material.metallicRoughness != null)
+                addTexture("map_Pr", material.metallicRoughness, "_roughness" + i);
+            if (material.normalTexture != null)
+                addTexture("map_Bump", material.normalTexture, "_normal" + i);
+            if (material.occlusionTexture != null)
+                addTexture("map_Ao", material.occlusionTexture, "_occlusion" + i);
+            if (material.emissiveTexture != null)
+                addTexture("map_Ke", material.emissiveTexture, "_emissive" + i);
+        }
 
-            // Write faces
-            for (Object3d.Face face : object.getFaces()) {
-                // Assuming each face is a triangle with texture coordinates.
-                objWriter.write(String.format("f %d/%d %d/%d %d/%d\n",
-                        face.indices[0] + 1, face.indices[0] + 1,
-                        face.indices[1] + 1, face.indices[1] + 1,
-                        face.indices[2] + 1, face.indices[2] + 1));
-            }
+        // Identical images are written once, every material referencing them points to that file
+        private void addTexture(String statement, byte[] image, String suffix) {
+            Path texturePath = textures.write(image, Paths.get(outputDirectoryPath + suffix + ".png"));
+            mtl.append(statement).append(' ').append(texturePath).append(System.lineSeparator());
+        }
 
-        // Write .mtl file
-        BufferedWriter mtlWriter = new BufferedWriter(new FileWriter(mtlFilePath));
-        List<Object3d.Material> materials = object.getMaterials();
-        for (int i = 0; i < materials.size(); i++) {
+        // Write vertices
+        @Override
+        public void addVertices(float[] xyz, int offset, int count) throws IOException {
+            if (parallel == null) {
+                writeVertices(objWriter, xyz, offset, count);
+                return;
+            }
+            // The producer reuses its arrays, every chunk gets its own copy
+            for (int first = 0; first < count; first += CHUNK_SIZE) {
+                int chunk = Math.min(CHUNK_SIZE, count - first);
+                float[] copy = Arrays.copyOfRange(xyz, offset + first * 3, offset + (first + chunk) * 3);
+                parallel.submit(out -> writeVertices(out, copy, 0, chunk));
+            }
+        }
 
-            Object3d.Material material = materials.get(i);
-            mtlWriter.write("newmtl material" + i);
-            mtlWriter.newLine();
+        // Write texture coordinates
+        @Override
+        public void addTexCoords(float[] uv, int offset, int count) throws IOException {
+            if (parallel == null) {
+                writeTexCoords(objWriter, uv, offset, count);
+                return;
+            }
+            for (int first = 0; first < count; first += CHUNK_SIZE) {
+                int chunk = Math.min(CHUNK_SIZE, count - first);
+                float[] copy = Arrays.copyOfRange(uv, offset + first * 2, offset + (first + chunk) * 2);
+                parallel.submit(out -> writeTexCoords(out, copy, 0, chunk));
+            }
+        }
 
-            // Check for a diffuse texture
-            if (material.baseColorTexture != null) {
-                String texturePath = outputDirectoryPath + "_base" + i + ".png";
-                Files.write(Paths.get(texturePath), material.baseColorTexture);
-                mtlWriter.write("map_Kd " + texturePath);
-                mtlWriter.newLine();
+        // Write faces
+        @Override
+        public void addTriangles(int[] indices, int offset, int count) throws IOException {
+            if (parallel == null) {
+                writeTriangles(objWriter, indices, offset, count);
+                return;
             }
-            if (material.metallicRoughness != null) {
-                String texturePath = outputDirectoryPath + "_roughness" + i + ".png";
-                Files.write(Paths.get(texturePath), material.metallicRoughness);
-                mtlWriter.write("map_Pr " + texturePath);
-                mtlWriter.newLine();
+            for (int first = 0; first < count; first += CHUNK_SIZE) {
+                int chunk = Math.min(CHUNK_SIZE, count - first);
+                int[] copy = Arrays.copyOfRange(indices, offset + first * 3, offset + (first + chunk) * 3);
+                parallel.submit(out -> writeTriangles(out, copy, 0, chunk));
             }
-            if (material.normalTexture != null) {
-                String texturePath = outputDirectoryPath + "_normal" + i + ".png";
-                Files.write(Paths.get(texturePath), material.normalTexture);
-                mtlWriter.write("map_Bump " + texturePath);
-                mtlWriter.newLine();
+        }
+
+        private static void writeVertices(AsciiWriter out, float[] xyz, int offset, int count) throws IOException {
+            for (int i = offset; i < offset + count * 3; i += 3) {
+                out.write("v ").write(xyz[i]).write(' ').write(xyz[i + 1]).write(' ').write(xyz[i + 2]).write('\n');
+            }
+        }
+
+        private static void writeTexCoords(AsciiWriter out, float[] uv, int offset, int count) throws IOException {
+            for (int i = offset; i < offset + count * 2; i += 2) {
+                out.write("vt ").write(uv[i]).write(' ').write(uv[i + 1]).write('\n');
             }
-            if (material.occlusionTexture != null) {
-                String texturePath = outputDirectoryPath + "_occlusion" + i + ".png";
-                Files.write(Paths.get(texturePath), material.occlusionTexture);
-                mtlWriter.write("map_Ao " + texturePath);
-                mtlWriter.newLine();
+        }
+
+        private static void writeTriangles(AsciiWriter out, int[] indices, int offset, int count) throws IOException {
+            for (int i = offset; i < offset + count * 3; i += 3) {
+                // Assuming each face is a triangle with texture coordinates.
+                out.write("f ");
+                writeCorner(out, indices[i] + 1).write(' ');
+                writeCorner(out, indices[i + 1] + 1).write(' ');
+                writeCorner(out, indices[i + 2] + 1).write('\n');
             }
-            if (material.emissiveTexture != null) {
-                String texturePath = outputDirectoryPath + "_emissive" + i + ".png";
-                Files.write(Paths.get(texturePath), material.emissiveTexture);
-                mtlWriter.write("map_Ke " + texturePath);
-                mtlWriter.newLine();
+        }
+
+        // v/vt, the texture coordinates share the vertex numbering
+        private static AsciiWriter writeCorner(AsciiWriter out, int index) throws IOException {
+            return out.write(index).write('/').write(index);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (parallel != null)
+                parallel.finish();
+            else
+                objWriter.flush();
+
+            // Write .mtl file
+            try (BufferedWriter mtlWriter = new BufferedWriter(new FileWriter(mtlFilePath))) {
+                mtlWriter.write(mtl.toString());
             }
+            textures.await();
         }
 
-        mtlWriter.close();
-        objWriter.close();
+        @Override
+        public void close() throws IOException {
+            try {
+                if (parallel != null)
+                    parallel.close();
+                else
+                    objWriter.close();
+            } finally {
+                textures.close();
+            }
+        }
     }
 }
@@ -0,0 +1,140 @@
+package exporters;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Text file whose bulk parts are formatted on worker threads. Every chunk is encoded into its own buffer and the
+// buffers are written strictly in submission order, so the file holds exactly the bytes a single AsciiWriter would
+// have written. The output writes them in the background while the next chunks are encoded.
+final class ParallelTextWriter implements Closeable {
+
+    private static final ExecutorService ENCODERS = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new EncoderThreadFactory());
+
+    private static final int CHUNK_BUFFER_SIZE = 1 << 16;
+
+    // Formats one chunk, runs on a worker thread and must only read data nobody changes any more
+    interface Encoder {
+        void encode(AsciiWriter out) throws IOException;
+    }
+
+    private final ExportOutput output;
+    private final int window;
+    private final int decimals;
+    private final AsciiWriter text;
+    private final ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+    // Chunks of this writer being encoded right now
+    private final Semaphore encoding;
+
+    // threads bounds the chunks of this writer encoded at the same time, decimals are those of the text and every chunk
+    // The writer owns output and closes it
+    ParallelTextWriter(ExportOutput output, int threads, int decimals) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1, got " + threads);
+        this.output = output;
+        this.window = threads * 2;
+        this.encoding = new Semaphore(threads);
+        this.decimals = decimals;
+        this.text = AsciiWriter.inMemory(CHUNK_BUFFER_SIZE, decimals);
+    }
+
+    // Writer for the sequential parts, whatever is written here lands between the chunks submitted before and after
+    AsciiWriter text() {
+        return text;
+    }
+
+    void submit(Encoder encoder) throws IOException {
+        queueText();
+        // The pool is shared by all files, each file gets at most threads of it
+        try {
+            encoding.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding");
+        }
+        pending.add(ENCODERS.submit(() -> {
+            AsciiWriter out = AsciiWriter.inMemory(CHUNK_BUFFER_SIZE, decimals);
+            try {
+                encoder.encode(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                encoding.release();
+            }
+            return out.contents();
+        }));
+        // Keeps the number of encoded but unwritten chunks, and with it the memory, bounded
+        if (pending.size() >= window)
+            writeReady(pending.size() - window / 2);
+    }
+
+    // Writes everything submitted so far
+    void finish() throws IOException {
+        queueText();
+        writeReady(pending.size());
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<ByteBuffer> chunk : pending) {
+            chunk.cancel(false);
+        }
+        pending.clear();
+        output.close();
+    }
+
+    // The text is copied, the writer keeps being used for the next sequential part
+    private void queueText() {
+        if (text.size() == 0)
+            return;
+        ByteBuffer contents = text.contents();
+        ByteBuffer copy = ByteBuffer.allocate(contents.remaining()).put(contents).flip();
+        pending.add(CompletableFuture.completedFuture(copy));
+        text.reset();
+    }
+
+    // Waits for the first count chunks, chunks after them that are already done are written as well
+    private void writeReady(int count) throws IOException {
+        while (!pending.isEmpty() && (count > 0 || pending.peek().isDone())) {
+            output.write(await(pending.poll()));
+            count--;
+        }
+    }
+
+    private static ByteBuffer await(Future<ByteBuffer> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IOException("Encoding a chunk failed", e.getCause());
+        }
+    }
+
+    private static class EncoderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "text-encoder-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -2,57 +2,255 @@ package exporters;
 
 import core.Object3d;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 
 public class StlExporter implements Exporter {
 
+    private static final int BLOCK_SIZE = 4096;
+
+    // Binary STL layout
+    private static final int HEADER_LENGTH = 80;
+    private static final int RECORD_LENGTH = 50;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ExportOptions options;
+    private final boolean binary;
+    private final int decimals;
+
+    public StlExporter() {
+        this(new ExportOptions());
+    }
+
+    public StlExporter(ExportOptions options) {
+        this.options = options;
+        this.binary = options.isBinaryStl();
+        this.decimals = options.getDecimals(6);
+    }
+
     @Override
-    public void export(Object3d object, String outputPath) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
-            writer.write("solid exported_object\n");
+    public void export(Object3d object, String outputPath) throws IOException {
+        try (FacetWriter writer = newFacetWriter(outputPath)) {
+            int[] indices = new int[BLOCK_SIZE * 3];
+            int triangleCount = object.getTriangleCount();
+            writer.announce(triangleCount);
+            for (int first = 0; first < triangleCount; first += BLOCK_SIZE) {
+                int count = Math.min(BLOCK_SIZE, triangleCount - first);
+                object.copyTriangles(first, count, indices, 0);
+                for (int i = 0; i < count * 3; i += 3) {
+                    int a = indices[i], b = indices[i + 1], c = indices[i + 2];
+                    writer.facet(object.getVertexX(a), object.getVertexY(a), object.getVertexZ(a),
+                            object.getVertexX(b), object.getVertexY(b), object.getVertexZ(b),
+                            object.getVertexX(c), object.getVertexY(c), object.getVertexZ(c));
+                }
+            }
+            writer.finish();
+        }
+    }
+
+    // Facets are written as triangles arrive, only the vertex positions are kept for the index lookups
+    @Override
+    public ExportSink open(String outputPath) throws IOException {
+        return new StlSink(newFacetWriter(outputPath), options);
+    }
+
+    private FacetWriter newFacetWriter(String outputPath) throws IOException {
+        ExportOutput output = ExportOutput.open(outputPath, options);
+        return binary ? new BinaryFacetWriter(output) : new AsciiFacetWriter(output, decimals);
+    }
+
+    private static class StlSink implements ExportSink {
+
+        private final FacetWriter writer;
+        // Goes out of core like any collected mesh when the announced vertices are too many for the heap
+        private final Object3d positions;
+
+        StlSink(FacetWriter writer, ExportOptions options) {
+            this.writer = writer;
+            this.positions = new Object3d(options.getOutOfCoreThreshold(), options.getSpillDirectory());
+        }
+
+        @Override
+        public void reserve(int vertexCount, int texCoordCount, int triangleCount) {
+            positions.reserve(vertexCount, 0, 0);
+            writer.announce(triangleCount);
+        }
+
+        @Override
+        public void addMaterial(Object3d.Material material) {
+            // STL has no materials
+        }
+
+        @Override
+        public void addVertices(float[] xyz, int offset, int count) {
+            positions.addVertices(xyz, offset, count);
+        }
+
+        @Override
+        public void addTexCoords(float[] uv, int offset, int count) {
+            // STL has no texture coordinates
+        }
+
+        @Override
+        public void addTriangles(int[] indices, int offset, int count) throws IOException {
+            for (int i = offset; i < offset + count * 3; i += 3) {
+                int a = indices[i], b = indices[i + 1], c = indices[i + 2];
+                writer.facet(positions.getVertexX(a), positions.getVertexY(a), positions.getVertexZ(a),
+                        positions.getVertexX(b), positions.getVertexY(b), positions.getVertexZ(b),
+                        positions.getVertexX(c), positions.getVertexY(c), positions.getVertexZ(c));
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.finish();
+        }
 
-            for (Object3d.Face face : object.getFaces()) {
-                // Calculate normal for the triangle
-                // Note: This is a simple normal calculation and might not be suitable for all meshes.
-                Object3d.Vertex v1 = object.getVertices().get(face.indices[0]);
-                Object3d.Vertex v2 = object.getVertices().get(face.indices[1]);
-                Object3d.Vertex v3 = object.getVertices().get(face.indices[2]);
-
-                Object3d.Vertex normal = calculateNormal(v1, v2, v3);
-
-                writer.write(String.format("  facet normal %.6f %.6f %.6f\n", normal.x, normal.y, normal.z));
-                writer.write("    outer loop\n");
-                writer.write(String.format("      vertex %.6f %.6f %.6f\n", v1.x, v1.y, v1.z));
-                writer.write(String.format("      vertex %.6f %.6f %.6f\n", v2.x, v2.y, v2.z));
-                writer.write(String.format("      vertex %.6f %.6f %.6f\n", v3.x, v3.y, v3.z));
-                writer.write("    endloop\n");
-                writer.write("  endfacet\n");
+        @Override
+        public void close() throws IOException {
+            try {
+                writer.close();
+            } finally {
+                positions.close();
             }
+        }
+    }
+
+    // Writes one facet per call, the normal is computed on the fly without allocating
+    private abstract static class FacetWriter implements Closeable {
+
+        protected long facetCount;
+
+        final void facet(double x1, double y1, double z1, double x2, double y2, double z2,
+                         double x3, double y3, double z3) throws IOException {
+            // Calculate two vectors from the triangle
+            double ux = x2 - x1, uy = y2 - y1, uz = z2 - z1;
+            double vx = x3 - x1, vy = y3 - y1, vz = z3 - z1;
+
+            // Calculate the cross product of the two vectors
+            double normalX = uy * vz - uz * vy;
+            double normalY = uz * vx - ux * vz;
+            double normalZ = ux * vy - uy * vx;
+
+            // Normalize the result, degenerate triangles get a zero normal
+            double length = Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+            if (length > 0) {
+                normalX /= length;
+                normalY /= length;
+                normalZ /= length;
+            }
+
+            write(normalX, normalY, normalZ, x1, y1, z1, x2, y2, z2, x3, y3, z3);
+            facetCount++;
+        }
+
+        abstract void write(double nx, double ny, double nz, double x1, double y1, double z1,
+                            double x2, double y2, double z2, double x3, double y3, double z3) throws IOException;
+
+        // Number of facets that will follow, formats with a count in the header use it
+        void announce(long facets) {
+        }
+
+        abstract void finish() throws IOException;
+    }
+
+    private static class AsciiFacetWriter extends FacetWriter {
+
+        private final AsciiWriter writer;
 
+        AsciiFacetWriter(ExportOutput output, int decimals) throws IOException {
+            writer = new AsciiWriter(output, BUFFER_SIZE, decimals);
+            writer.write("solid exported_object\n");
+        }
+
+        @Override
+        void write(double nx, double ny, double nz, double x1, double y1, double z1,
+                   double x2, double y2, double z2, double x3, double y3, double z3) throws IOException {
+            writer.write("  facet normal ").write(nx).write(' ').write(ny).write(' ').write(nz).write('\n');
+            writer.write("    outer loop\n");
+            writer.write("      vertex ").write(x1).write(' ').write(y1).write(' ').write(z1).write('\n');
+            writer.write("      vertex ").write(x2).write(' ').write(y2).write(' ').write(z2).write('\n');
+            writer.write("      vertex ").write(x3).write(' ').write(y3).write(' ').write(z3).write('\n');
+            writer.write("    endloop\n");
+            writer.write("  endfacet\n");
+        }
+
+        @Override
+        void finish() throws IOException {
             writer.write("endsolid exported_object\n");
-        } catch (IOException e) {
-            e.printStackTrace();
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
         }
     }
 
-    private Object3d.Vertex calculateNormal(Object3d.Vertex v1, Object3d.Vertex v2, Object3d.Vertex v3) {
-        // Calculate two vectors from the triangle
-        Object3d.Vertex vector1 = new Object3d.Vertex(v2.x - v1.x, v2.y - v1.y, v2.z - v1.z);
-        Object3d.Vertex vector2 = new Object3d.Vertex(v3.x - v1.x, v3.y - v1.y, v3.z - v1.z);
+    // 80 byte header, uint32 triangle count, then 50 byte records, all little-endian.
+    // Records are put straight into the output's buffers. The header is written with the first record and holds the
+    // announced count, a plain file is patched when the count turns out different, a compressed one cannot be.
+    private static class BinaryFacetWriter extends FacetWriter {
 
-        // Calculate the cross product of the two vectors
-        double normalX = vector1.y * vector2.z - vector1.z * vector2.y;
-        double normalY = vector1.z * vector2.x - vector1.x * vector2.z;
-        double normalZ = vector1.x * vector2.y - vector1.y * vector2.x;
+        private final ExportOutput output;
+        private long announced;
+        // Count in the header, -1 until it is written
+        private long headerCount = -1;
 
-        // Normalize the result
-        double length = Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
-        normalX /= length;
-        normalY /= length;
-        normalZ /= length;
+        BinaryFacetWriter(ExportOutput output) {
+            this.output = output;
+        }
 
-        return new Object3d.Vertex(normalX, normalY, normalZ);
+        @Override
+        void announce(long facets) {
+            announced += facets;
+        }
+
+        private void writeHeader() throws IOException {
+            byte[] header = new byte[HEADER_LENGTH];
+            byte[] title = "binary STL exported by glTF Konverter".getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(title, 0, header, 0, title.length);
+            output.write(header);
+            headerCount = announced <= 0xFFFFFFFFL ? announced : 0;
+            output.buffer(4).putInt((int) headerCount);
+        }
+
+        @Override
+        void write(double nx, double ny, double nz, double x1, double y1, double z1,
+                   double x2, double y2, double z2, double x3, double y3, double z3) throws IOException {
+            if (headerCount < 0)
+                writeHeader();
+            ByteBuffer buffer = output.buffer(RECORD_LENGTH);
+            buffer.putFloat((float) nx).putFloat((float) ny).putFloat((float) nz);
+            buffer.putFloat((float) x1).putFloat((float) y1).putFloat((float) z1);
+            buffer.putFloat((float) x2).putFloat((float) y2).putFloat((float) z2);
+            buffer.putFloat((float) x3).putFloat((float) y3).putFloat((float) z3);
+            buffer.putShort((short) 0); // Attribute byte count
+        }
+
+        @Override
+        void finish() throws IOException {
+            if (headerCount < 0)
+                writeHeader();
+            if (facetCount > 0xFFFFFFFFL)
+                throw new IOException("Binary STL cannot hold more than 2^32 - 1 triangles: " + facetCount);
+            if (facetCount == headerCount)
+                return;
+            if (!(output instanceof AsyncFileOutput))
+                throw new IOException("Compressed binary STL needs the triangle count up front, " + headerCount
+                        + " were announced but " + facetCount + " written");
+            ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt((int) facetCount);
+            count.flip();
+            ((AsyncFileOutput) output).writeAt(count, HEADER_LENGTH);
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
     }
 }
@@ -0,0 +1,108 @@
+package exporters;
+
+import metrics.ConversionMetrics;
+import metrics.Stage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Texture output of one export: every distinct image is written once, in the background while the geometry is written.
+// Images are identified by their content, a texture shared by several materials ends up in a single file.
+final class TextureWriter implements Closeable {
+
+    private static final ExecutorService WRITERS = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2), new WriterThreadFactory());
+
+    private final Map<byte[], Path> byIdentity = new IdentityHashMap<>();
+    private final Map<ByteBuffer, Path> byContent = new HashMap<>();
+    private final List<Future<?>> pending = new ArrayList<>();
+
+    // Writes happen on the pool, they are recorded in the metrics of the conversion that created this writer
+    private final ConversionMetrics metrics = ConversionMetrics.current();
+
+    // Schedules the image to be written to target, unless the same image was already scheduled.
+    // Returns the file that holds the image, which is target for every image seen the first time.
+    Path write(byte[] image, Path target) {
+        Path existing = byIdentity.get(image);
+        if (existing != null)
+            return existing;
+
+        ByteBuffer hash = ByteBuffer.wrap(sha256(image));
+        existing = byContent.putIfAbsent(hash, target);
+        if (existing != null) {
+            byIdentity.put(image, existing);
+            return existing;
+        }
+        byIdentity.put(image, target);
+        pending.add(WRITERS.submit(() -> {
+            try {
+                long start = System.nanoTime();
+                Files.write(target, image);
+                metrics.record(Stage.TEXTURES, System.nanoTime() - start, image.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+        return target;
+    }
+
+    // Waits until every scheduled image is on disk, reports the first failed write
+    void await() throws IOException {
+        try {
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing textures");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IOException("Writing a texture failed", e.getCause());
+        } finally {
+            pending.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        await();
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is part of every Java platform", e);
+        }
+    }
+
+    private static class WriterThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "texture-writer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
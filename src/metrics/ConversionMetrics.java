@@ -0,0 +1,244 @@
+package metrics;
+
+import jdk.jfr.FlightRecorder;
+import org.json.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Timings, byte counts, mesh sizes and allocations of one conversion, split by stage.
+// The converting thread activates the metrics, parsers and exporters find them through current() and time their
+// stages. Nested stages are subtracted from the enclosing one, so every stage reports its own time only.
+// Allocations are those of the converting thread, work handed to pools is included in the wall time of the stage
+// that waits for it. Texture writes are recorded by the writer threads.
+public final class ConversionMetrics {
+
+    private static final ThreadLocal<ConversionMetrics> CURRENT = new ThreadLocal<>();
+
+    // Returned by current() when nothing is measured, every method does nothing
+    private static final ConversionMetrics DISABLED = new ConversionMetrics(null);
+    private static final Timer NO_TIMER = new Timer(DISABLED, null, null);
+
+    private final Path input;
+    private final AtomicLongArray nanos = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray bytes = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray allocatedBytes = new AtomicLongArray(Stage.values().length);
+    private final AtomicLong vertices = new AtomicLong();
+    private final AtomicLong texCoords = new AtomicLong();
+    private final AtomicLong triangles = new AtomicLong();
+    private long totalNanos;
+    private long totalAllocatedBytes;
+
+    // Innermost open timer of the converting thread
+    private Timer open;
+    // Begun conversion event while a recording is running
+    private Object event;
+
+    public ConversionMetrics(Path input) {
+        this.input = input;
+    }
+
+    // Metrics of the conversion running on this thread, or an instance that ignores everything
+    public static ConversionMetrics current() {
+        ConversionMetrics metrics = CURRENT.get();
+        return metrics != null ? metrics : DISABLED;
+    }
+
+    // Makes these the current metrics of this thread until the scope is closed, which also records the totals
+    public Scope activate() {
+        return new Scope(this);
+    }
+
+    // Starts timing a stage on this thread, close the timer when the stage is done
+    public Timer time(Stage stage) {
+        if (this == DISABLED)
+            return NO_TIMER;
+        open = new Timer(this, stage, open);
+        return open;
+    }
+
+    // For work measured elsewhere, e.g. on another thread. Safe to call from any thread.
+    public void record(Stage stage, long nanos, long bytes) {
+        if (this == DISABLED)
+            return;
+        this.nanos.addAndGet(stage.ordinal(), nanos);
+        this.bytes.addAndGet(stage.ordinal(), bytes);
+    }
+
+    public void addBytes(Stage stage, long bytes) {
+        if (this != DISABLED)
+            this.bytes.addAndGet(stage.ordinal(), bytes);
+    }
+
+    public void addMesh(long vertices, long texCoords, long triangles) {
+        if (this == DISABLED)
+            return;
+        this.vertices.addAndGet(vertices);
+        this.texCoords.addAndGet(texCoords);
+        this.triangles.addAndGet(triangles);
+    }
+
+    public boolean isEnabled() {
+        return this != DISABLED;
+    }
+
+    public Path getInput() {
+        return input;
+    }
+
+    public long getNanos(Stage stage) {
+        return nanos.get(stage.ordinal());
+    }
+
+    public long getBytes(Stage stage) {
+        return bytes.get(stage.ordinal());
+    }
+
+    public long getAllocatedBytes(Stage stage) {
+        return allocatedBytes.get(stage.ordinal());
+    }
+
+    public long getVertices() {
+        return vertices.get();
+    }
+
+    public long getTexCoords() {
+        return texCoords.get();
+    }
+
+    public long getTriangles() {
+        return triangles.get();
+    }
+
+    // Wall time between activate() and closing the scope
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    // Everything the converting thread allocated while the scope was active, -1 when the JVM cannot tell
+    public long getTotalAllocatedBytes() {
+        return totalAllocatedBytes;
+    }
+
+    // {"vertices": .., "triangles": .., "allocatedBytes": .., "stages": {"read": {"millis": .., "bytes": .., ...}}}
+    public JSONObject toJson() {
+        JSONObject stages = new JSONObject();
+        for (Stage stage : Stage.values()) {
+            if (getNanos(stage) == 0 && getBytes(stage) == 0)
+                continue;
+            stages.put(stage.key(), new JSONObject()
+                    .put("millis", getNanos(stage) / 1e6)
+                    .put("bytes", getBytes(stage))
+                    .put("allocatedBytes", getAllocatedBytes(stage)));
+        }
+        return new JSONObject()
+                .put("millis", totalNanos / 1e6)
+                .put("vertices", getVertices())
+                .put("texCoords", getTexCoords())
+                .put("triangles", getTriangles())
+                .put("allocatedBytes", totalAllocatedBytes)
+                .put("stages", stages);
+    }
+
+    // Whether a Flight Recorder recording has the conversion events enabled. The events are only registered once
+    // Flight Recorder runs, which keeps its classes out of conversions nobody records.
+    public static boolean isRecording() {
+        return FlightRecorder.isInitialized() && FlightRecorderEvents.isEnabled();
+    }
+
+    // Commits the Flight Recorder events of the conversion, one gltf.Conversion spanning the active scope and one
+    // gltf.Stage per measured stage. Does nothing unless a recording was running when the scope was activated.
+    public void commitEvents(String format, boolean success, long bytesIn, long bytesOut) {
+        if (event == null)
+            return;
+        String inputName = input != null ? input.toString() : null;
+        FlightRecorderEvents.commitConversion(event, inputName, format, success, bytesIn, bytesOut, getVertices(),
+                getTriangles(), totalAllocatedBytes);
+        event = null;
+        for (Stage stage : Stage.values()) {
+            if (getNanos(stage) != 0 || getBytes(stage) != 0)
+                FlightRecorderEvents.commitStage(inputName, stage, getNanos(stage), getBytes(stage), getAllocatedBytes(stage));
+        }
+    }
+
+    // Bytes allocated by the current thread so far, -1 when not supported
+    private static long allocatedByThisThread() {
+        return Allocations.BEAN != null ? Allocations.BEAN.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    // Loaded on first use, so the management classes are not touched while nothing is measured
+    private static final class Allocations {
+        static final com.sun.management.ThreadMXBean BEAN = bean();
+
+        private static com.sun.management.ThreadMXBean bean() {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean))
+                return null;
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+        }
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final ConversionMetrics metrics;
+        private final ConversionMetrics previous;
+        private final long start;
+        private final long startAllocated;
+
+        private Scope(ConversionMetrics metrics) {
+            this.metrics = metrics;
+            this.previous = CURRENT.get();
+            CURRENT.set(metrics);
+            if (isRecording())
+                metrics.event = FlightRecorderEvents.beginConversion();
+            start = System.nanoTime();
+            startAllocated = allocatedByThisThread();
+        }
+
+        @Override
+        public void close() {
+            metrics.totalNanos = System.nanoTime() - start;
+            metrics.totalAllocatedBytes = startAllocated >= 0 ? allocatedByThisThread() - startAllocated : -1;
+            if (previous != null)
+                CURRENT.set(previous);
+            else
+                CURRENT.remove();
+        }
+    }
+
+    public static final class Timer implements AutoCloseable {
+        private final ConversionMetrics metrics;
+        private final Stage stage;
+        private final Timer parent;
+        private final long start;
+        private final long startAllocated;
+        private long childNanos;
+        private long childAllocated;
+
+        private Timer(ConversionMetrics metrics, Stage stage, Timer parent) {
+            this.metrics = metrics;
+            this.stage = stage;
+            this.parent = parent;
+            this.start = stage != null ? System.nanoTime() : 0;
+            this.startAllocated = stage != null ? allocatedByThisThread() : 0;
+        }
+
+        @Override
+        public void close() {
+            if (stage == null)
+                return;
+            long elapsed = System.nanoTime() - start;
+            long allocated = startAllocated >= 0 ? allocatedByThisThread() - startAllocated : 0;
+            metrics.nanos.addAndGet(stage.ordinal(), elapsed - childNanos);
+            metrics.allocatedBytes.addAndGet(stage.ordinal(), allocated - childAllocated);
+            if (parent != null) {
+                parent.childNanos += elapsed;
+                parent.childAllocated += allocated;
+            }
+            metrics.open = parent;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package metrics;
+
+import jdk.jfr.AnnotationElement;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.EventFactory;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import jdk.jfr.ValueDescriptor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+// Flight Recorder events of the conversions, gltf.Conversion spans a whole file and gltf.Stage carries the totals of
+// one stage. They are defined through EventFactory because javac --release 14 cannot resolve the JDK-internal
+// superclass of jdk.jfr.Event, so event classes cannot be declared and the event methods are called reflectively.
+final class FlightRecorderEvents {
+
+    private static final String CATEGORY = "glTF Konverter";
+
+    // Field order of the conversion event
+    static final int INPUT = 0, FORMAT = 1, SUCCESS = 2, BYTES_IN = 3, BYTES_OUT = 4, VERTICES = 5, TRIANGLES = 6,
+            ALLOCATED = 7;
+
+    private static final EventFactory CONVERSION = EventFactory.create(
+            type("gltf.Conversion", "Conversion", "Conversion of a single file"),
+            List.of(field(String.class, "input", "Input"),
+                    field(String.class, "format", "Format"),
+                    field(boolean.class, "success", "Success"),
+                    bytesField("bytesIn", "Bytes In"),
+                    bytesField("bytesOut", "Bytes Out"),
+                    field(long.class, "vertices", "Vertices"),
+                    field(long.class, "triangles", "Triangles"),
+                    bytesField("allocated", "Allocated")));
+
+    private static final EventFactory STAGE = EventFactory.create(
+            type("gltf.Stage", "Conversion Stage", "Time, bytes and allocations of one stage of a conversion"),
+            List.of(field(String.class, "input", "Input"),
+                    field(String.class, "stage", "Stage"),
+                    new ValueDescriptor(long.class, "time", List.of(new AnnotationElement(Label.class, "Time"),
+                            new AnnotationElement(Timespan.class, Timespan.NANOSECONDS))),
+                    bytesField("bytes", "Bytes"),
+                    bytesField("allocated", "Allocated")));
+
+    private static final Method BEGIN, END, SET, SHOULD_COMMIT, COMMIT;
+
+    static {
+        try {
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            BEGIN = event.getMethod("begin");
+            END = event.getMethod("end");
+            SET = event.getMethod("set", int.class, Object.class);
+            SHOULD_COMMIT = event.getMethod("shouldCommit");
+            COMMIT = event.getMethod("commit");
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private FlightRecorderEvents() {
+    }
+
+    // Whether a recording wants conversion events
+    static boolean isEnabled() {
+        return CONVERSION.getEventType().isEnabled();
+    }
+
+    static Object beginConversion() {
+        Object event = CONVERSION.newEvent();
+        invoke(BEGIN, event);
+        return event;
+    }
+
+    // values in field order, see INPUT to ALLOCATED
+    static void commitConversion(Object event, Object... values) {
+        invoke(END, event);
+        if (!(Boolean) invoke(SHOULD_COMMIT, event))
+            return;
+        for (int i = 0; i < values.length; i++) {
+            invoke(SET, event, i, values[i]);
+        }
+        invoke(COMMIT, event);
+    }
+
+    static void commitStage(String input, Stage stage, long nanos, long bytes, long allocated) {
+        Object event = STAGE.newEvent();
+        invoke(SET, event, 0, input);
+        invoke(SET, event, 1, stage.key());
+        invoke(SET, event, 2, nanos);
+        invoke(SET, event, 3, bytes);
+        invoke(SET, event, 4, allocated);
+        invoke(COMMIT, event);
+    }
+
+    private static List<AnnotationElement> type(String name, String label, String description) {
+        return List.of(new AnnotationElement(Name.class, name),
+                new AnnotationElement(Label.class, label),
+                new AnnotationElement(Description.class, description),
+                new AnnotationElement(Category.class, new String[]{CATEGORY}),
+                new AnnotationElement(StackTrace.class, false));
+    }
+
+    private static ValueDescriptor field(Class<?> type, String name, String label) {
+        return new ValueDescriptor(type, name, List.of(new AnnotationElement(Label.class, label)));
+    }
+
+    private static ValueDescriptor bytesField(String name, String label) {
+        return new ValueDescriptor(long.class, name, List.of(new AnnotationElement(Label.class, label),
+                new AnnotationElement(DataAmount.class, DataAmount.BYTES)));
+    }
+
+    private static Object invoke(Method method, Object event, Object... arguments) {
+        try {
+            return method.invoke(event, arguments);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
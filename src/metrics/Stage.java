@@ -0,0 +1,28 @@
+package metrics;
+
+// Parts of a conversion that are measured separately
+public enum Stage {
+    // Reading input files, memory-mapped files are only mapped here and read while decoding
+    READ("read"),
+    // Parsing the glTF JSON
+    JSON("json"),
+    // Decoding accessors and images into mesh data
+    DECODE("decode"),
+    // Welding and decimation
+    OPTIMIZE("optimize"),
+    // Formatting and writing the output file
+    ENCODE("encode"),
+    // Writing texture files, runs on the texture writer threads alongside the other stages
+    TEXTURES("textures");
+
+    private final String key;
+
+    Stage(String key) {
+        this.key = key;
+    }
+
+    // Name used in the JSON summary and the JFR events
+    public String key() {
+        return key;
+    }
+}
@@ -0,0 +1,548 @@
+package optimizers;
+
+import core.Object3d;
+
+import java.util.Arrays;
+
+// Quadric error metric simplification (Garland & Heckbert). Edges collapse onto one of their two end points, so every
+// remaining vertex keeps its original position and texture coordinate.
+// Works in passes: every edge goes into a priority queue ordered by collapse error and the cheapest ones are collapsed
+// first, each vertex at most once per pass, then the adjacency is rebuilt for the next pass. All state lives in flat
+// primitive arrays, memory grows linearly with the mesh and a pass takes O(n log n).
+// Borders keep their outline and texture seams are collapsed on both sides together or not at all, so meshes with
+// many seams or non-manifold edges may stay above the target.
+public final class MeshDecimator {
+
+    private static final int MAX_PASSES = 64;
+
+    // Border edges are held in place by a plane through the edge, perpendicular to its triangle, with this weight
+    private static final float BORDER_WEIGHT = 10;
+
+    // Triangles may turn by a bit less than 90 degrees in one collapse, more would flip or nearly flip them
+    private static final double MIN_NORMAL_COSINE = 0.01;
+
+    private static final byte INTERIOR = 0;
+    private static final byte BORDER = 1;
+    private static final byte LOCKED = 2;
+
+    // Wedges are the vertices of the Object3d, a position plus a texture coordinate. Several wedges share a position
+    // along texture seams, collapses and topology work on positions.
+    private final int[] wedgePosition;
+    private final int positionCount;
+    // Positions scaled into the unit cube, so errors do not depend on the size of the model
+    private final float[] positions;
+    // Ten coefficients per position: a², b², c², ab, ac, bc, ad, bd, cd, d²
+    private final float[] quadrics;
+
+    // Three wedges per triangle, a dead triangle has -1 as its first corner
+    private final int[] corners;
+    private int triangleCount;
+    private int aliveCount;
+
+    // Triangles around every position, rebuilt each pass
+    private final int[] firstTriangle;
+    private final int[] adjacentTriangles;
+    private final byte[] kind;
+
+    // Edges of the current pass, from is the end point that moves
+    private int[] edgeFrom = new int[0];
+    private int[] edgeTo = new int[0];
+    private boolean[] edgeBorder = new boolean[0];
+
+    private final int[] touchedInPass;
+    private final int[] mark;
+    private int markStamp;
+    private int pass;
+
+    // Scratch space: neighbours of one position, normals and wedge mapping of one collapse
+    private int[] neighbours = new int[32];
+    private int[] neighbourUses = new int[32];
+    private int[] neighbourTriangle = new int[32];
+    private final double[] before = new double[3];
+    private final double[] after = new double[3];
+    private int[] mapFrom = new int[16];
+    private int[] mapTo = new int[16];
+    private int mapSize;
+
+    private MeshDecimator(float[] xyz, int wedgeCount, int[] corners, int triangleCount) {
+        int[] representative = VertexWelder.findDuplicates(xyz, null, wedgeCount, 0);
+        wedgePosition = new int[wedgeCount];
+        int count = 0;
+        for (int wedge = 0; wedge < wedgeCount; wedge++) {
+            wedgePosition[wedge] = representative[wedge] == wedge ? count++ : wedgePosition[representative[wedge]];
+        }
+        positionCount = count;
+        positions = new float[positionCount * 3];
+        float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < wedgeCount * 3; i++) {
+            min[i % 3] = Math.min(min[i % 3], xyz[i]);
+            max[i % 3] = Math.max(max[i % 3], xyz[i]);
+        }
+        float extent = Math.max(max[0] - min[0], Math.max(max[1] - min[1], max[2] - min[2]));
+        float scale = extent > 0 ? 1 / extent : 1;
+        for (int wedge = 0; wedge < wedgeCount; wedge++) {
+            if (representative[wedge] == wedge) {
+                int position = wedgePosition[wedge];
+                for (int i = 0; i < 3; i++) {
+                    positions[position * 3 + i] = (xyz[wedge * 3 + i] - min[i]) * scale;
+                }
+            }
+        }
+        quadrics = new float[positionCount * 10];
+
+        this.corners = corners;
+        this.triangleCount = triangleCount;
+        this.aliveCount = triangleCount;
+        firstTriangle = new int[positionCount + 1];
+        adjacentTriangles = new int[triangleCount * 3];
+        kind = new byte[positionCount];
+        touchedInPass = new int[positionCount];
+        mark = new int[positionCount];
+
+        // Triangles with two corners on the same position have no area, they would only get in the way of the topology
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int a = position(triangle, 0);
+            int b = position(triangle, 1);
+            int c = position(triangle, 2);
+            if (a == b || b == c || a == c) {
+                corners[triangle * 3] = -1;
+                aliveCount--;
+            }
+        }
+    }
+
+    // Reduces the geometry of object in place to at most targetTriangles triangles, or as close as it gets.
+    // Exactly duplicated vertices are merged first and vertices no triangle uses any more are dropped at the end.
+    public static void decimate(Object3d object, int targetTriangles) {
+        if (targetTriangles < 0)
+            throw new IllegalArgumentException("targetTriangles must not be negative, got " + targetTriangles);
+        if (object.getTriangleCount() <= targetTriangles)
+            return;
+        // Duplicates would look like seams and could not be collapsed
+        VertexWelder.weld(object, 0);
+        int triangleCount = object.getTriangleCount();
+        if (triangleCount <= targetTriangles)
+            return;
+
+        int vertexCount = object.getVertexCount();
+        int texCoordCount = object.getTexCoordCount();
+        float[] xyz = new float[vertexCount * 3];
+        object.copyVertices(0, vertexCount, xyz, 0);
+        int[] indices = new int[triangleCount * 3];
+        object.copyTriangles(0, triangleCount, indices, 0);
+        for (int index : indices) {
+            if (index < 0 || index >= vertexCount)
+                throw new IndexOutOfBoundsException("Triangle index " + index + " out of range for " + vertexCount + " vertices");
+        }
+
+        MeshDecimator decimator = new MeshDecimator(xyz, vertexCount, indices, triangleCount);
+        decimator.run(targetTriangles);
+        decimator.compact();
+
+        float[] uv = new float[texCoordCount * 2];
+        object.copyTexCoords(0, texCoordCount, uv, 0);
+        object.clearGeometry();
+        object.addVertices(xyz, 0, vertexCount);
+        object.addTexCoords(uv, 0, texCoordCount);
+        object.addTriangles(indices, 0, decimator.triangleCount);
+        // Drops the vertices that were collapsed away
+        VertexWelder.weld(object, 0);
+    }
+
+    private void run(int targetTriangles) {
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            if (alive(triangle))
+                addTriangleQuadric(triangle);
+        }
+        while (aliveCount > targetTriangles && pass < MAX_PASSES) {
+            pass++;
+            compact();
+            buildAdjacency();
+            int edgeCount = classify(pass == 1);
+            long[] queue = queueEdges(edgeCount);
+            // Each pass removes at most half of what is left to remove, or a sixteenth of the mesh when that is more,
+            // so the errors are brought up to date before the cheap collapses run out
+            int passTarget = Math.max(targetTriangles, aliveCount - Math.max((aliveCount - targetTriangles + 1) / 2, aliveCount / 16));
+            if (collapseEdges(queue, passTarget) == 0)
+                break;
+        }
+    }
+
+    private boolean alive(int triangle) {
+        return corners[triangle * 3] >= 0;
+    }
+
+    private int position(int triangle, int corner) {
+        return wedgePosition[corners[triangle * 3 + corner]];
+    }
+
+    private int cornerOf(int triangle, int position) {
+        for (int corner = 0; corner < 3; corner++) {
+            if (position(triangle, corner) == position)
+                return corner;
+        }
+        return -1;
+    }
+
+    // Moves the live triangles to the front
+    private void compact() {
+        int kept = 0;
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            if (alive(triangle)) {
+                System.arraycopy(corners, triangle * 3, corners, kept * 3, 3);
+                kept++;
+            }
+        }
+        triangleCount = kept;
+        aliveCount = kept;
+    }
+
+    private void buildAdjacency() {
+        Arrays.fill(firstTriangle, 0);
+        for (int i = 0; i < triangleCount * 3; i++) {
+            firstTriangle[wedgePosition[corners[i]] + 1]++;
+        }
+        for (int position = 0; position < positionCount; position++) {
+            firstTriangle[position + 1] += firstTriangle[position];
+        }
+        // firstTriangle[p] is used as the insertion point of p and ends up at the start of p + 1, shifted back below
+        for (int i = 0; i < triangleCount * 3; i++) {
+            adjacentTriangles[firstTriangle[wedgePosition[corners[i]]]++] = i / 3;
+        }
+        for (int position = positionCount; position > 0; position--) {
+            firstTriangle[position] = firstTriangle[position - 1];
+        }
+        firstTriangle[0] = 0;
+    }
+
+    // Finds the kind of every position and lists every edge once, returns the number of edges
+    private int classify(boolean addBorderQuadrics) {
+        int edgeCount = 0;
+        for (int position = 0; position < positionCount; position++) {
+            int start = firstTriangle[position];
+            int end = firstTriangle[position + 1];
+            if (start == end) {
+                kind[position] = LOCKED;
+                continue;
+            }
+
+            int neighbourCount = 0;
+            for (int i = start; i < end; i++) {
+                int triangle = adjacentTriangles[i];
+                int corner = cornerOf(triangle, position);
+                neighbourCount = addNeighbour(position(triangle, (corner + 1) % 3), triangle, neighbourCount);
+                neighbourCount = addNeighbour(position(triangle, (corner + 2) % 3), triangle, neighbourCount);
+            }
+
+            boolean border = false;
+            boolean locked = false;
+            for (int i = 0; i < neighbourCount; i++) {
+                border |= neighbourUses[i] == 1;
+                locked |= neighbourUses[i] > 2;
+            }
+            // A single fan has as many neighbours as triangles, or one more at a border. Anything else means several
+            // fans meet at this point and it has to stay where it is.
+            int fanNeighbours = (end - start) + (border ? 1 : 0);
+            kind[position] = locked || neighbourCount != fanNeighbours ? LOCKED : border ? BORDER : INTERIOR;
+
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = neighbours[i];
+                if (neighbour < position || neighbourUses[i] > 2)
+                    continue;
+                if (edgeCount == edgeFrom.length)
+                    growEdges();
+                edgeFrom[edgeCount] = position;
+                edgeTo[edgeCount] = neighbour;
+                edgeBorder[edgeCount] = neighbourUses[i] == 1;
+                edgeCount++;
+                if (addBorderQuadrics && neighbourUses[i] == 1)
+                    addBorderQuadric(neighbourTriangle[i], position, neighbour);
+            }
+        }
+        return edgeCount;
+    }
+
+    private int addNeighbour(int neighbour, int triangle, int neighbourCount) {
+        for (int i = 0; i < neighbourCount; i++) {
+            if (neighbours[i] == neighbour) {
+                neighbourUses[i]++;
+                return neighbourCount;
+            }
+        }
+        if (neighbourCount == neighbours.length) {
+            neighbours = Arrays.copyOf(neighbours, neighbourCount * 2);
+            neighbourUses = Arrays.copyOf(neighbourUses, neighbourCount * 2);
+            neighbourTriangle = Arrays.copyOf(neighbourTriangle, neighbourCount * 2);
+        }
+        neighbours[neighbourCount] = neighbour;
+        neighbourUses[neighbourCount] = 1;
+        neighbourTriangle[neighbourCount] = triangle;
+        return neighbourCount + 1;
+    }
+
+    private void growEdges() {
+        int capacity = Math.max(1024, edgeFrom.length + (edgeFrom.length >> 1));
+        edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+        edgeTo = Arrays.copyOf(edgeTo, capacity);
+        edgeBorder = Arrays.copyOf(edgeBorder, capacity);
+    }
+
+    // Picks the cheaper allowed direction of every edge. Entries are the error as float bits in the upper half and
+    // the edge in the lower half, errors are never negative so the longs sort like the errors.
+    private long[] queueEdges(int edgeCount) {
+        long[] queue = new long[edgeCount];
+        int size = 0;
+        for (int edge = 0; edge < edgeCount; edge++) {
+            int a = edgeFrom[edge];
+            int b = edgeTo[edge];
+            double aToB = canMove(a, edge) ? error(a, b) : Double.NaN;
+            double bToA = canMove(b, edge) ? error(b, a) : Double.NaN;
+            double error;
+            if (!Double.isNaN(aToB) && (Double.isNaN(bToA) || aToB <= bToA)) {
+                error = aToB;
+            } else if (!Double.isNaN(bToA)) {
+                error = bToA;
+                edgeFrom[edge] = b;
+                edgeTo[edge] = a;
+            } else {
+                continue;
+            }
+            queue[size++] = (long) Float.floatToIntBits((float) Math.max(0, error)) << 32 | edge;
+        }
+        return size == edgeCount ? queue : Arrays.copyOf(queue, size);
+    }
+
+    // Border points only slide along the border, locked ones never move
+    private boolean canMove(int position, int edge) {
+        return kind[position] == INTERIOR || (kind[position] == BORDER && edgeBorder[edge]);
+    }
+
+    private int collapseEdges(long[] queue, int passTarget) {
+        int collapsed = 0;
+        int size = queue.length;
+        heapify(queue, size);
+        while (size > 0 && aliveCount > passTarget) {
+            int edge = (int) queue[0];
+            queue[0] = queue[--size];
+            siftDown(queue, 0, size);
+
+            int from = edgeFrom[edge];
+            int to = edgeTo[edge];
+            // The adjacency of both ends is out of date after a collapse, they wait for the next pass
+            if (touchedInPass[from] == pass || touchedInPass[to] == pass || !canCollapse(from, to))
+                continue;
+            collapse(from, to);
+            touchedInPass[from] = pass;
+            touchedInPass[to] = pass;
+            collapsed++;
+        }
+        return collapsed;
+    }
+
+    private boolean canCollapse(int from, int to) {
+        // Every wedge of from needs a wedge of to in the same texture island, found through the triangles on the edge
+        mapSize = 0;
+        int edgeTriangles = 0;
+        for (int i = firstTriangle[from]; i < firstTriangle[from + 1]; i++) {
+            int triangle = adjacentTriangles[i];
+            if (!alive(triangle))
+                continue;
+            int toCorner = cornerOf(triangle, to);
+            if (toCorner < 0)
+                continue;
+            edgeTriangles++;
+            if (!addMapping(corners[triangle * 3 + cornerOf(triangle, from)], corners[triangle * 3 + toCorner]))
+                return false;
+        }
+        if (edgeTriangles == 0)
+            return false;
+
+        for (int i = firstTriangle[from]; i < firstTriangle[from + 1]; i++) {
+            int triangle = adjacentTriangles[i];
+            if (!alive(triangle) || cornerOf(triangle, to) >= 0)
+                continue;
+            if (mapping(corners[triangle * 3 + cornerOf(triangle, from)]) < 0 || flips(triangle, from, to))
+                return false;
+        }
+
+        // Link condition: the points next to both ends must be exactly the tips of the triangles on the edge,
+        // otherwise the collapse would glue two sheets of the surface together
+        markStamp++;
+        for (int i = firstTriangle[from]; i < firstTriangle[from + 1]; i++) {
+            int triangle = adjacentTriangles[i];
+            if (alive(triangle)) {
+                for (int corner = 0; corner < 3; corner++) {
+                    mark[position(triangle, corner)] = markStamp;
+                }
+            }
+        }
+        int shared = 0;
+        for (int i = firstTriangle[to]; i < firstTriangle[to + 1]; i++) {
+            int triangle = adjacentTriangles[i];
+            if (!alive(triangle))
+                continue;
+            for (int corner = 0; corner < 3; corner++) {
+                int position = position(triangle, corner);
+                if (position != from && position != to && mark[position] == markStamp) {
+                    mark[position] = 0;
+                    shared++;
+                }
+            }
+        }
+        return shared == edgeTriangles;
+    }
+
+    private boolean addMapping(int fromWedge, int toWedge) {
+        int existing = mapping(fromWedge);
+        if (existing >= 0)
+            return existing == toWedge;
+        if (mapSize == mapFrom.length) {
+            mapFrom = Arrays.copyOf(mapFrom, mapSize * 2);
+            mapTo = Arrays.copyOf(mapTo, mapSize * 2);
+        }
+        mapFrom[mapSize] = fromWedge;
+        mapTo[mapSize] = toWedge;
+        mapSize++;
+        return true;
+    }
+
+    private int mapping(int fromWedge) {
+        for (int i = 0; i < mapSize; i++) {
+            if (mapFrom[i] == fromWedge)
+                return mapTo[i];
+        }
+        return -1;
+    }
+
+    // Compares the normal of the triangle before and after moving from onto to
+    private boolean flips(int triangle, int from, int to) {
+        normal(triangle, from, from, before);
+        normal(triangle, from, to, after);
+        double dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+        double lengths = Math.sqrt(before[0] * before[0] + before[1] * before[1] + before[2] * before[2])
+                * Math.sqrt(after[0] * after[0] + after[1] * after[1] + after[2] * after[2]);
+        return dot <= MIN_NORMAL_COSINE * lengths;
+    }
+
+    // Unnormalized normal of the triangle with position replaced by replacement
+    private void normal(int triangle, int position, int replacement, double[] target) {
+        int a = position(triangle, 0);
+        int b = position(triangle, 1);
+        int c = position(triangle, 2);
+        a = a == position ? replacement : a;
+        b = b == position ? replacement : b;
+        c = c == position ? replacement : c;
+        double ux = positions[b * 3] - positions[a * 3];
+        double uy = positions[b * 3 + 1] - positions[a * 3 + 1];
+        double uz = positions[b * 3 + 2] - positions[a * 3 + 2];
+        double vx = positions[c * 3] - positions[a * 3];
+        double vy = positions[c * 3 + 1] - positions[a * 3 + 1];
+        double vz = positions[c * 3 + 2] - positions[a * 3 + 2];
+        target[0] = uy * vz - uz * vy;
+        target[1] = uz * vx - ux * vz;
+        target[2] = ux * vy - uy * vx;
+    }
+
+    private void collapse(int from, int to) {
+        for (int i = firstTriangle[from]; i < firstTriangle[from + 1]; i++) {
+            int triangle = adjacentTriangles[i];
+            if (!alive(triangle))
+                continue;
+            if (cornerOf(triangle, to) >= 0) {
+                corners[triangle * 3] = -1;
+                aliveCount--;
+            } else {
+                int corner = triangle * 3 + cornerOf(triangle, from);
+                corners[corner] = mapping(corners[corner]);
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            quadrics[to * 10 + i] += quadrics[from * 10 + i];
+        }
+    }
+
+    // Squared distance of to from the planes gathered by both end points
+    private double error(int from, int to) {
+        double x = positions[to * 3], y = positions[to * 3 + 1], z = positions[to * 3 + 2];
+        return error(from * 10, x, y, z) + error(to * 10, x, y, z);
+    }
+
+    private double error(int q, double x, double y, double z) {
+        float[] c = quadrics;
+        return c[q] * x * x + c[q + 1] * y * y + c[q + 2] * z * z
+                + 2 * (c[q + 3] * x * y + c[q + 4] * x * z + c[q + 5] * y * z)
+                + 2 * (c[q + 6] * x + c[q + 7] * y + c[q + 8] * z)
+                + c[q + 9];
+    }
+
+    // Plane of the triangle, weighted by its area
+    private void addTriangleQuadric(int triangle) {
+        double[] n = before;
+        normal(triangle, -1, -1, n);
+        double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+        if (length == 0)
+            return;
+        int a = position(triangle, 0);
+        double d = -(n[0] * positions[a * 3] + n[1] * positions[a * 3 + 1] + n[2] * positions[a * 3 + 2]) / length;
+        for (int corner = 0; corner < 3; corner++) {
+            addPlane(position(triangle, corner), n[0] / length, n[1] / length, n[2] / length, d, length / 2);
+        }
+    }
+
+    // Plane through the edge, perpendicular to the triangle, keeps a border from shrinking
+    private void addBorderQuadric(int triangle, int a, int b) {
+        double[] n = before;
+        normal(triangle, -1, -1, n);
+        double ex = positions[b * 3] - positions[a * 3];
+        double ey = positions[b * 3 + 1] - positions[a * 3 + 1];
+        double ez = positions[b * 3 + 2] - positions[a * 3 + 2];
+        double mx = ey * n[2] - ez * n[1], my = ez * n[0] - ex * n[2], mz = ex * n[1] - ey * n[0];
+        double length = Math.sqrt(mx * mx + my * my + mz * mz);
+        if (length == 0)
+            return;
+        mx /= length;
+        my /= length;
+        mz /= length;
+        double d = -(mx * positions[a * 3] + my * positions[a * 3 + 1] + mz * positions[a * 3 + 2]);
+        double weight = (ex * ex + ey * ey + ez * ez) * BORDER_WEIGHT;
+        addPlane(a, mx, my, mz, d, weight);
+        addPlane(b, mx, my, mz, d, weight);
+    }
+
+    private void addPlane(int position, double a, double b, double c, double d, double weight) {
+        int q = position * 10;
+        quadrics[q] += weight * a * a;
+        quadrics[q + 1] += weight * b * b;
+        quadrics[q + 2] += weight * c * c;
+        quadrics[q + 3] += weight * a * b;
+        quadrics[q + 4] += weight * a * c;
+        quadrics[q + 5] += weight * b * c;
+        quadrics[q + 6] += weight * a * d;
+        quadrics[q + 7] += weight * b * d;
+        quadrics[q + 8] += weight * c * d;
+        quadrics[q + 9] += weight * d * d;
+    }
+
+    private static void heapify(long[] heap, int size) {
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(heap, i, size);
+        }
+    }
+
+    private static void siftDown(long[] heap, int index, int size) {
+        long value = heap[index];
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1] < heap[child])
+                child++;
+            if (heap[child] >= value)
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+}
@@ -0,0 +1,113 @@
+package optimizers;
+
+import core.Object3d;
+import exporters.ExportOptions;
+import exporters.ExportSink;
+import exporters.Exporter;
+import metrics.ConversionMetrics;
+import metrics.Stage;
+
+import java.io.IOException;
+
+// Optimization stage between parser and exporter: collects the whole mesh, optimizes it on finish and then streams
+// the result into the exporter. Only used when an optimization is enabled, otherwise data goes straight through.
+public final class OptimizingSink implements ExportSink {
+
+    private static final int BLOCK_SIZE = 65536;
+
+    private final Exporter exporter;
+    private final String outputPath;
+    private final ExportSink target;
+    private final ExportOptions options;
+    private Object3d object = new Object3d();
+
+    private OptimizingSink(Exporter exporter, String outputPath, ExportSink target, ExportOptions options) {
+        this.exporter = exporter;
+        this.outputPath = outputPath;
+        this.target = target;
+        this.options = options;
+    }
+
+    // The exporter's own sink when the options ask for no optimization
+    public static ExportSink open(Exporter exporter, String outputPath, ExportOptions options) throws IOException {
+        ExportSink target = exporter.open(outputPath);
+        if (!options.isWeldVertices() && !options.isDecimating() && options.getLodLevels() == 0)
+            return target;
+        return new OptimizingSink(exporter, outputPath, target, options);
+    }
+
+    // <name>_lod<level>.<extension> next to the output, a .gz belongs to the extension
+    public static String lodPath(String outputPath, int level) {
+        int dot = outputPath.lastIndexOf('.');
+        if (outputPath.endsWith(".gz"))
+            dot = outputPath.lastIndexOf('.', dot - 1);
+        int separator = Math.max(outputPath.lastIndexOf('/'), outputPath.lastIndexOf('\\'));
+        if (dot <= separator)
+            return outputPath + "_lod" + level;
+        return outputPath.substring(0, dot) + "_lod" + level + outputPath.substring(dot);
+    }
+
+    @Override
+    public void reserve(int vertexCount, int texCoordCount, int triangleCount) {
+        object.reserve(vertexCount, texCoordCount, triangleCount);
+    }
+
+    @Override
+    public void addMaterial(Object3d.Material material) {
+        object.addMaterial(material);
+    }
+
+    @Override
+    public void addVertices(float[] xyz, int offset, int count) {
+        object.addVertices(xyz, offset, count);
+    }
+
+    @Override
+    public void addTexCoords(float[] uv, int offset, int count) {
+        object.addTexCoords(uv, offset, count);
+    }
+
+    @Override
+    public void addTriangles(int[] indices, int offset, int count) {
+        object.addTriangles(indices, offset, count);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        ConversionMetrics metrics = ConversionMetrics.current();
+        ConversionMetrics.Timer optimizeTimer = metrics.time(Stage.OPTIMIZE);
+        try {
+            if (options.isWeldVertices())
+                VertexWelder.weld(object, options.getWeldTolerance());
+            if (options.isDecimating())
+                MeshDecimator.decimate(object, options.getTargetTriangles(object.getTriangleCount()));
+        } finally {
+            optimizeTimer.close();
+        }
+        object.writeTo(target, BLOCK_SIZE);
+        target.finish();
+
+        // Every level is decimated from the one before, which is much cheaper than starting from the full mesh
+        int triangles = object.getTriangleCount();
+        for (int level = 1; level <= options.getLodLevels(); level++) {
+            int lodTriangles = (int) Math.max(1, Math.round(triangles * Math.pow(options.getLodRatio(), level)));
+            ConversionMetrics.Timer lodTimer = metrics.time(Stage.OPTIMIZE);
+            try {
+                MeshDecimator.decimate(object, lodTriangles);
+            } finally {
+                lodTimer.close();
+            }
+            try (ExportSink lod = exporter.open(lodPath(outputPath, level))) {
+                object.writeTo(lod, BLOCK_SIZE);
+                lod.finish();
+            }
+        }
+        object = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        object = null;
+        target.close();
+    }
+}
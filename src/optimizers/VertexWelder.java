@@ -0,0 +1,161 @@
+package optimizers;
+
+import core.Object3d;
+
+// Merges vertices that share position and texture coordinate, then drops every vertex no triangle references.
+// Duplicates are found with an open-addressing table of vertex indices, so no key object is created per vertex.
+// Vertices keep their first-seen order, which keeps the output deterministic.
+public final class VertexWelder {
+
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+
+    private final float[] xyz;
+    private final float[] uv;
+    private final float tolerance;
+
+    private VertexWelder(float[] xyz, float[] uv, float tolerance) {
+        this.xyz = xyz;
+        this.uv = uv;
+        this.tolerance = tolerance;
+    }
+
+    // Rewrites the geometry of object in place, triangles that collapse to a line or a point are removed as well.
+    // tolerance 0 merges only exactly equal vertices, larger values merge vertices that fall into the same grid cell.
+    public static void weld(Object3d object, float tolerance) {
+        int vertexCount = object.getVertexCount();
+        int texCoordCount = object.getTexCoordCount();
+        // Texture coordinates follow the vertex numbering, a mesh where they do not line up is left alone
+        if (vertexCount == 0 || (texCoordCount != 0 && texCoordCount != vertexCount))
+            return;
+
+        float[] xyz = new float[vertexCount * 3];
+        object.copyVertices(0, vertexCount, xyz, 0);
+        float[] uv = null;
+        if (texCoordCount != 0) {
+            uv = new float[texCoordCount * 2];
+            object.copyTexCoords(0, texCoordCount, uv, 0);
+        }
+        int triangleCount = object.getTriangleCount();
+        int[] indices = new int[triangleCount * 3];
+        object.copyTriangles(0, triangleCount, indices, 0);
+
+        int[] remap = findDuplicates(xyz, uv, vertexCount, tolerance);
+
+        // Triangles that collapsed are dropped first, so vertices only they used are dropped as well
+        boolean[] used = new boolean[vertexCount];
+        int keptTriangles = 0;
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int a = representative(remap, indices[triangle * 3]);
+            int b = representative(remap, indices[triangle * 3 + 1]);
+            int c = representative(remap, indices[triangle * 3 + 2]);
+            if (a == b || b == c || a == c)
+                continue;
+            indices[keptTriangles * 3] = a;
+            indices[keptTriangles * 3 + 1] = b;
+            indices[keptTriangles * 3 + 2] = c;
+            used[a] = used[b] = used[c] = true;
+            keptTriangles++;
+        }
+
+        // Representatives always come before their duplicates, so the kept vertices can be moved to the front of the
+        // same arrays and remap turned into the new numbering in one pass
+        int kept = 0;
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            if (remap[vertex] == vertex && used[vertex]) {
+                System.arraycopy(xyz, vertex * 3, xyz, kept * 3, 3);
+                if (uv != null)
+                    System.arraycopy(uv, vertex * 2, uv, kept * 2, 2);
+                remap[vertex] = kept++;
+            }
+        }
+        for (int i = 0; i < keptTriangles * 3; i++) {
+            indices[i] = remap[indices[i]];
+        }
+
+        object.clearGeometry();
+        object.reserve(kept, uv != null ? kept : 0, keptTriangles);
+        object.addVertices(xyz, 0, kept);
+        if (uv != null)
+            object.addTexCoords(uv, 0, kept);
+        object.addTriangles(indices, 0, keptTriangles);
+    }
+
+    private static int representative(int[] remap, int index) {
+        if (index < 0 || index >= remap.length)
+            throw new IndexOutOfBoundsException("Triangle index " + index + " out of range for " + remap.length + " vertices");
+        return remap[index];
+    }
+
+    // remap[v] is the first vertex equal to v, which is v itself for every first occurrence. uv may be null to compare
+    // positions only.
+    static int[] findDuplicates(float[] xyz, float[] uv, int vertexCount, float tolerance) {
+        return new VertexWelder(xyz, uv, tolerance).findDuplicates(vertexCount);
+    }
+
+    private int[] findDuplicates(int vertexCount) {
+        int tableSize = tableSize(vertexCount);
+        int mask = tableSize - 1;
+        // Slots hold vertex + 1, 0 marks a free slot
+        int[] table = new int[tableSize];
+        int[] remap = new int[vertexCount];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            int slot = hash(vertex) & mask;
+            while (true) {
+                int entry = table[slot];
+                if (entry == 0) {
+                    table[slot] = vertex + 1;
+                    remap[vertex] = vertex;
+                    break;
+                }
+                if (equal(entry - 1, vertex)) {
+                    remap[vertex] = entry - 1;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return remap;
+    }
+
+    // Power of two with a load factor of at most one half, up to the largest int array size that is a power of two
+    private static int tableSize(int vertexCount) {
+        int size = 16;
+        while (size < MAX_TABLE_SIZE && size < vertexCount * 2L) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private int hash(int vertex) {
+        long hash = 0;
+        int components = uv != null ? 5 : 3;
+        for (int i = 0; i < components; i++) {
+            hash = hash * 0x9E3779B97F4A7C15L + key(vertex, i);
+        }
+        // Finalizer of MurmurHash3, spreads the bits so that nearby values do not probe the same slots
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    private boolean equal(int first, int second) {
+        int components = uv != null ? 5 : 3;
+        for (int i = 0; i < components; i++) {
+            if (key(first, i) != key(second, i))
+                return false;
+        }
+        return true;
+    }
+
+    // Components 0-2 are x, y, z and 3-4 are u, v
+    private long key(int vertex, int component) {
+        float value = component < 3 ? xyz[vertex * 3 + component] : uv[vertex * 2 + component - 3];
+        if (tolerance > 0)
+            return (long) Math.floor((double) value / tolerance);
+        // Adding 0 turns -0 into 0, floatToIntBits maps every NaN to the same bits
+        return Float.floatToIntBits(value + 0.0f);
+    }
+}
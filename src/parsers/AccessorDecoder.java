@@ -0,0 +1,366 @@
+package parsers;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+// Decodes ranges of accessor elements into plain arrays, ranges are independent and can be decoded concurrently.
+// Follows the accessor rules of glTF 2.0: byteOffset, byteStride of the bufferView, every component type, normalized
+// integers and sparse substitution. Tightly packed data is converted in bulk through typed buffer views, interleaved
+// data element by element.
+final class AccessorDecoder {
+
+    static final int BATCH_SIZE = 65536;
+
+    private static final int BYTE = 5120;
+    private static final int UNSIGNED_BYTE = 5121;
+    private static final int SHORT = 5122;
+    private static final int UNSIGNED_SHORT = 5123;
+    private static final int UNSIGNED_INT = 5125;
+    private static final int FLOAT = 5126;
+
+    // Components converted per bulk read of integer data
+    private static final int SCRATCH_SIZE = 4096;
+
+    private AccessorDecoder() {
+    }
+
+    // Layout of one accessor, resolved once and shared by every range decoded from it
+    static final class Accessor {
+        final int componentType;
+        final boolean normalized;
+        final int components;
+        final int count;
+        // Little-endian, first element at position 0, null for accessors without a bufferView (all zeros)
+        final ByteBuffer data;
+        // Bytes from one element to the next
+        final int stride;
+        // Strictly increasing element indices and their tightly packed replacement elements, both null if not sparse
+        final int[] sparseIndices;
+        final ByteBuffer sparseValues;
+
+        private Accessor(int componentType, boolean normalized, int components, int count, ByteBuffer data,
+                         int stride, int[] sparseIndices, ByteBuffer sparseValues) {
+            this.componentType = componentType;
+            this.normalized = normalized;
+            this.components = components;
+            this.count = count;
+            this.data = data;
+            this.stride = stride;
+            this.sparseIndices = sparseIndices;
+            this.sparseValues = sparseValues;
+        }
+
+        int elementSize() {
+            return components * componentSize(componentType);
+        }
+
+        boolean isPacked() {
+            return stride == elementSize();
+        }
+    }
+
+    // Resolves accessors[index] and checks that every element lies within its bufferView
+    static Accessor accessor(JSONObject gltf, int index, SceneDecoder.Resources resources) throws IOException {
+        JSONArray accessors = gltf.optJSONArray("accessors");
+        if (accessors == null || index < 0 || index >= accessors.length())
+            throw new IOException("accessor " + index + " does not exist");
+        JSONObject accessor = accessors.getJSONObject(index);
+        int componentType = accessor.getInt("componentType");
+        if (!isComponentType(componentType))
+            throw new IOException("accessor " + index + " has an unsupported component type: " + componentType);
+        int componentSize = componentSize(componentType);
+        int components = components(accessor.getString("type"));
+        int elementSize = components * componentSize;
+        int count = accessor.getInt("count");
+        if (count < 0)
+            throw new IOException("accessor " + index + " has a negative count");
+
+        ByteBuffer data = null;
+        int stride = elementSize;
+        if (accessor.has("bufferView")) {
+            int bufferView = accessor.getInt("bufferView");
+            stride = gltf.getJSONArray("bufferViews").getJSONObject(bufferView).optInt("byteStride", elementSize);
+            if (stride < elementSize)
+                throw new IOException("accessor " + index + " has elements of " + elementSize + " bytes but a byteStride of " + stride);
+            data = slice(resources.bufferView(bufferView), accessor.optLong("byteOffset", 0),
+                    count == 0 ? 0 : (long) stride * (count - 1) + elementSize, "accessor " + index);
+        }
+
+        int[] sparseIndices = null;
+        ByteBuffer sparseValues = null;
+        JSONObject sparse = accessor.optJSONObject("sparse");
+        if (sparse != null) {
+            int sparseCount = sparse.getInt("count");
+            JSONObject indices = sparse.getJSONObject("indices");
+            int indexType = indices.getInt("componentType");
+            if (!isIndexType(indexType))
+                throw new IOException("sparse indices of accessor " + index + " have an unsupported component type: " + indexType);
+            ByteBuffer indexData = slice(resources.bufferView(indices.getInt("bufferView")), indices.optLong("byteOffset", 0),
+                    (long) sparseCount * componentSize(indexType), "sparse indices of accessor " + index);
+            sparseIndices = new int[sparseCount];
+            for (int i = 0; i < sparseCount; i++) {
+                sparseIndices[i] = readIndex(indexData, indexType, i * componentSize(indexType));
+                if (Integer.compareUnsigned(sparseIndices[i], count) >= 0 || (i > 0 && sparseIndices[i] <= sparseIndices[i - 1]))
+                    throw new IOException("sparse indices of accessor " + index + " must be increasing and below its count");
+            }
+            JSONObject values = sparse.getJSONObject("values");
+            sparseValues = slice(resources.bufferView(values.getInt("bufferView")), values.optLong("byteOffset", 0),
+                    (long) sparseCount * elementSize, "sparse values of accessor " + index);
+        }
+        return new Accessor(componentType, accessor.optBoolean("normalized", false), components, count, data, stride,
+                sparseIndices, sparseValues);
+    }
+
+    private static ByteBuffer slice(ByteBuffer view, long byteOffset, long byteLength, String what) throws EOFException {
+        if (byteOffset < 0 || byteOffset + byteLength > view.limit())
+            throw new EOFException(what + " exceeds its bufferView");
+        ByteBuffer slice = view.duplicate();
+        slice.position((int) byteOffset);
+        return slice.slice().order(view.order());
+    }
+
+    static void readPositions(Accessor accessor, int first, int count, float[] target) {
+        readFloats(accessor, first, count, target);
+    }
+
+    static void readTexCoords(Accessor accessor, int first, int count, float[] target) {
+        // Primitives without texture coordinates get zeros, flipped like any other
+        if (accessor == null)
+            Arrays.fill(target, 0, count * 2, 0f);
+        else
+            readFloats(accessor, first, count, target);
+        for (int i = 1; i < count * 2; i += 2) {
+            target[i] = (float) (1.0 - target[i]); // Flip the v coordinate
+        }
+    }
+
+    // Triangles [first, first + count) of an indexed primitive, base is added to every index
+    static void readTriangles(Accessor accessor, int first, int count, int base, int[] target) {
+        int firstIndex = first * 3;
+        int indexCount = count * 3;
+        if (accessor.data == null)
+            Arrays.fill(target, 0, indexCount, 0);
+        else if (accessor.isPacked())
+            readPackedIndices(accessor, firstIndex, indexCount, target);
+        else
+            for (int i = 0; i < indexCount; i++) {
+                target[i] = readIndex(accessor.data, accessor.componentType, (firstIndex + i) * accessor.stride);
+            }
+
+        if (accessor.sparseIndices != null) {
+            int size = componentSize(accessor.componentType);
+            for (int j = firstSparse(accessor, firstIndex); j < accessor.sparseIndices.length && accessor.sparseIndices[j] < firstIndex + indexCount; j++) {
+                target[accessor.sparseIndices[j] - firstIndex] = readIndex(accessor.sparseValues, accessor.componentType, j * size);
+            }
+        }
+        if (base != 0)
+            for (int i = 0; i < indexCount; i++) {
+                target[i] += base;
+            }
+    }
+
+    // Triangles of a primitive without indices, the vertices are used in order
+    static void sequentialTriangles(int first, int count, int base, int[] target) {
+        int index = base + first * 3;
+        for (int i = 0; i < count * 3; i++) {
+            target[i] = index++;
+        }
+    }
+
+    // Elements [first, first + count) as floats, components of an element are next to each other
+    private static void readFloats(Accessor accessor, int first, int count, float[] target) {
+        int components = accessor.components;
+        if (accessor.data == null)
+            Arrays.fill(target, 0, count * components, 0f);
+        else if (accessor.isPacked())
+            readPackedFloats(accessor, first * components, count * components, target);
+        else
+            for (int element = 0; element < count; element++) {
+                readElement(accessor, accessor.data, (first + element) * accessor.stride, target, element * components);
+            }
+
+        if (accessor.sparseIndices != null) {
+            int elementSize = accessor.elementSize();
+            for (int j = firstSparse(accessor, first); j < accessor.sparseIndices.length && accessor.sparseIndices[j] < first + count; j++) {
+                readElement(accessor, accessor.sparseValues, j * elementSize, target, (accessor.sparseIndices[j] - first) * components);
+            }
+        }
+    }
+
+    // Absolute reads on views, the shared buffer position is never touched
+    private static void readPackedFloats(Accessor accessor, int firstComponent, int componentCount, float[] target) {
+        ByteBuffer data = accessor.data;
+        switch (accessor.componentType) {
+            case FLOAT:
+                data.asFloatBuffer().get(firstComponent, target, 0, componentCount);
+                break;
+            case BYTE:
+            case UNSIGNED_BYTE: {
+                boolean unsigned = accessor.componentType == UNSIGNED_BYTE;
+                byte[] scratch = new byte[Math.min(componentCount, SCRATCH_SIZE)];
+                for (int done = 0; done < componentCount; done += scratch.length) {
+                    int length = Math.min(scratch.length, componentCount - done);
+                    data.get(firstComponent + done, scratch, 0, length);
+                    for (int i = 0; i < length; i++) {
+                        target[done + i] = toFloat(unsigned ? scratch[i] & 0xFF : scratch[i], accessor);
+                    }
+                }
+                break;
+            }
+            case SHORT:
+            case UNSIGNED_SHORT: {
+                boolean unsigned = accessor.componentType == UNSIGNED_SHORT;
+                ShortBuffer shorts = data.asShortBuffer();
+                short[] scratch = new short[Math.min(componentCount, SCRATCH_SIZE)];
+                for (int done = 0; done < componentCount; done += scratch.length) {
+                    int length = Math.min(scratch.length, componentCount - done);
+                    shorts.get(firstComponent + done, scratch, 0, length);
+                    for (int i = 0; i < length; i++) {
+                        target[done + i] = toFloat(unsigned ? scratch[i] & 0xFFFF : scratch[i], accessor);
+                    }
+                }
+                break;
+            }
+            default: {
+                IntBuffer ints = data.asIntBuffer();
+                for (int i = 0; i < componentCount; i++) {
+                    target[i] = toFloat(Integer.toUnsignedLong(ints.get(firstComponent + i)), accessor);
+                }
+                break;
+            }
+        }
+    }
+
+    private static void readPackedIndices(Accessor accessor, int firstIndex, int indexCount, int[] target) {
+        ByteBuffer data = accessor.data;
+        switch (accessor.componentType) {
+            case UNSIGNED_INT:
+                data.asIntBuffer().get(firstIndex, target, 0, indexCount);
+                break;
+            case UNSIGNED_SHORT: {
+                ShortBuffer shorts = data.asShortBuffer();
+                short[] scratch = new short[Math.min(indexCount, SCRATCH_SIZE)];
+                for (int done = 0; done < indexCount; done += scratch.length) {
+                    int length = Math.min(scratch.length, indexCount - done);
+                    shorts.get(firstIndex + done, scratch, 0, length);
+                    for (int i = 0; i < length; i++) {
+                        target[done + i] = scratch[i] & 0xFFFF;
+                    }
+                }
+                break;
+            }
+            default:
+                for (int i = 0; i < indexCount; i++) {
+                    target[i] = readIndex(data, accessor.componentType, (firstIndex + i) * componentSize(accessor.componentType));
+                }
+                break;
+        }
+    }
+
+    // One element at position of data into target[offset..offset + components)
+    private static void readElement(Accessor accessor, ByteBuffer data, int position, float[] target, int offset) {
+        int size = componentSize(accessor.componentType);
+        for (int c = 0; c < accessor.components; c++, position += size) {
+            switch (accessor.componentType) {
+                case FLOAT:
+                    target[offset + c] = data.getFloat(position);
+                    break;
+                case UNSIGNED_INT:
+                    target[offset + c] = toFloat(Integer.toUnsignedLong(data.getInt(position)), accessor);
+                    break;
+                default:
+                    target[offset + c] = toFloat(readIndex(data, accessor.componentType, position), accessor);
+                    break;
+            }
+        }
+    }
+
+    // Normalized integers map to [0, 1] or [-1, 1] as the specification defines, others keep their value
+    private static float toFloat(long value, Accessor accessor) {
+        if (!accessor.normalized)
+            return value;
+        switch (accessor.componentType) {
+            case BYTE:
+                return Math.max(value / 127f, -1f);
+            case UNSIGNED_BYTE:
+                return value / 255f;
+            case SHORT:
+                return Math.max(value / 32767f, -1f);
+            case UNSIGNED_SHORT:
+                return value / 65535f;
+            default:
+                return (float) (value / 4294967295.0);
+        }
+    }
+
+    // First sparse entry at or after element first
+    private static int firstSparse(Accessor accessor, int first) {
+        int position = Arrays.binarySearch(accessor.sparseIndices, first);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    static int components(String type) throws IOException {
+        switch (type) {
+            case "SCALAR":
+                return 1;
+            case "VEC2":
+                return 2;
+            case "VEC3":
+                return 3;
+            case "VEC4":
+                return 4;
+            default:
+                // Matrices pad their columns for small component types, no attribute converted here uses them
+                throw new IOException("Unsupported accessor type: " + type);
+        }
+    }
+
+    static boolean isComponentType(int componentType) {
+        return componentType >= BYTE && componentType <= FLOAT && componentType != 5124;
+    }
+
+    // Types valid for vertex indices
+    static boolean isIndexType(int componentType) {
+        return componentType == UNSIGNED_BYTE || componentType == UNSIGNED_SHORT || componentType == UNSIGNED_INT;
+    }
+
+    static int componentSize(int componentType) {
+        switch (componentType) {
+            case BYTE:
+            case UNSIGNED_BYTE:
+                return 1;
+            case SHORT:
+            case UNSIGNED_SHORT:
+                return 2;
+            case UNSIGNED_INT:
+            case FLOAT:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Unsupported component type: " + componentType);
+        }
+    }
+
+    static int readIndex(ByteBuffer byteBuffer, int componentType, int position) {
+        switch (componentType) {
+            case BYTE:
+                return byteBuffer.get(position);
+            case UNSIGNED_BYTE:
+                return byteBuffer.get(position) & 0xFF;
+            case SHORT:
+                return byteBuffer.getShort(position);
+            case UNSIGNED_SHORT:
+                return byteBuffer.getShort(position) & 0xFFFF;
+            case UNSIGNED_INT:
+                return byteBuffer.getInt(position);
+            default:
+                throw new IllegalArgumentException("Unsupported component type for indices: " + componentType);
+        }
+    }
+}
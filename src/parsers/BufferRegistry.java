@@ -0,0 +1,287 @@
+package parsers;
+
+import metrics.ConversionMetrics;
+import metrics.Stage;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Resolves every buffers[i] at most once per parse and hands out bounded little-endian views per bufferView.
+// Large files are memory-mapped, small ones read, data URIs decoded. Views compressed with EXT_meshopt_compression are
+// decoded once, prepare() decodes them in parallel. Not thread-safe, used by the decoding thread only.
+final class BufferRegistry implements SceneDecoder.Resources {
+
+    // Below this size reading is cheaper than setting up a mapping
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    private static final String DATA_URI_PREFIX = "data:";
+    private static final String BASE64_MARKER = ";base64,";
+    // "uri": "<anything but a data URI>", the value may contain escapes
+    private static final Pattern EXTERNAL_URI = Pattern.compile("\"uri\"\\s*:\\s*\"(?!data:)([^\"\\\\]*+(?:\\\\.[^\"\\\\]*+)*+)\"");
+
+    static final String MESHOPT_COMPRESSION = "EXT_meshopt_compression";
+
+    // For estimateMemory: a parsed JSON tree takes several times its text, decoded accessors are floats and ints
+    // and so larger than quantized or compressed data
+    private static final int JSON_EXPANSION = 8;
+    private static final int DATA_EXPANSION = 2;
+
+    private final JSONArray bufferViews;
+    private final JSONArray buffers;
+    private final Path basePath;
+    private final ByteBuffer[] resolved;
+    // Decoded EXT_meshopt_compression bufferViews
+    private final ByteBuffer[] decompressed;
+
+    BufferRegistry(JSONObject gltfJson, Path basePath) {
+        this.bufferViews = gltfJson.optJSONArray("bufferViews");
+        this.buffers = gltfJson.optJSONArray("buffers");
+        this.basePath = basePath;
+        this.resolved = new ByteBuffer[buffers != null ? buffers.length() : 0];
+        this.decompressed = new ByteBuffer[bufferViews != null ? bufferViews.length() : 0];
+    }
+
+    // Supplies the data of a buffer without a uri, e.g. the BIN chunk of a .glb
+    BufferRegistry register(int bufferIndex, ByteBuffer data) {
+        resolved[bufferIndex] = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        return this;
+    }
+
+    @Override
+    public ByteBuffer bufferView(int index) throws IOException {
+        if (bufferViews == null || index < 0 || index >= bufferViews.length())
+            throw new IOException("bufferView " + index + " does not exist");
+        JSONObject bufferView = bufferViews.getJSONObject(index);
+        // The buffer of a compressed view is usually a fallback without data, the view is decoded from the extension
+        if (compression(bufferView) != null) {
+            if (decompressed[index] == null)
+                decompressed[index] = decompress(index);
+            return decompressed[index].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        ByteBuffer buffer = buffer(bufferView.getInt("buffer"));
+
+        long byteOffset = bufferView.optLong("byteOffset", 0);
+        long byteLength = bufferView.getLong("byteLength");
+        if (byteOffset < 0 || byteLength < 0 || byteOffset + byteLength > buffer.capacity())
+            throw new EOFException("bufferView " + index + " exceeds its buffer");
+
+        ByteBuffer view = buffer.duplicate();
+        view.limit((int) (byteOffset + byteLength));
+        view.position((int) byteOffset);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Decodes the compressed views among bufferViews at once, one task per view on pool
+    @Override
+    public void prepare(Collection<Integer> bufferViews, ForkJoinPool pool) throws IOException {
+        List<Integer> indices = new ArrayList<>();
+        List<Callable<ByteBuffer>> tasks = new ArrayList<>();
+        for (int index : bufferViews) {
+            if (index < 0 || index >= decompressed.length || decompressed[index] != null
+                    || compression(this.bufferViews.getJSONObject(index)) == null)
+                continue;
+            // Buffers are resolved here, only the decoding runs on the pool
+            Callable<ByteBuffer> task = decompressTask(index);
+            indices.add(index);
+            tasks.add(task);
+        }
+        if (tasks.size() == 1) {
+            decompressed[indices.get(0)] = call(tasks.get(0));
+            return;
+        }
+        List<Future<ByteBuffer>> results = pool.invokeAll(tasks);
+        for (int i = 0; i < results.size(); i++) {
+            decompressed[indices.get(i)] = await(results.get(i));
+        }
+    }
+
+    private ByteBuffer decompress(int index) throws IOException {
+        return call(decompressTask(index));
+    }
+
+    private Callable<ByteBuffer> decompressTask(int index) throws IOException {
+        JSONObject bufferView = bufferViews.getJSONObject(index);
+        JSONObject compression = compression(bufferView);
+        ByteBuffer buffer = buffer(compression.getInt("buffer"));
+        long byteOffset = compression.optLong("byteOffset", 0);
+        long byteLength = compression.getLong("byteLength");
+        if (byteOffset < 0 || byteLength < 0 || byteOffset + byteLength > buffer.capacity())
+            throw new EOFException("compressed bufferView " + index + " exceeds its buffer");
+        int count = compression.getInt("count");
+        int byteStride = compression.getInt("byteStride");
+        if (count < 0 || (long) count * byteStride != bufferView.getLong("byteLength"))
+            throw new IOException("compressed bufferView " + index + " does not decode to its byteLength");
+
+        ByteBuffer source = buffer.duplicate();
+        source.limit((int) (byteOffset + byteLength));
+        source.position((int) byteOffset);
+        ByteBuffer data = source.slice();
+        String mode = compression.getString("mode");
+        String filter = compression.optString("filter", "NONE");
+        return () -> MeshoptDecoder.decode(data, count, byteStride, mode, filter);
+    }
+
+    private static JSONObject compression(JSONObject bufferView) {
+        JSONObject extensions = bufferView.optJSONObject("extensions");
+        return extensions != null ? extensions.optJSONObject(MESHOPT_COMPRESSION) : null;
+    }
+
+    private static ByteBuffer call(Callable<ByteBuffer> task) throws IOException {
+        try {
+            return task.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static ByteBuffer await(Future<ByteBuffer> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Decompressing a bufferView failed", e.getCause());
+        }
+    }
+
+    @Override
+    public byte[] uri(String uri) throws IOException {
+        if (uri.startsWith(DATA_URI_PREFIX))
+            return decodeDataUri(uri);
+        ConversionMetrics metrics = ConversionMetrics.current();
+        byte[] data;
+        ConversionMetrics.Timer readTimer = metrics.time(Stage.READ);
+        try {
+            data = Files.readAllBytes(resolve(uri));
+        } finally {
+            readTimer.close();
+        }
+        metrics.addBytes(Stage.READ, data.length);
+        return data;
+    }
+
+    // Whole buffer, resolved on first use
+    ByteBuffer buffer(int bufferIndex) throws IOException {
+        if (bufferIndex < 0 || bufferIndex >= resolved.length)
+            throw new IOException("buffer " + bufferIndex + " does not exist");
+        if (resolved[bufferIndex] == null) {
+            JSONObject buffer = buffers.getJSONObject(bufferIndex);
+            if (!buffer.has("uri"))
+                throw new IOException("buffer " + bufferIndex + " has no uri");
+            ConversionMetrics metrics = ConversionMetrics.current();
+            ByteBuffer data;
+            ConversionMetrics.Timer readTimer = metrics.time(Stage.READ);
+            try {
+                data = load(buffer.getString("uri"));
+            } finally {
+                readTimer.close();
+            }
+            metrics.addBytes(Stage.READ, data.capacity());
+            if (data.capacity() < buffer.optLong("byteLength", 0))
+                throw new EOFException("buffer " + bufferIndex + " is shorter than its byteLength");
+            resolved[bufferIndex] = data.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return resolved[bufferIndex];
+    }
+
+    private ByteBuffer load(String uri) throws IOException {
+        if (uri.startsWith(DATA_URI_PREFIX))
+            return ByteBuffer.wrap(decodeDataUri(uri));
+
+        Path file = resolve(uri);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Buffer larger than 2 GB cannot be read: " + file);
+            if (size < MAP_THRESHOLD)
+                return ByteBuffer.wrap(Files.readAllBytes(file));
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private Path resolve(String uri) {
+        return resolve(basePath, uri);
+    }
+
+    private static Path resolve(Path basePath, String uri) {
+        // Relative uris may be percent-encoded, e.g. spaces as %20
+        String decoded = uri.indexOf('%') >= 0 ? URLDecoder.decode(uri.replace("+", "%2B"), StandardCharsets.UTF_8) : uri;
+        return basePath != null ? basePath.resolve(decoded) : Path.of(decoded);
+    }
+
+    // Rough heap use of decoding a document from jsonLength bytes of JSON and dataLength bytes of buffers and images
+    static long estimateMemory(long jsonLength, long dataLength) {
+        return jsonLength * JSON_EXPANSION + dataLength * DATA_EXPANSION;
+    }
+
+    // Size of every external file the JSON text names as a uri. A plain text scan rather than a parse, so a scheduler
+    // can estimate a whole batch cheaply. Data URIs are part of the JSON already.
+    static long referencedLength(String json, Path basePath) throws IOException {
+        Set<Path> files = new HashSet<>();
+        long length = 0;
+        Matcher matcher = EXTERNAL_URI.matcher(json);
+        while (matcher.find()) {
+            Path file = resolve(basePath, matcher.group(1).replace("\\/", "/"));
+            if (files.add(file) && Files.isRegularFile(file))
+                length += Files.size(file);
+        }
+        return length;
+    }
+
+    // Files the document reads through buffers[].uri and images[].uri, data URIs excluded
+    static List<Path> externalFiles(JSONObject gltfJson, Path basePath) {
+        List<Path> files = new ArrayList<>();
+        for (String key : new String[]{"buffers", "images"}) {
+            JSONArray entries = gltfJson.optJSONArray(key);
+            for (int i = 0; entries != null && i < entries.length(); i++) {
+                String uri = entries.getJSONObject(i).optString("uri", null);
+                if (uri != null && !uri.startsWith(DATA_URI_PREFIX)) {
+                    Path file = resolve(basePath, uri);
+                    if (!files.contains(file))
+                        files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static byte[] decodeDataUri(String uri) throws IOException {
+        int marker = uri.indexOf(BASE64_MARKER);
+        if (marker < 0)
+            throw new IOException("Only base64 data URIs are supported");
+        try {
+            return Base64.getDecoder().decode(uri.substring(marker + BASE64_MARKER.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid base64 data URI", e);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package parsers;
 
+import core.MeshSink;
 import core.Object3d;
+import metrics.ConversionMetrics;
+import metrics.Stage;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -8,232 +11,184 @@ import org.json.JSONObject;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 public class GlbParser implements Parser {
-    @Override
-    public Object3d parse(String filePath) {
-
-        Object3d result = new Object3d();
-
-        try (DataInputStream dataInputStream = new DataInputStream(new FileInputStream(filePath))) {
-            byte[] magic = new byte[4];
-            dataInputStream.readFully(magic);
-
-            if (!new String(magic).equals("glTF")) {
-                System.out.println("Ungültiges Datei: " + filePath);
-                return null;
-            }
-
-            dataInputStream.skipBytes(8);
 
-            // Read the JSON chunk length as an unsigned int (4 bytes)
-            int jsonChunkLengthByte1 = dataInputStream.readUnsignedByte();
-            int jsonChunkLengthByte2 = dataInputStream.readUnsignedByte();
-            int jsonChunkLengthByte3 = dataInputStream.readUnsignedByte();
-            int jsonChunkLengthByte4 = dataInputStream.readUnsignedByte();
+    private static final int MAGIC = 0x46546C67; // "glTF"
+    private static final int CHUNK_JSON = 0x4E4F534A;
+    private static final int CHUNK_BIN = 0x004E4942;
+    private static final int HEADER_LENGTH = 12;
+    private static final int CHUNK_HEADER_LENGTH = 8;
 
-            long jsonChunkLength = ((long) jsonChunkLengthByte4 << 24) |
-                    ((long) jsonChunkLengthByte3 << 16) |
-                    ((long) jsonChunkLengthByte2 << 8) |
-                    jsonChunkLengthByte1;
+    private final boolean writeExtractedJson;
 
-            System.out.println("JSON Chunk Length: " + jsonChunkLength);
+    public GlbParser() {
+        this(false);
+    }
 
-            int jsonChunkType = dataInputStream.readInt();
-            System.out.println("JSON Chunk Type: " + jsonChunkType);
+    // When enabled the JSON chunk is also written next to the input as .gltf
+    public GlbParser(boolean writeExtractedJson) {
+        this.writeExtractedJson = writeExtractedJson;
+    }
 
-            byte[] jsonChunkBytes = new byte[(int) jsonChunkLength];
-            dataInputStream.readFully(jsonChunkBytes);
-            String jsonString = new String(jsonChunkBytes);
+    @Override
+    public Object3d parse(String filePath) throws IOException {
+        Object3d result = new Object3d();
+        parse(filePath, result);
+        return result;
+    }
 
-            // Read the binary chunk
-            byte[] binChunkHeaderBuffer = new byte[8];
-            dataInputStream.readFully(binChunkHeaderBuffer);
-            ByteBuffer buffer = ByteBuffer.wrap(binChunkHeaderBuffer);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
+    @Override
+    public void parse(String filePath, MeshSink sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE)
+                throw new IOException("GLB file larger than 2 GB cannot be mapped: " + filePath);
+            if (fileSize < HEADER_LENGTH + CHUNK_HEADER_LENGTH)
+                throw new EOFException();
+
+            // Map the file once, chunks and accessors are read from slices of this mapping
+            ConversionMetrics metrics = ConversionMetrics.current();
+            ByteBuffer file;
+            ConversionMetrics.Timer readTimer = metrics.time(Stage.READ);
+            try {
+                file = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            } finally {
+                readTimer.close();
+            }
+            metrics.addBytes(Stage.READ, fileSize);
+            file.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (file.getInt(0) != MAGIC)
+                throw new IOException("Ungültiges Datei: " + filePath);
+
+            long jsonChunkLength = Integer.toUnsignedLong(file.getInt(HEADER_LENGTH));
+            int jsonChunkType = file.getInt(HEADER_LENGTH + 4);
+            if (jsonChunkType != CHUNK_JSON)
+                throw new IOException("Ungültiges Datei: " + filePath);
+
+            int jsonStart = HEADER_LENGTH + CHUNK_HEADER_LENGTH;
+            if (jsonStart + jsonChunkLength > fileSize)
+                throw new EOFException();
+            ByteBuffer jsonChunk = slice(file, jsonStart, (int) jsonChunkLength);
+            String jsonString;
+            ConversionMetrics.Timer charsetTimer = metrics.time(Stage.JSON);
+            try {
+                jsonString = StandardCharsets.UTF_8.decode(jsonChunk).toString();
+            } finally {
+                charsetTimer.close();
+            }
+            metrics.addBytes(Stage.JSON, jsonChunkLength);
+
+            // The binary chunk is optional, files whose buffers all have a uri may end after the JSON chunk
+            int binHeader = jsonStart + (int) jsonChunkLength;
+            ByteBuffer binChunkBuffer = null;
+            if (binHeader + CHUNK_HEADER_LENGTH <= fileSize && file.getInt(binHeader + 4) == CHUNK_BIN) {
+                long binChunkLength = Integer.toUnsignedLong(file.getInt(binHeader));
+                if (binHeader + CHUNK_HEADER_LENGTH + binChunkLength > fileSize)
+                    throw new EOFException();
+                binChunkBuffer = slice(file, binHeader + CHUNK_HEADER_LENGTH, (int) binChunkLength);
+            }
 
-            int binChunkLength = buffer.getInt();
-            int binChunkType = buffer.getInt();
+            // Optionally save the extracted GLTF file for debugging
+            if (writeExtractedJson) {
+                Path gltfFilePath = Paths.get(filePath.substring(0, filePath.length() - ".glb".length()) + ".gltf");
+                Files.writeString(gltfFilePath, jsonString, StandardCharsets.UTF_8);
+            }
 
-            byte[] binChunkBuffer = new byte[binChunkLength];
-            dataInputStream.readFully(binChunkBuffer);
+            JSONObject gltfJson;
+            ConversionMetrics.Timer jsonTimer = metrics.time(Stage.JSON);
+            try {
+                gltfJson = new JSONObject(jsonString);
+            } catch (JSONException e) {
+                throw new IOException("Ungültiges JSON in " + filePath, e);
+            } finally {
+                jsonTimer.close();
+            }
 
-            // Save the extracted GLTF file
-            String gltfFilePath = filePath.replace(".glb", ".gltf");
-            try (FileWriter fileWriter = new FileWriter(gltfFilePath);
-                 BufferedWriter bufferedWriter = new BufferedWriter(fileWriter)) {
-                bufferedWriter.write(jsonString);
+            Path basePath = Paths.get(filePath).toAbsolutePath().getParent();
+            // Buffer 0 without a uri is the BIN chunk, other buffers are files next to the .glb
+            BufferRegistry buffers = new BufferRegistry(gltfJson, basePath);
+            JSONArray bufferArray = gltfJson.optJSONArray("buffers");
+            if (binChunkBuffer != null && bufferArray != null && bufferArray.length() > 0 && !bufferArray.getJSONObject(0).has("uri"))
+                buffers.register(0, binChunkBuffer);
+            ConversionMetrics.Timer decodeTimer = metrics.time(Stage.DECODE);
+            try {
+                new SceneDecoder(gltfJson, buffers).decode(sink);
+            } finally {
+                decodeTimer.close();
             }
+        }
+    }
 
-            JSONObject gltfJson = readGLTFFile(gltfFilePath);
-            if (gltfJson != null) {
-
-                // Extract vertex positions
-                int positionsAccessorIndex = gltfJson.getJSONArray("meshes")
-                        .getJSONObject(0)
-                        .getJSONArray("primitives")
-                        .getJSONObject(0)
-                        .getJSONObject("attributes")
-                        .getInt("POSITION");
-
-                JSONArray accessors = gltfJson.getJSONArray("accessors");
-                JSONObject positionsAccessor = accessors.getJSONObject(positionsAccessorIndex);
-                JSONObject bufferViewPositions = gltfJson.getJSONArray("bufferViews")
-                        .getJSONObject(positionsAccessor.getInt("bufferView"));
-                JSONObject bufferPositions = gltfJson.getJSONArray("buffers")
-                        .getJSONObject(bufferViewPositions.getInt("buffer"));
-                byte[] positionsData = Arrays.copyOfRange(binChunkBuffer,
-                        bufferViewPositions.getInt("byteOffset"),
-                        bufferViewPositions.getInt("byteOffset") + bufferViewPositions.getInt("byteLength"));
-                ByteBuffer positionsBuffer = ByteBuffer.wrap(positionsData);
-                positionsBuffer.order(ByteOrder.LITTLE_ENDIAN);
-
-                int numVertices = positionsAccessor.getInt("count");
-                for (int i = 0; i < numVertices; i++) {
-                    double x = positionsBuffer.getFloat();
-                    double y = positionsBuffer.getFloat();
-                    double z = positionsBuffer.getFloat();
-                    result.addVertex(x, y, z);
-                }
-
-                JSONObject attributes = gltfJson.getJSONArray("meshes")
-                        .getJSONObject(0)
-                        .getJSONArray("primitives")
-                        .getJSONObject(0)
-                        .getJSONObject("attributes");
-
-                if (attributes.has("TEXCOORD_0")) {
-                    // Extract texture coordinates
-                    int texCoordAccessorIndex = attributes
-                            .getInt("TEXCOORD_0");
-
-                    JSONObject texCoordAccessor = accessors.getJSONObject(texCoordAccessorIndex);
-                    JSONObject bufferViewTexCoord = gltfJson.getJSONArray("bufferViews")
-                            .getJSONObject(texCoordAccessor.getInt("bufferView"));
-                    JSONObject bufferTexCoord = gltfJson.getJSONArray("buffers")
-                            .getJSONObject(bufferViewTexCoord.getInt("buffer"));
-                    byte[] texCoordData = Arrays.copyOfRange(binChunkBuffer,
-                            bufferViewTexCoord.getInt("byteOffset"),
-                            bufferViewTexCoord.getInt("byteOffset") + bufferViewTexCoord.getInt("byteLength"));
-                    ByteBuffer texCoordBuffer = ByteBuffer.wrap(texCoordData);
-                    texCoordBuffer.order(ByteOrder.LITTLE_ENDIAN);
-
-                    int numTexCoords = texCoordAccessor.getInt("count");
-                    for (int j = 0; j < numTexCoords; j++) {
-                        double u = texCoordBuffer.getFloat();
-                        double v = 1.0 - texCoordBuffer.getFloat(); // Flip the v coordinate
-                        result.addTexCoord(u, v);
-                    }
-                }
-                List<byte[]> imageBytes = new ArrayList<>();
-
-                // Extract images and save them to an array of file paths
-                if (gltfJson.has("images")) {
-                    JSONArray images = gltfJson.getJSONArray("images");
-                    for (int i = 0; i < images.length(); i++) {
-                        JSONObject image = images.getJSONObject(i);
-                        int bufferViewIndex = image.getInt("bufferView");
-                        JSONObject bufferViewImage = gltfJson.getJSONArray("bufferViews").getJSONObject(bufferViewIndex);
-
-                        int byteOffset = bufferViewImage.has("byteOffset") ? bufferViewImage.getInt("byteOffset") : 0;
-                        byte[] imageData = Arrays.copyOfRange(binChunkBuffer,
-                                byteOffset,
-                                byteOffset + bufferViewImage.getInt("byteLength"));
-
-                        imageBytes.add(imageData);
-                    }
-                }
-
-                if (gltfJson.has("materials")) {
-                    JSONArray materials = gltfJson.getJSONArray("materials");
-                    for (int i = 0; i < materials.length(); i++) {
-                        JSONObject material = materials.getJSONObject(i);
-
-                        var resultMaterial = new Object3d.Material();
-                        result.addMaterial(resultMaterial);
-
-                        // Check for a diffuse texture
-                        if (material.has("pbrMetallicRoughness") && material.getJSONObject("pbrMetallicRoughness").has("baseColorTexture")) {
-                            int textureIndex = material.getJSONObject("pbrMetallicRoughness").getJSONObject("baseColorTexture").getInt("index");
-                            resultMaterial.baseColorTexture = imageBytes.get(textureIndex);
-                        }
-
-                        // Check for metallic/roughness texture
-                        if (material.has("pbrMetallicRoughness") && material.getJSONObject("pbrMetallicRoughness").has("metallicRoughnessTexture")) {
-                            int textureIndex = material.getJSONObject("pbrMetallicRoughness").getJSONObject("metallicRoughnessTexture").getInt("index");
-                            resultMaterial.metallicRoughness = imageBytes.get(textureIndex); // Roughness map
-                        }
-
-                        if (material.has("normalTexture")) {
-                            int textureIndex = material.getJSONObject("normalTexture").getInt("index");
-                            resultMaterial.normalTexture = imageBytes.get(textureIndex);
-                        }
-
-                        if (material.has("occlusionTexture")) {
-                            int textureIndex = material.getJSONObject("occlusionTexture").getInt("index");
-                            resultMaterial.occlusionTexture = imageBytes.get(textureIndex);
-                        }
-
-                        if (material.has("emissiveTexture")) {
-                            int textureIndex = material.getJSONObject("emissiveTexture").getInt("index");
-                            resultMaterial.emissiveTexture = imageBytes.get(textureIndex);
-                        }
-                    }
-
-                    // Extract indices and write faces with texture coordinates and material reference
-                    int indicesAccessorIndex = gltfJson.getJSONArray("meshes")
-                            .getJSONObject(0)
-                            .getJSONArray("primitives")
-                            .getJSONObject(0)
-                            .getInt("indices");
-                    JSONObject indicesAccessor = accessors.getJSONObject(indicesAccessorIndex);
-                    JSONObject bufferViewIndices = gltfJson.getJSONArray("bufferViews")
-                            .getJSONObject(indicesAccessor.getInt("bufferView"));
-                    JSONObject bufferIndices = gltfJson.getJSONArray("buffers")
-                            .getJSONObject(bufferViewIndices.getInt("buffer"));
-                    byte[] indicesData = Arrays.copyOfRange(binChunkBuffer,
-                            bufferViewIndices.getInt("byteOffset"),
-                            bufferViewIndices.getInt("byteOffset") + bufferViewIndices.getInt("byteLength"));
-                    ByteBuffer indicesBufferByte = ByteBuffer.wrap(indicesData);
-                    indicesBufferByte.order(ByteOrder.LITTLE_ENDIAN);
-
-                    int numIndices = indicesAccessor.getInt("count");
-                    for (int i = 0; i < numIndices; i += 3) {
-                        int index1 = toUnsignedInt(indicesBufferByte.getShort());
-                        int index2 = toUnsignedInt(indicesBufferByte.getShort());
-                        int index3 = toUnsignedInt(indicesBufferByte.getShort());
-
-                        result.addFace(index1, index2, index3);
-                    }
-                }
-
-                return result;
+    // Only the JSON chunk is read, external buffers and images are rare in .glb files but possible
+    @Override
+    public List<Path> referencedFiles(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH + CHUNK_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(HEADER_LENGTH + 4) != CHUNK_JSON)
+                throw new IOException("Ungültiges Datei: " + filePath);
+
+            long jsonChunkLength = Integer.toUnsignedLong(header.getInt(HEADER_LENGTH));
+            if (HEADER_LENGTH + CHUNK_HEADER_LENGTH + jsonChunkLength > channel.size())
+                throw new EOFException();
+            ByteBuffer jsonChunk = ByteBuffer.allocate((int) jsonChunkLength);
+            readFully(channel, jsonChunk, HEADER_LENGTH + CHUNK_HEADER_LENGTH);
+
+            JSONObject gltfJson;
+            try {
+                gltfJson = new JSONObject(StandardCharsets.UTF_8.decode(jsonChunk.flip()).toString());
+            } catch (JSONException e) {
+                throw new IOException("Ungültiges JSON in " + filePath, e);
             }
-        } catch (EOFException e) {
-            System.out.println("Unexpected end of file encountered: " + filePath);
-        } catch (IOException e) {
-            e.printStackTrace();
+            return BufferRegistry.externalFiles(gltfJson, Paths.get(filePath).toAbsolutePath().getParent());
         }
-        return null;
     }
 
-    private static int toUnsignedInt(short value) {
-        return value & 0xFFFF;
+    // Only the chunk headers are read, the BIN chunk holds the buffer and usually the images
+    @Override
+    public long estimateMemory(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH + CHUNK_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(HEADER_LENGTH + 4) != CHUNK_JSON)
+                throw new IOException("Ungültiges Datei: " + filePath);
+
+            long jsonChunkLength = Integer.toUnsignedLong(header.getInt(HEADER_LENGTH));
+            long binHeader = HEADER_LENGTH + CHUNK_HEADER_LENGTH + jsonChunkLength;
+            long binChunkLength = 0;
+            if (binHeader + CHUNK_HEADER_LENGTH <= channel.size()) {
+                ByteBuffer chunkHeader = ByteBuffer.allocate(CHUNK_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, chunkHeader, binHeader);
+                if (chunkHeader.getInt(4) == CHUNK_BIN)
+                    binChunkLength = Integer.toUnsignedLong(chunkHeader.getInt(0));
+            }
+            return BufferRegistry.estimateMemory(jsonChunkLength, binChunkLength);
+        }
     }
 
-    private static JSONObject readGLTFFile(String filePath) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(filePath));
-        String jsonString = new String(bytes);
-        try {
-            return new JSONObject(jsonString);
-        } catch (JSONException e) {
-            e.printStackTrace();
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new EOFException();
+            position += read;
         }
-        return null;
     }
-}
\ No newline at end of file
+
+    // Little-endian view of [offset, offset + length) sharing the mapped memory
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
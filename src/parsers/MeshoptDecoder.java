@@ -0,0 +1,428 @@
+package parsers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Decoder for bufferViews compressed with EXT_meshopt_compression: the vertex codec for ATTRIBUTES, the index codec for
+// TRIANGLES and the index sequence codec for INDICES, followed by the OCTAHEDRAL, QUATERNION or EXPONENTIAL filter.
+// A port of the reference decoder of meshoptimizer without its SIMD paths, malformed data fails with an IOException.
+final class MeshoptDecoder {
+
+    private static final int VERTEX_HEADER = 0xA0;
+    private static final int INDEX_HEADER = 0xE0;
+    private static final int SEQUENCE_HEADER = 0xD0;
+
+    private static final int VERTEX_BLOCK_SIZE_BYTES = 8192;
+    private static final int VERTEX_BLOCK_MAX_SIZE = 256;
+    private static final int BYTE_GROUP_SIZE = 16;
+    // Bytes a group may read at most, the encoder pads the stream so that every group has them
+    private static final int BYTE_GROUP_DECODE_LIMIT = 24;
+    private static final int TAIL_MAX_SIZE = 32;
+
+    private MeshoptDecoder() {
+    }
+
+    // count elements of stride bytes, returned as a little-endian buffer of count * stride bytes
+    static ByteBuffer decode(ByteBuffer source, int count, int stride, String mode, String filter) throws IOException {
+        byte[] data = new byte[source.remaining()];
+        source.duplicate().get(data);
+        ByteBuffer target;
+        switch (mode) {
+            case "ATTRIBUTES":
+                if (stride <= 0 || stride > 256 || stride % 4 != 0)
+                    throw new IOException("meshopt attributes need a byteStride that is a multiple of 4 up to 256, got " + stride);
+                target = ByteBuffer.wrap(decodeVertexBuffer(data, count, stride)).order(ByteOrder.LITTLE_ENDIAN);
+                applyFilter(target, count, stride, filter);
+                return target;
+            case "TRIANGLES":
+                checkIndexStride(stride, filter);
+                if (count % 3 != 0)
+                    throw new IOException("meshopt triangles need a count divisible by 3, got " + count);
+                target = ByteBuffer.allocate(count * stride).order(ByteOrder.LITTLE_ENDIAN);
+                decodeIndexBuffer(data, count, stride, target);
+                return target;
+            case "INDICES":
+                checkIndexStride(stride, filter);
+                target = ByteBuffer.allocate(count * stride).order(ByteOrder.LITTLE_ENDIAN);
+                decodeIndexSequence(data, count, stride, target);
+                return target;
+            default:
+                throw new IOException("Unsupported meshopt mode: " + mode);
+        }
+    }
+
+    private static void checkIndexStride(int stride, String filter) throws IOException {
+        if (stride != 2 && stride != 4)
+            throw new IOException("meshopt indices need a byteStride of 2 or 4, got " + stride);
+        if (!"NONE".equals(filter))
+            throw new IOException("meshopt indices cannot be filtered");
+    }
+
+    private static IOException malformed() {
+        return new IOException("Malformed meshopt data");
+    }
+
+    // Vertex codec
+
+    static byte[] decodeVertexBuffer(byte[] data, int count, int stride) throws IOException {
+        if (data.length < 1 + stride)
+            throw malformed();
+        if ((data[0] & 0xF0) != VERTEX_HEADER || (data[0] & 0x0F) > 0)
+            throw new IOException("Unsupported meshopt vertex codec version: 0x" + Integer.toHexString(data[0] & 0xFF));
+
+        // The encoder appends the first vertex, which every block starts its deltas from
+        byte[] last = Arrays.copyOfRange(data, data.length - stride, data.length);
+        byte[] target = new byte[count * stride];
+        byte[] buffer = new byte[VERTEX_BLOCK_MAX_SIZE];
+        int blockSize = vertexBlockSize(stride);
+
+        int position = 1;
+        for (int first = 0; first < count; first += blockSize) {
+            position = decodeVertexBlock(data, position, target, first * stride, Math.min(blockSize, count - first), stride, last, buffer);
+        }
+        if (data.length - position != Math.max(stride, TAIL_MAX_SIZE))
+            throw malformed();
+        return target;
+    }
+
+    private static int vertexBlockSize(int stride) {
+        int size = (VERTEX_BLOCK_SIZE_BYTES / stride) & ~(BYTE_GROUP_SIZE - 1);
+        return Math.min(size, VERTEX_BLOCK_MAX_SIZE);
+    }
+
+    // Every byte of the vertex is stored as its own stream of zigzag deltas to the same byte of the previous vertex
+    private static int decodeVertexBlock(byte[] data, int position, byte[] target, int offset, int count, int stride,
+                                         byte[] last, byte[] buffer) throws IOException {
+        int alignedCount = (count + BYTE_GROUP_SIZE - 1) & ~(BYTE_GROUP_SIZE - 1);
+        for (int k = 0; k < stride; k++) {
+            position = decodeBytes(data, position, buffer, alignedCount);
+            int previous = last[k];
+            for (int i = 0, at = offset + k; i < count; i++, at += stride) {
+                int delta = buffer[i] & 0xFF;
+                previous += -(delta & 1) ^ (delta >>> 1);
+                target[at] = (byte) previous;
+            }
+        }
+        System.arraycopy(target, offset + (count - 1) * stride, last, 0, stride);
+        return position;
+    }
+
+    // Groups of 16 bytes, each stored with 0, 2, 4 or 8 bits per byte as given by 2 header bits per group
+    private static int decodeBytes(byte[] data, int position, byte[] buffer, int size) throws IOException {
+        int header = position;
+        int headerSize = (size / BYTE_GROUP_SIZE + 3) / 4;
+        if (data.length - position < headerSize)
+            throw malformed();
+        position += headerSize;
+
+        for (int i = 0; i < size; i += BYTE_GROUP_SIZE) {
+            if (data.length - position < BYTE_GROUP_DECODE_LIMIT)
+                throw malformed();
+            int group = i / BYTE_GROUP_SIZE;
+            int bitsLog2 = (data[header + group / 4] >> ((group % 4) * 2)) & 3;
+            position = decodeBytesGroup(data, position, buffer, i, bitsLog2);
+        }
+        return position;
+    }
+
+    // Packed values use all ones to mark a byte that follows the packed part in full
+    private static int decodeBytesGroup(byte[] data, int position, byte[] buffer, int offset, int bitsLog2) {
+        switch (bitsLog2) {
+            case 0:
+                Arrays.fill(buffer, offset, offset + BYTE_GROUP_SIZE, (byte) 0);
+                return position;
+            case 3:
+                System.arraycopy(data, position, buffer, offset, BYTE_GROUP_SIZE);
+                return position + BYTE_GROUP_SIZE;
+            default:
+                int bits = 1 << bitsLog2;
+                int escape = (1 << bits) - 1;
+                int packedBytes = BYTE_GROUP_SIZE * bits / 8;
+                int variable = position + packedBytes;
+                for (int i = 0; i < BYTE_GROUP_SIZE; i++) {
+                    int packed = data[position + i * bits / 8] & 0xFF;
+                    int value = (packed >>> (8 - bits - (i * bits) % 8)) & escape;
+                    buffer[offset + i] = value == escape ? data[variable++] : (byte) value;
+                }
+                return variable;
+        }
+    }
+
+    // Index codec
+
+    static void decodeIndexBuffer(byte[] data, int count, int indexSize, ByteBuffer target) throws IOException {
+        // The shortest valid encoding has the header, one code per triangle and the 16 byte table of auxiliary codes
+        if (data.length < 1 + count / 3 + 16)
+            throw malformed();
+        int version = data[0] & 0x0F;
+        if ((data[0] & 0xF0) != INDEX_HEADER || version > 1)
+            throw new IOException("Unsupported meshopt index codec version: 0x" + Integer.toHexString(data[0] & 0xFF));
+
+        // Recently seen edges and vertices, codes refer to them by age
+        int[] edgeA = new int[16];
+        int[] edgeB = new int[16];
+        int[] vertices = new int[16];
+        Arrays.fill(edgeA, -1);
+        Arrays.fill(edgeB, -1);
+        Arrays.fill(vertices, -1);
+        int edgeOffset = 0;
+        int vertexOffset = 0;
+
+        int next = 0;
+        int last = 0;
+        int fecMax = version >= 1 ? 13 : 15;
+
+        int code = 1;
+        VarIntReader reader = new VarIntReader(data, 1 + count / 3);
+        int safeEnd = data.length - 16;
+        int codeAuxTable = safeEnd;
+
+        for (int i = 0; i < count; i += 3) {
+            // A triangle reads at most 16 bytes, so stopping before the table is the only bounds check needed
+            if (reader.position > safeEnd)
+                throw malformed();
+
+            int codeTri = data[code++] & 0xFF;
+            int a, b, c;
+            if (codeTri < 0xF0) {
+                // Triangle on a recent edge, the third vertex is new, recent or given explicitly
+                int fe = codeTri >>> 4;
+                a = edgeA[(edgeOffset - 1 - fe) & 15];
+                b = edgeB[(edgeOffset - 1 - fe) & 15];
+                int fec = codeTri & 15;
+                if (fec < fecMax) {
+                    c = fec == 0 ? next++ : vertices[(vertexOffset - 1 - fec) & 15];
+                    vertices[vertexOffset] = c;
+                    vertexOffset = (vertexOffset + (fec == 0 ? 1 : 0)) & 15;
+                } else {
+                    // 13 and 14 are the last free index -1 and +1, 15 a delta to it
+                    c = last = fec != 15 ? last + (fec - (fec ^ 3)) : reader.index(last);
+                    vertices[vertexOffset] = c;
+                    vertexOffset = (vertexOffset + 1) & 15;
+                }
+                edgeA[edgeOffset] = c;
+                edgeB[edgeOffset] = b;
+                edgeOffset = (edgeOffset + 1) & 15;
+                edgeA[edgeOffset] = a;
+                edgeB[edgeOffset] = c;
+                edgeOffset = (edgeOffset + 1) & 15;
+            } else {
+                int fea, feb, fec;
+                if (codeTri < 0xFE) {
+                    // Common combinations of new and recent vertices come from the table
+                    int codeAux = data[codeAuxTable + (codeTri & 15)] & 0xFF;
+                    feb = codeAux >>> 4;
+                    fec = codeAux & 15;
+                    a = next++;
+                    b = feb == 0 ? next++ : vertices[(vertexOffset - feb) & 15];
+                    c = fec == 0 ? next++ : vertices[(vertexOffset - fec) & 15];
+                    fea = 0;
+                } else {
+                    int codeAux = data[reader.position++] & 0xFF;
+                    fea = codeTri == 0xFE ? 0 : 15;
+                    feb = codeAux >>> 4;
+                    fec = codeAux & 15;
+                    // Resets the numbering of new vertices
+                    if (codeAux == 0)
+                        next = 0;
+                    a = fea == 0 ? next++ : 0;
+                    b = feb == 0 ? next++ : vertices[(vertexOffset - feb) & 15];
+                    c = fec == 0 ? next++ : vertices[(vertexOffset - fec) & 15];
+                    if (fea == 15)
+                        last = a = reader.index(last);
+                    if (feb == 15)
+                        last = b = reader.index(last);
+                    if (fec == 15)
+                        last = c = reader.index(last);
+                }
+                vertices[vertexOffset] = a;
+                vertexOffset = (vertexOffset + 1) & 15;
+                vertices[vertexOffset] = b;
+                vertexOffset = (vertexOffset + (feb == 0 || feb == 15 ? 1 : 0)) & 15;
+                vertices[vertexOffset] = c;
+                vertexOffset = (vertexOffset + (fec == 0 || fec == 15 ? 1 : 0)) & 15;
+
+                edgeA[edgeOffset] = b;
+                edgeB[edgeOffset] = a;
+                edgeOffset = (edgeOffset + 1) & 15;
+                edgeA[edgeOffset] = c;
+                edgeB[edgeOffset] = b;
+                edgeOffset = (edgeOffset + 1) & 15;
+                edgeA[edgeOffset] = a;
+                edgeB[edgeOffset] = c;
+                edgeOffset = (edgeOffset + 1) & 15;
+            }
+            putIndex(target, i, indexSize, a);
+            putIndex(target, i + 1, indexSize, b);
+            putIndex(target, i + 2, indexSize, c);
+        }
+        // Everything up to the table must have been read
+        if (reader.position != safeEnd)
+            throw malformed();
+    }
+
+    static void decodeIndexSequence(byte[] data, int count, int indexSize, ByteBuffer target) throws IOException {
+        // The shortest valid encoding has the header, one byte per index and a 4 byte tail
+        if (data.length < 1 + count + 4)
+            throw malformed();
+        if ((data[0] & 0xF0) != SEQUENCE_HEADER || (data[0] & 0x0F) > 1)
+            throw new IOException("Unsupported meshopt index sequence version: 0x" + Integer.toHexString(data[0] & 0xFF));
+
+        VarIntReader reader = new VarIntReader(data, 1);
+        int safeEnd = data.length - 4;
+        // Two baselines, the lowest bit of each value selects the one its delta refers to
+        int[] last = new int[2];
+        for (int i = 0; i < count; i++) {
+            if (reader.position >= safeEnd)
+                throw malformed();
+            int value = reader.vByte();
+            int baseline = value & 1;
+            value >>>= 1;
+            int index = last[baseline] + ((value >>> 1) ^ -(value & 1));
+            last[baseline] = index;
+            putIndex(target, i, indexSize, index);
+        }
+        if (reader.position != safeEnd)
+            throw malformed();
+    }
+
+    private static void putIndex(ByteBuffer target, int i, int indexSize, int index) {
+        if (indexSize == 2)
+            target.putShort(i * 2, (short) index);
+        else
+            target.putInt(i * 4, index);
+    }
+
+    // Little-endian base-128 integers, at most 5 bytes so that malformed data cannot loop
+    private static final class VarIntReader {
+        final byte[] data;
+        int position;
+
+        VarIntReader(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        int vByte() {
+            int lead = data[position++] & 0xFF;
+            if (lead < 128)
+                return lead;
+            int result = lead & 127;
+            int shift = 7;
+            for (int i = 0; i < 4; i++) {
+                int group = data[position++] & 0xFF;
+                result |= (group & 127) << shift;
+                shift += 7;
+                if (group < 128)
+                    break;
+            }
+            return result;
+        }
+
+        // Zigzag delta to the previous free index
+        int index(int last) {
+            int value = vByte();
+            return last + ((value >>> 1) ^ -(value & 1));
+        }
+    }
+
+    // Filters
+
+    private static void applyFilter(ByteBuffer data, int count, int stride, String filter) throws IOException {
+        switch (filter) {
+            case "NONE":
+                break;
+            case "OCTAHEDRAL":
+                if (stride == 4)
+                    octahedral8(data, count);
+                else if (stride == 8)
+                    octahedral16(data, count);
+                else
+                    throw new IOException("meshopt OCTAHEDRAL filter needs a byteStride of 4 or 8, got " + stride);
+                break;
+            case "QUATERNION":
+                if (stride != 8)
+                    throw new IOException("meshopt QUATERNION filter needs a byteStride of 8, got " + stride);
+                quaternion(data, count);
+                break;
+            case "EXPONENTIAL":
+                exponential(data, count * stride / 4);
+                break;
+            default:
+                throw new IOException("Unsupported meshopt filter: " + filter);
+        }
+    }
+
+    // Octahedral encoded unit vectors, the third component carries the value that stands for 1
+    private static void octahedral8(ByteBuffer data, int count) {
+        float[] xyz = new float[3];
+        for (int i = 0; i < count; i++) {
+            int at = i * 4;
+            octahedral(data.get(at), data.get(at + 1), data.get(at + 2), 127f, xyz);
+            data.put(at, (byte) round(xyz[0]));
+            data.put(at + 1, (byte) round(xyz[1]));
+            data.put(at + 2, (byte) round(xyz[2]));
+        }
+    }
+
+    private static void octahedral16(ByteBuffer data, int count) {
+        float[] xyz = new float[3];
+        for (int i = 0; i < count; i++) {
+            int at = i * 8;
+            octahedral(data.getShort(at), data.getShort(at + 2), data.getShort(at + 4), 32767f, xyz);
+            data.putShort(at, (short) round(xyz[0]));
+            data.putShort(at + 2, (short) round(xyz[1]));
+            data.putShort(at + 4, (short) round(xyz[2]));
+        }
+    }
+
+    private static void octahedral(float x, float y, float one, float max, float[] xyz) {
+        float z = one - Math.abs(x) - Math.abs(y);
+        // Folds the lower hemisphere back
+        float t = z >= 0f ? 0f : z;
+        x += x >= 0f ? t : -t;
+        y += y >= 0f ? t : -t;
+        float scale = max / (float) Math.sqrt(x * x + y * y + z * z);
+        xyz[0] = x * scale;
+        xyz[1] = y * scale;
+        xyz[2] = z * scale;
+    }
+
+    // Three components of a unit quaternion, the fourth is rebuilt and the lowest two bits tell where it goes
+    private static void quaternion(ByteBuffer data, int count) {
+        float scale = (float) (1 / Math.sqrt(2));
+        for (int i = 0; i < count; i++) {
+            int at = i * 8;
+            short last = data.getShort(at + 6);
+            float componentScale = scale / (last | 3);
+            float x = data.getShort(at) * componentScale;
+            float y = data.getShort(at + 2) * componentScale;
+            float z = data.getShort(at + 4) * componentScale;
+            float ww = 1f - x * x - y * y - z * z;
+            float w = (float) Math.sqrt(ww >= 0f ? ww : 0f);
+
+            int maxComponent = last & 3;
+            data.putShort(at + ((maxComponent + 1) & 3) * 2, (short) round(x * 32767f));
+            data.putShort(at + ((maxComponent + 2) & 3) * 2, (short) round(y * 32767f));
+            data.putShort(at + ((maxComponent + 3) & 3) * 2, (short) round(z * 32767f));
+            data.putShort(at + maxComponent * 2, (short) (int) (w * 32767f + 0.5f));
+        }
+    }
+
+    // 24 bit signed mantissa and 8 bit signed exponent per float
+    private static void exponential(ByteBuffer data, int count) {
+        for (int i = 0; i < count; i++) {
+            int value = data.getInt(i * 4);
+            int mantissa = (value << 8) >> 8;
+            int exponent = value >> 24;
+            data.putFloat(i * 4, Float.intBitsToFloat((exponent + 127) << 23) * mantissa);
+        }
+    }
+
+    // Rounds half away from zero like the reference decoder
+    private static int round(float value) {
+        return (int) (value + (value >= 0f ? 0.5f : -0.5f));
+    }
+}
@@ -1,9 +1,33 @@
 package parsers;
 
+import core.MeshSink;
 import core.Object3d;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 
 public interface Parser {
     Object3d parse(String filePath) throws IOException;
+
+    // Streaming variant, parsers that decode incrementally override this to avoid building an Object3d
+    default void parse(String filePath, MeshSink sink) throws IOException {
+        Object3d object = parse(filePath);
+        if (object == null)
+            throw new IOException("Datei konnte nicht gelesen werden: " + filePath);
+        object.writeTo(sink, 65536);
+    }
+
+    // Other files the input reads, such as .bin buffers and images, so callers can tell when a conversion is outdated
+    default List<Path> referencedFiles(String filePath) throws IOException {
+        return List.of();
+    }
+
+    // Rough heap use of parsing the file, taken from its headers without decoding anything so a scheduler can ask for
+    // every file of a batch up front
+    default long estimateMemory(String filePath) throws IOException {
+        return Files.size(Paths.get(filePath));
+    }
 }
@@ -0,0 +1,481 @@
+package parsers;
+
+import core.MeshSink;
+import core.Object3d;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Decodes the meshes placed by the nodes of a glTF scene into one mesh, shared by the .gltf and .glb parsers. Every node
+// with a mesh adds a copy of it in world space, so instanced parts land where the scene puts them.
+// Accessor data is split into chunks that are decoded in parallel on a fork-join pool and handed to the sink in order.
+final class SceneDecoder {
+
+    private static final int MODE_TRIANGLES = 4;
+
+    private static final int VERTICES = 0;
+    private static final int TEX_COORDS = 1;
+    private static final int TRIANGLES = 2;
+
+    // Where the binary data of the document lives, .gltf and .glb resolve it differently
+    interface Resources {
+
+        // Little-endian view of the whole bufferView with the first byte at position 0
+        ByteBuffer bufferView(int index) throws IOException;
+
+        // External file referenced by a relative uri
+        byte[] uri(String uri) throws IOException;
+
+        // Called once with every bufferView the meshes read before they are read, lets compressed views be decoded
+        // up front and concurrently
+        default void prepare(Collection<Integer> bufferViews, ForkJoinPool pool) throws IOException {
+        }
+    }
+
+    // Extensions a file may require, any other required extension changes the data in ways this decoder ignores
+    private static final Set<String> SUPPORTED_EXTENSIONS = Set.of(BufferRegistry.MESHOPT_COMPRESSION, "KHR_mesh_quantization");
+
+    private final JSONObject gltf;
+    private final Resources resources;
+    private final ForkJoinPool pool;
+
+    private byte[][] images;
+
+    SceneDecoder(JSONObject gltf, Resources resources) {
+        this(gltf, resources, ForkJoinPool.commonPool());
+    }
+
+    SceneDecoder(JSONObject gltf, Resources resources, ForkJoinPool pool) {
+        this.gltf = gltf;
+        this.resources = resources;
+        this.pool = pool;
+    }
+
+    void decode(MeshSink sink) throws IOException {
+        JSONArray required = gltf.optJSONArray("extensionsRequired");
+        for (int i = 0; required != null && i < required.length(); i++) {
+            if (!SUPPORTED_EXTENSIONS.contains(required.getString(i)))
+                throw new IOException("Nicht unterstützte Erweiterung: " + required.getString(i));
+        }
+        List<Chunk> chunks = plan(sink);
+        decodeMaterials(sink);
+        emit(chunks, sink);
+    }
+
+    // Splits every triangle primitive of every placed mesh into chunks and reports the totals to the sink
+    private List<Chunk> plan(MeshSink sink) throws IOException {
+        List<Instance> instances = new ArrayList<>();
+        // Distinct primitives, JSONObject compares by identity
+        Set<JSONObject> primitives = new LinkedHashSet<>();
+        boolean anyTexCoords = false;
+        for (Instance mesh : meshInstances()) {
+            JSONArray meshPrimitives = mesh.mesh.getJSONArray("primitives");
+            for (int p = 0; p < meshPrimitives.length(); p++) {
+                JSONObject primitive = meshPrimitives.getJSONObject(p);
+                // Points and lines have no faces to convert
+                if (primitive.optInt("mode", MODE_TRIANGLES) != MODE_TRIANGLES)
+                    continue;
+                instances.add(new Instance(primitive, mesh.matrix));
+                primitives.add(primitive);
+                anyTexCoords |= primitive.getJSONObject("attributes").has("TEXCOORD_0");
+            }
+        }
+
+        resources.prepare(bufferViews(primitives), pool);
+
+        List<Chunk> chunks = new ArrayList<>();
+        long vertexBase = 0;
+        long triangleTotal = 0;
+        for (Instance instance : instances) {
+            JSONObject primitive = instance.mesh;
+            JSONObject attributes = primitive.getJSONObject("attributes");
+            AccessorDecoder.Accessor positions = accessor(attributes.getInt("POSITION"), 3, "POSITION");
+            int vertexCount = positions.count;
+            if (vertexBase + vertexCount > Integer.MAX_VALUE)
+                throw new IOException("Too many vertices in the scene: " + (vertexBase + vertexCount));
+            int base = (int) vertexBase;
+
+            split(chunks, VERTICES, positions, vertexCount, 0, instance.matrix);
+
+            // Texture coordinates share the vertex numbering, primitives without them are padded with zeros
+            if (anyTexCoords) {
+                AccessorDecoder.Accessor texCoords = null;
+                if (attributes.has("TEXCOORD_0")) {
+                    texCoords = accessor(attributes.getInt("TEXCOORD_0"), 2, "TEXCOORD_0");
+                    if (texCoords.count != vertexCount)
+                        throw new IOException("TEXCOORD_0 and POSITION differ in count");
+                }
+                split(chunks, TEX_COORDS, texCoords, vertexCount, 0, null);
+            }
+
+            // Indices are rebased onto the vertices of all earlier primitives, a mirroring transform also turns the
+            // triangles around so they keep facing outwards
+            double[] winding = instance.matrix != null && determinant(instance.matrix) < 0 ? instance.matrix : null;
+            if (primitive.has("indices")) {
+                AccessorDecoder.Accessor indices = accessor(primitive.getInt("indices"), 1, "indices");
+                if (!AccessorDecoder.isIndexType(indices.componentType))
+                    throw new IOException("indices must be unsigned integers, got component type " + indices.componentType);
+                int triangleCount = indices.count / 3;
+                split(chunks, TRIANGLES, indices, triangleCount, base, winding);
+                triangleTotal += triangleCount;
+            } else {
+                split(chunks, TRIANGLES, null, vertexCount / 3, base, winding);
+                triangleTotal += vertexCount / 3;
+            }
+            vertexBase += vertexCount;
+        }
+
+        int vertexTotal = (int) vertexBase;
+        sink.reserve(vertexTotal, anyTexCoords ? vertexTotal : 0, (int) Math.min(triangleTotal, Integer.MAX_VALUE));
+        return chunks;
+    }
+
+    // Every mesh a node of the scene refers to, with the node's world matrix. Documents without scenes or nodes place
+    // each mesh once, untransformed.
+    private List<Instance> meshInstances() throws IOException {
+        JSONArray meshes = gltf.optJSONArray("meshes");
+        JSONArray nodes = gltf.optJSONArray("nodes");
+        JSONArray scenes = gltf.optJSONArray("scenes");
+        List<Instance> instances = new ArrayList<>();
+        if (meshes == null)
+            return instances;
+        if (nodes == null || scenes == null || scenes.length() == 0) {
+            for (int m = 0; m < meshes.length(); m++) {
+                instances.add(new Instance(meshes.getJSONObject(m), null));
+            }
+            return instances;
+        }
+
+        int sceneIndex = gltf.optInt("scene", 0);
+        if (sceneIndex < 0 || sceneIndex >= scenes.length())
+            throw new IOException("scene " + sceneIndex + " does not exist");
+        JSONArray roots = scenes.getJSONObject(sceneIndex).optJSONArray("nodes");
+        Set<Integer> path = new HashSet<>();
+        for (int i = 0; roots != null && i < roots.length(); i++) {
+            addInstances(roots.getInt(i), null, nodes, meshes, path, instances);
+        }
+        return instances;
+    }
+
+    // Depth first in document order, parent is null while every node above is untransformed
+    private void addInstances(int index, double[] parent, JSONArray nodes, JSONArray meshes, Set<Integer> path,
+                              List<Instance> instances) throws IOException {
+        if (index < 0 || index >= nodes.length())
+            throw new IOException("node " + index + " does not exist");
+        if (!path.add(index))
+            throw new IOException("node " + index + " is its own ancestor");
+        JSONObject node = nodes.getJSONObject(index);
+        double[] local = localMatrix(node);
+        double[] world = parent == null ? local : local == null ? parent : multiply(parent, local);
+
+        if (node.has("mesh")) {
+            int mesh = node.getInt("mesh");
+            if (mesh < 0 || mesh >= meshes.length())
+                throw new IOException("mesh " + mesh + " does not exist");
+            instances.add(new Instance(meshes.getJSONObject(mesh), world));
+        }
+        JSONArray children = node.optJSONArray("children");
+        for (int i = 0; children != null && i < children.length(); i++) {
+            addInstances(children.getInt(i), world, nodes, meshes, path, instances);
+        }
+        path.remove(index);
+    }
+
+    // Column-major 4x4 matrix of the node, from matrix or from translation * rotation * scale. null for the identity.
+    private static double[] localMatrix(JSONObject node) {
+        JSONArray matrix = node.optJSONArray("matrix");
+        if (matrix != null) {
+            double[] m = new double[16];
+            for (int i = 0; i < 16; i++) {
+                m[i] = matrix.getDouble(i);
+            }
+            return isIdentity(m) ? null : m;
+        }
+
+        JSONArray t = node.optJSONArray("translation");
+        JSONArray r = node.optJSONArray("rotation");
+        JSONArray s = node.optJSONArray("scale");
+        double tx = t != null ? t.getDouble(0) : 0, ty = t != null ? t.getDouble(1) : 0, tz = t != null ? t.getDouble(2) : 0;
+        double qx = r != null ? r.getDouble(0) : 0, qy = r != null ? r.getDouble(1) : 0;
+        double qz = r != null ? r.getDouble(2) : 0, qw = r != null ? r.getDouble(3) : 1;
+        double sx = s != null ? s.getDouble(0) : 1, sy = s != null ? s.getDouble(1) : 1, sz = s != null ? s.getDouble(2) : 1;
+
+        // Rotation matrix of the unit quaternion, each column scaled
+        double[] m = {
+                (1 - 2 * (qy * qy + qz * qz)) * sx, (2 * (qx * qy + qz * qw)) * sx, (2 * (qx * qz - qy * qw)) * sx, 0,
+                (2 * (qx * qy - qz * qw)) * sy, (1 - 2 * (qx * qx + qz * qz)) * sy, (2 * (qy * qz + qx * qw)) * sy, 0,
+                (2 * (qx * qz + qy * qw)) * sz, (2 * (qy * qz - qx * qw)) * sz, (1 - 2 * (qx * qx + qy * qy)) * sz, 0,
+                tx, ty, tz, 1
+        };
+        return isIdentity(m) ? null : m;
+    }
+
+    private static boolean isIdentity(double[] m) {
+        for (int i = 0; i < 16; i++) {
+            if (m[i] != (i % 5 == 0 ? 1 : 0))
+                return false;
+        }
+        return true;
+    }
+
+    private static double[] multiply(double[] a, double[] b) {
+        double[] m = new double[16];
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                m[column * 4 + row] = a[row] * b[column * 4] + a[4 + row] * b[column * 4 + 1]
+                        + a[8 + row] * b[column * 4 + 2] + a[12 + row] * b[column * 4 + 3];
+            }
+        }
+        return m;
+    }
+
+    // Of the upper 3x3 part, negative when the matrix mirrors
+    private static double determinant(double[] m) {
+        return m[0] * (m[5] * m[10] - m[9] * m[6])
+                - m[4] * (m[1] * m[10] - m[9] * m[2])
+                + m[8] * (m[1] * m[6] - m[5] * m[2]);
+    }
+
+    // bufferViews behind the positions, texture coordinates and indices of the primitives, sparse data included
+    private Set<Integer> bufferViews(Collection<JSONObject> primitives) {
+        JSONArray accessors = gltf.optJSONArray("accessors");
+        Set<Integer> bufferViews = new LinkedHashSet<>();
+        for (JSONObject primitive : primitives) {
+            JSONObject attributes = primitive.getJSONObject("attributes");
+            for (String key : new String[]{"POSITION", "TEXCOORD_0"}) {
+                if (attributes.has(key))
+                    addBufferViews(accessors, attributes.getInt(key), bufferViews);
+            }
+            if (primitive.has("indices"))
+                addBufferViews(accessors, primitive.getInt("indices"), bufferViews);
+        }
+        return bufferViews;
+    }
+
+    private static void addBufferViews(JSONArray accessors, int index, Set<Integer> bufferViews) {
+        JSONObject accessor = accessors != null ? accessors.optJSONObject(index) : null;
+        if (accessor == null)
+            return;
+        if (accessor.has("bufferView"))
+            bufferViews.add(accessor.getInt("bufferView"));
+        JSONObject sparse = accessor.optJSONObject("sparse");
+        if (sparse != null) {
+            bufferViews.add(sparse.getJSONObject("indices").getInt("bufferView"));
+            bufferViews.add(sparse.getJSONObject("values").getInt("bufferView"));
+        }
+    }
+
+    private static void split(List<Chunk> chunks, int kind, AccessorDecoder.Accessor accessor, int count, int base,
+                              double[] matrix) {
+        for (int first = 0; first < count; first += AccessorDecoder.BATCH_SIZE) {
+            chunks.add(new Chunk(kind, accessor, first, Math.min(AccessorDecoder.BATCH_SIZE, count - first), base, matrix));
+        }
+    }
+
+    // Accessor of an attribute or of the indices, which must have the given number of components
+    private AccessorDecoder.Accessor accessor(int index, int components, String name) throws IOException {
+        AccessorDecoder.Accessor accessor = AccessorDecoder.accessor(gltf, index, resources);
+        if (accessor.components != components)
+            throw new IOException(name + " needs accessors with " + components + " components, accessor " + index + " has " + accessor.components);
+        return accessor;
+    }
+
+    // Keeps a bounded window of chunks in flight, the sink receives them strictly in plan order
+    private void emit(List<Chunk> chunks, MeshSink sink) throws IOException {
+        int window = Math.max(2, pool.getParallelism() * 2);
+        ArrayDeque<Chunk> inFlight = new ArrayDeque<>(window);
+        ArrayDeque<float[]> freeFloats = new ArrayDeque<>();
+        ArrayDeque<int[]> freeInts = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < chunks.size() || !inFlight.isEmpty()) {
+                while (next < chunks.size() && inFlight.size() < window) {
+                    Chunk chunk = chunks.get(next++);
+                    if (chunk.kind == TRIANGLES)
+                        chunk.ints = freeInts.isEmpty() ? new int[AccessorDecoder.BATCH_SIZE * 3] : freeInts.pop();
+                    else
+                        chunk.floats = freeFloats.isEmpty() ? new float[AccessorDecoder.BATCH_SIZE * 3] : freeFloats.pop();
+                    pool.execute(chunk);
+                    inFlight.add(chunk);
+                }
+
+                Chunk chunk = inFlight.poll();
+                chunk.join();
+                switch (chunk.kind) {
+                    case VERTICES:
+                        sink.addVertices(chunk.floats, 0, chunk.count);
+                        break;
+                    case TEX_COORDS:
+                        sink.addTexCoords(chunk.floats, 0, chunk.count);
+                        break;
+                    default:
+                        sink.addTriangles(chunk.ints, 0, chunk.count);
+                        break;
+                }
+                // The sink does not keep the arrays, they are reused for later chunks
+                if (chunk.ints != null)
+                    freeInts.push(chunk.ints);
+                else
+                    freeFloats.push(chunk.floats);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            EOFException eof = new EOFException("Accessor data exceeds its bufferView");
+            eof.initCause(e);
+            throw eof;
+        } finally {
+            for (Chunk chunk : inFlight) {
+                chunk.cancel(false);
+            }
+        }
+    }
+
+    private void decodeMaterials(MeshSink sink) throws IOException {
+        JSONArray materials = gltf.optJSONArray("materials");
+        if (materials == null)
+            return;
+        for (int i = 0; i < materials.length(); i++) {
+            JSONObject material = materials.getJSONObject(i);
+
+            var resultMaterial = new Object3d.Material();
+            JSONObject pbr = material.optJSONObject("pbrMetallicRoughness");
+
+            // Check for a diffuse texture
+            if (pbr != null && pbr.has("baseColorTexture"))
+                resultMaterial.baseColorTexture = texture(pbr.getJSONObject("baseColorTexture"));
+
+            // Check for metallic/roughness texture
+            if (pbr != null && pbr.has("metallicRoughnessTexture"))
+                resultMaterial.metallicRoughness = texture(pbr.getJSONObject("metallicRoughnessTexture")); // Roughness map
+
+            if (material.has("normalTexture"))
+                resultMaterial.normalTexture = texture(material.getJSONObject("normalTexture"));
+
+            if (material.has("occlusionTexture"))
+                resultMaterial.occlusionTexture = texture(material.getJSONObject("occlusionTexture"));
+
+            if (material.has("emissiveTexture"))
+                resultMaterial.emissiveTexture = texture(material.getJSONObject("emissiveTexture"));
+
+            sink.addMaterial(resultMaterial);
+        }
+    }
+
+    // textureInfo.index refers to textures[], the image is textures[index].source
+    private byte[] texture(JSONObject textureInfo) throws IOException {
+        JSONObject texture = gltf.getJSONArray("textures").getJSONObject(textureInfo.getInt("index"));
+        if (!texture.has("source"))
+            return null;
+        return image(texture.getInt("source"));
+    }
+
+    // Images are loaded once, however many materials use them
+    private byte[] image(int index) throws IOException {
+        JSONArray imageArray = gltf.getJSONArray("images");
+        if (images == null)
+            images = new byte[imageArray.length()][];
+        if (images[index] == null) {
+            JSONObject image = imageArray.getJSONObject(index);
+            if (image.has("bufferView")) {
+                // Copied once, the materials outlive the buffers
+                ByteBuffer view = resources.bufferView(image.getInt("bufferView"));
+                byte[] imageData = new byte[view.remaining()];
+                view.get(imageData);
+                images[index] = imageData;
+            } else {
+                images[index] = resources.uri(image.getString("uri"));
+            }
+        }
+        return images[index];
+    }
+
+    // A mesh or primitive placed by a node, matrix is null when it stays where it is
+    private static final class Instance {
+
+        final JSONObject mesh;
+        final double[] matrix;
+
+        Instance(JSONObject mesh, double[] matrix) {
+            this.mesh = mesh;
+            this.matrix = matrix;
+        }
+    }
+
+    // One batch of vertices, texture coordinates or triangles, decoded into the array it was given
+    private static final class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final int kind;
+        // null for triangles without indices and vertices without texture coordinates
+        final AccessorDecoder.Accessor accessor;
+        final int first;
+        final int count;
+        final int base;
+        // World matrix applied to vertices, for triangles set when the winding has to be reversed. null if neither.
+        final double[] matrix;
+
+        float[] floats;
+        int[] ints;
+
+        Chunk(int kind, AccessorDecoder.Accessor accessor, int first, int count, int base, double[] matrix) {
+            this.kind = kind;
+            this.accessor = accessor;
+            this.first = first;
+            this.count = count;
+            this.base = base;
+            this.matrix = matrix;
+        }
+
+        @Override
+        protected void compute() {
+            switch (kind) {
+                case VERTICES:
+                    AccessorDecoder.readPositions(accessor, first, count, floats);
+                    if (matrix != null)
+                        transform(matrix, floats, count);
+                    break;
+                case TEX_COORDS:
+                    AccessorDecoder.readTexCoords(accessor, first, count, floats);
+                    break;
+                default:
+                    if (accessor == null)
+                        AccessorDecoder.sequentialTriangles(first, count, base, ints);
+                    else
+                        AccessorDecoder.readTriangles(accessor, first, count, base, ints);
+                    if (matrix != null)
+                        reverseWinding(ints, count);
+                    break;
+            }
+        }
+
+        private static void transform(double[] m, float[] xyz, int count) {
+            for (int i = 0; i < count * 3; i += 3) {
+                double x = xyz[i], y = xyz[i + 1], z = xyz[i + 2];
+                xyz[i] = (float) (m[0] * x + m[4] * y + m[8] * z + m[12]);
+                xyz[i + 1] = (float) (m[1] * x + m[5] * y + m[9] * z + m[13]);
+                xyz[i + 2] = (float) (m[2] * x + m[6] * y + m[10] * z + m[14]);
+            }
+        }
+
+        private static void reverseWinding(int[] indices, int count) {
+            for (int i = 0; i < count * 3; i += 3) {
+                int b = indices[i + 1];
+                indices[i + 1] = indices[i + 2];
+                indices[i + 2] = b;
+            }
+        }
+    }
+}
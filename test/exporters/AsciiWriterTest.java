@@ -0,0 +1,125 @@
+package exporters;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsciiWriterTest {
+
+    private static final int SAMPLES = 200_000;
+
+    // Values every test checks besides the random ones: zeros, ties at 6 decimals, subnormals, limits
+    private static final float[] EDGE_CASES = {
+            0f, -0f, 1f, -1f, 0.5f, 0.0000005f, -0.0000005f, 0.0000015f, 0.1f, 0.2f, 0.3f, 1.0000005f, 2.5e-6f,
+            123456.79f, 9999999f, 1e9f, -1e9f, 1e-9f, 3.4028235e38f, -3.4028235e38f, Float.MIN_VALUE, Float.MIN_NORMAL,
+            Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY
+    };
+
+    @Test
+    void fixedDecimalsMatchStringFormat() throws IOException {
+        for (int decimals = 0; decimals <= 9; decimals++) {
+            AsciiWriter writer = AsciiWriter.inMemory(64, decimals);
+            String pattern = "%." + decimals + "f";
+            for (float value : EDGE_CASES) {
+                assertEquals(String.format(Locale.ROOT, pattern, value), format(writer, value), "value " + value);
+            }
+            Random random = new Random(decimals);
+            for (int i = 0; i < SAMPLES; i++) {
+                float value = randomFloat(random);
+                assertEquals(String.format(Locale.ROOT, pattern, value), format(writer, value),
+                        "value " + value + " with " + decimals + " decimals");
+            }
+        }
+    }
+
+    // Doubles that are no float, such as the facet normals of STL files
+    @Test
+    void fixedDecimalsMatchStringFormatForDoubles() throws IOException {
+        for (int decimals = 0; decimals <= 9; decimals++) {
+            AsciiWriter writer = AsciiWriter.inMemory(64, decimals);
+            String pattern = "%." + decimals + "f";
+            Random random = new Random(100 + decimals);
+            for (int i = 0; i < SAMPLES; i++) {
+                double value = random.nextInt(8) == 0 ? Double.longBitsToDouble(random.nextLong()) : (random.nextDouble() - 0.5) * 2;
+                writer.reset();
+                writer.write(value);
+                assertEquals(String.format(Locale.ROOT, pattern, value), StandardCharsets.US_ASCII.decode(writer.contents()).toString(),
+                        "value " + value + " with " + decimals + " decimals");
+            }
+        }
+    }
+
+    @Test
+    void shortestReadsBackAsTheSameFloat() throws IOException {
+        AsciiWriter writer = AsciiWriter.inMemory(64, AsciiWriter.SHORTEST);
+        for (float value : EDGE_CASES) {
+            assertRoundTrip(writer, value);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            assertRoundTrip(writer, randomFloat(random));
+        }
+    }
+
+    @Test
+    void shortestIsNoLongerThanFloatToString() throws IOException {
+        AsciiWriter writer = AsciiWriter.inMemory(64, AsciiWriter.SHORTEST);
+        Random random = new Random(7);
+        for (int i = 0; i < SAMPLES; i++) {
+            float value = randomFloat(random);
+            if (!Float.isFinite(value) || value == 0)
+                continue;
+            String text = format(writer, value);
+            assertTrue(significantDigits(text) <= significantDigits(Float.toString(value)),
+                    text + " has more digits than " + value);
+        }
+    }
+
+    @Test
+    void integersAndTextAreWrittenAsIs() throws IOException {
+        AsciiWriter writer = AsciiWriter.inMemory(4, 6);
+        writer.write("v ").write(0).write(' ').write(-17).write(' ').write(Long.MIN_VALUE).write(' ').write(Integer.MAX_VALUE);
+        assertEquals("v 0 -17 " + Long.MIN_VALUE + " " + Integer.MAX_VALUE,
+                StandardCharsets.US_ASCII.decode(writer.contents()).toString());
+    }
+
+    private static void assertRoundTrip(AsciiWriter writer, float value) throws IOException {
+        String text = format(writer, value);
+        assertTrue(text.indexOf('E') < 0 || Math.abs(value) < 1e-9f || Math.abs(value) >= 1e9f, text + " uses an exponent");
+        assertEquals(Float.floatToIntBits(value), Float.floatToIntBits(Float.parseFloat(text)), text + " for " + value);
+    }
+
+    // Mostly the magnitudes of mesh coordinates, some from the whole range including subnormals and NaN
+    private static float randomFloat(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return Float.intBitsToFloat(random.nextInt());
+            case 1:
+                return (random.nextFloat() - 0.5f) * 2;
+            case 2:
+                return (random.nextFloat() - 0.5f) * 20000;
+            default:
+                // Exact ties at some number of decimals
+                return (float) ((random.nextInt(2_000_000) - 1_000_000) * 5 / Math.pow(10, 1 + random.nextInt(7)));
+        }
+    }
+
+    private static String format(AsciiWriter writer, float value) throws IOException {
+        writer.reset();
+        writer.write(value);
+        return StandardCharsets.US_ASCII.decode(writer.contents()).toString();
+    }
+
+    private static int significantDigits(String text) {
+        int exponent = text.indexOf('E');
+        String digits = (exponent >= 0 ? text.substring(0, exponent) : text).replace("-", "").replace(".", "");
+        digits = digits.replaceFirst("^0+", "").replaceFirst("0+$", "");
+        return Math.max(1, digits.length());
+    }
+}
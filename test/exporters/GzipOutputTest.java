@@ -0,0 +1,125 @@
+package exporters;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class GzipOutputTest {
+
+    private static final int BLOCK_SIZE = 128 * 1024;
+
+    @Test
+    void emptyOutput() throws IOException {
+        assertRoundTrip(new byte[0]);
+    }
+
+    @Test
+    void smallerThanOneBlock() throws IOException {
+        assertRoundTrip("solid exported_object\nendsolid exported_object\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void exactlyOneBlock() throws IOException {
+        assertRoundTrip(text(BLOCK_SIZE));
+    }
+
+    // Many blocks, each compressed with the end of the one before as dictionary
+    @Test
+    void manyBlocksOfText() throws IOException {
+        assertRoundTrip(text(5 * BLOCK_SIZE + 12345));
+    }
+
+    @Test
+    void incompressibleData() throws IOException {
+        byte[] data = new byte[3 * BLOCK_SIZE + 1];
+        new Random(1).nextBytes(data);
+        assertRoundTrip(data);
+    }
+
+    // More blocks than the compressors keep in flight
+    @Test
+    void longerThanTheWindow() throws IOException {
+        int blocks = Runtime.getRuntime().availableProcessors() * 4 + 3;
+        assertRoundTrip(text(blocks * BLOCK_SIZE - 7));
+    }
+
+    // Binary writers put their values into buffer(), text goes through the stream methods, both end up in order
+    @Test
+    void mixedWrites() throws IOException {
+        Path file = Files.createTempFile("gzip-output-test", ".gz");
+        try {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            Random random = new Random(3);
+            try (ExportOutput output = ExportOutput.open(file.toString(), new ExportOptions().setGzip(true))) {
+                for (int i = 0; i < 100_000; i++) {
+                    switch (random.nextInt(4)) {
+                        case 0:
+                            int b = random.nextInt(256);
+                            output.write(b);
+                            expected.write(b);
+                            break;
+                        case 1:
+                            byte[] bytes = ("facet " + i + "\n").getBytes(StandardCharsets.US_ASCII);
+                            output.write(bytes);
+                            expected.write(bytes);
+                            break;
+                        case 2:
+                            float value = random.nextFloat();
+                            output.buffer(4).putFloat(value);
+                            expected.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(value).array());
+                            break;
+                        default:
+                            byte[] chunk = new byte[random.nextInt(3000)];
+                            random.nextBytes(chunk);
+                            output.write(ByteBuffer.wrap(chunk));
+                            expected.write(chunk);
+                            break;
+                    }
+                }
+            }
+            assertArrayEquals(expected.toByteArray(), gunzip(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void assertRoundTrip(byte[] data) throws IOException {
+        Path file = Files.createTempFile("gzip-output-test", ".gz");
+        try {
+            try (ExportOutput output = ExportOutput.open(file.toString(), new ExportOptions().setGzip(true))) {
+                output.write(data);
+            }
+            assertArrayEquals(data, gunzip(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // GZIPInputStream also checks the CRC and length in the trailer
+    private static byte[] gunzip(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return in.readAllBytes();
+        }
+    }
+
+    // OBJ-like lines, compressible but not trivially
+    private static byte[] text(int length) {
+        StringBuilder text = new StringBuilder(length + 64);
+        Random random = new Random(length);
+        while (text.length() < length) {
+            text.append("v ").append(random.nextFloat()).append(' ').append(random.nextInt(1000)).append(" 0.5\n");
+        }
+        return text.substring(0, length).getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,166 @@
+package optimizers;
+
+import core.Object3d;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MeshDecimatorTest {
+
+    // A flat square has no error to collapse against, it must get all the way down while keeping its outline
+    @Test
+    void flatGridKeepsItsOutlineAndArea() {
+        int size = 64;
+        Object3d grid = grid(size);
+        Set<String> original = wedges(grid);
+        MeshDecimator.decimate(grid, 500);
+
+        assertTrue(grid.getTriangleCount() <= 500, grid.getTriangleCount() + " triangles");
+        assertValid(grid, original);
+        double area = 0;
+        for (int triangle = 0; triangle < grid.getTriangleCount(); triangle++) {
+            int a = grid.getTriangleIndex(triangle, 0), b = grid.getTriangleIndex(triangle, 1), c = grid.getTriangleIndex(triangle, 2);
+            assertEquals(0f, grid.getVertexZ(a));
+            // Signed, a flipped or overlapping triangle would change the sum
+            area += ((grid.getVertexX(b) - grid.getVertexX(a)) * (grid.getVertexY(c) - grid.getVertexY(a))
+                    - (grid.getVertexX(c) - grid.getVertexX(a)) * (grid.getVertexY(b) - grid.getVertexY(a))) / 2.0;
+        }
+        assertEquals((size - 1) * (size - 1), area, 1e-3);
+    }
+
+    // A closed surface must stay closed: every edge used by exactly two triangles, once in each direction
+    @Test
+    void sphereStaysClosedAndManifold() {
+        Object3d sphere = sphere(64, 128);
+        Set<String> original = wedges(sphere);
+        int target = sphere.getTriangleCount() / 10;
+        MeshDecimator.decimate(sphere, target);
+
+        assertTrue(sphere.getTriangleCount() <= target, sphere.getTriangleCount() + " triangles for " + target);
+        assertTrue(sphere.getTriangleCount() >= 4, sphere.getTriangleCount() + " triangles");
+        assertValid(sphere, original);
+        Map<Long, Integer> edges = new HashMap<>();
+        for (int triangle = 0; triangle < sphere.getTriangleCount(); triangle++) {
+            for (int corner = 0; corner < 3; corner++) {
+                long from = sphere.getTriangleIndex(triangle, corner);
+                long to = sphere.getTriangleIndex(triangle, (corner + 1) % 3);
+                assertTrue(edges.put(from << 32 | to, triangle) == null, "edge " + from + "-" + to + " used twice");
+            }
+        }
+        for (long edge : edges.keySet()) {
+            long reverse = (edge & 0xFFFFFFFFL) << 32 | edge >>> 32;
+            assertTrue(edges.containsKey(reverse), "open edge " + (edge >>> 32) + "-" + (edge & 0xFFFFFFFFL));
+        }
+    }
+
+    @Test
+    void meshesAtOrBelowTheTargetAreLeftAlone() {
+        Object3d grid = grid(8);
+        int triangles = grid.getTriangleCount();
+        int vertices = grid.getVertexCount();
+        MeshDecimator.decimate(grid, triangles);
+        assertEquals(triangles, grid.getTriangleCount());
+        assertEquals(vertices, grid.getVertexCount());
+    }
+
+    @Test
+    void impossibleTargetsStopAtWhatTheTopologyAllows() {
+        Object3d sphere = sphere(16, 32);
+        Set<String> original = wedges(sphere);
+        MeshDecimator.decimate(sphere, 0);
+        assertValid(sphere, original);
+        assertTrue(sphere.getTriangleCount() < 16 * 32 * 2, sphere.getTriangleCount() + " triangles");
+    }
+
+    @Test
+    void negativeTargetsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> MeshDecimator.decimate(grid(4), -1));
+    }
+
+    // Indices in range, no degenerate triangles, no unused vertices, and every vertex one of the originals
+    private static void assertValid(Object3d object, Set<String> originalWedges) {
+        int vertexCount = object.getVertexCount();
+        assertEquals(vertexCount, object.getTexCoordCount());
+        boolean[] used = new boolean[vertexCount];
+        for (int triangle = 0; triangle < object.getTriangleCount(); triangle++) {
+            int a = object.getTriangleIndex(triangle, 0), b = object.getTriangleIndex(triangle, 1), c = object.getTriangleIndex(triangle, 2);
+            for (int index : new int[]{a, b, c}) {
+                assertTrue(index >= 0 && index < vertexCount, "index " + index + " of " + vertexCount);
+                used[index] = true;
+            }
+            assertTrue(a != b && b != c && a != c, "degenerate triangle " + triangle);
+        }
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            assertTrue(used[vertex], "unused vertex " + vertex);
+            assertTrue(originalWedges.contains(wedge(object, vertex)), "moved vertex " + wedge(object, vertex));
+        }
+    }
+
+    private static Set<String> wedges(Object3d object) {
+        Set<String> wedges = new HashSet<>();
+        for (int vertex = 0; vertex < object.getVertexCount(); vertex++) {
+            wedges.add(wedge(object, vertex));
+        }
+        return wedges;
+    }
+
+    private static String wedge(Object3d object, int vertex) {
+        return object.getVertexX(vertex) + " " + object.getVertexY(vertex) + " " + object.getVertexZ(vertex)
+                + " / " + object.getTexCoordU(vertex) + " " + object.getTexCoordV(vertex);
+    }
+
+    // size x size vertices one unit apart in the z = 0 plane, counter-clockwise seen from +z
+    private static Object3d grid(int size) {
+        Object3d grid = new Object3d();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                grid.addVertex(x, y, 0);
+                grid.addTexCoord(x / (double) (size - 1), y / (double) (size - 1));
+            }
+        }
+        for (int y = 0; y < size - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                int corner = y * size + x;
+                grid.addTriangles(new int[]{corner, corner + 1, corner + size + 1, corner, corner + size + 1, corner + size}, 0, 2);
+            }
+        }
+        return grid;
+    }
+
+    // Unit sphere of rings around the z axis with a single vertex at each pole, outward facing and without seams
+    private static Object3d sphere(int rings, int segments) {
+        Object3d sphere = new Object3d();
+        sphere.addVertex(0, 0, 1);
+        sphere.addTexCoord(0.5, 1);
+        for (int ring = 1; ring < rings; ring++) {
+            double theta = Math.PI * ring / rings;
+            for (int segment = 0; segment < segments; segment++) {
+                double phi = 2 * Math.PI * segment / segments;
+                sphere.addVertex(Math.sin(theta) * Math.cos(phi), Math.sin(theta) * Math.sin(phi), Math.cos(theta));
+                sphere.addTexCoord(Math.abs(segment / (double) segments - 0.5), 1 - ring / (double) rings);
+            }
+        }
+        int south = 1 + (rings - 1) * segments;
+        sphere.addVertex(0, 0, -1);
+        sphere.addTexCoord(0.5, 0);
+        for (int segment = 0; segment < segments; segment++) {
+            int next = (segment + 1) % segments;
+            sphere.addTriangles(new int[]{0, 1 + segment, 1 + next}, 0, 1);
+            for (int ring = 1; ring < rings - 1; ring++) {
+                int a = 1 + (ring - 1) * segments + segment, b = 1 + (ring - 1) * segments + next;
+                int c = a + segments, d = b + segments;
+                sphere.addTriangles(new int[]{a, c, d, a, d, b}, 0, 2);
+            }
+            int last = 1 + (rings - 2) * segments;
+            sphere.addTriangles(new int[]{last + segment, south, last + next}, 0, 1);
+        }
+        return sphere;
+    }
+}
@@ -0,0 +1,337 @@
+package parsers;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The encoders below follow the EXT_meshopt_compression format description, not the decoder, so both are checked
+// against the format rather than against each other
+class MeshoptDecoderTest {
+
+    @Test
+    void vertexBufferRoundTrip() throws IOException {
+        Random random = new Random(1);
+        for (int stride : new int[]{4, 8, 12, 16, 20, 32, 64, 256}) {
+            for (int count : new int[]{1, 15, 16, 17, 255, 256, 257, 1000, 5000}) {
+                for (int pattern = 0; pattern < 3; pattern++) {
+                    byte[] vertices = vertices(random, count, stride, pattern);
+                    byte[] encoded = encodeVertexBuffer(vertices, count, stride);
+                    ByteBuffer decoded = MeshoptDecoder.decode(ByteBuffer.wrap(encoded), count, stride, "ATTRIBUTES", "NONE");
+                    assertArrayEquals(vertices, toArray(decoded));
+                }
+            }
+        }
+    }
+
+    @Test
+    void indexSequenceRoundTrip() throws IOException {
+        Random random = new Random(2);
+        int[] indices = new int[10_000];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(4) == 0 ? random.nextInt(1 << 20) : Math.max(0, (i > 0 ? indices[i - 1] : 0) + random.nextInt(7) - 3);
+        }
+        byte[] encoded = encodeIndexSequence(indices);
+        assertArrayEquals(indices, toInts(MeshoptDecoder.decode(ByteBuffer.wrap(encoded), indices.length, 4, "INDICES", "NONE"), 4));
+
+        int[] shorts = new int[]{0, 1, 2, 65535, 3, 7, 7, 0};
+        encoded = encodeIndexSequence(shorts);
+        assertArrayEquals(shorts, toInts(MeshoptDecoder.decode(ByteBuffer.wrap(encoded), shorts.length, 2, "INDICES", "NONE"), 2));
+    }
+
+    // Every index given explicitly: code 0xFF with auxiliary code 0xFF
+    @Test
+    void explicitTriangles() throws IOException {
+        Random random = new Random(3);
+        int[] indices = new int[3 * 2000];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(100_000);
+        }
+        ByteArrayOutputStream codes = new ByteArrayOutputStream();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int last = 0;
+        for (int i = 0; i < indices.length; i += 3) {
+            codes.write(0xFF);
+            data.write(0xFF);
+            for (int j = 0; j < 3; j++) {
+                writeVarInt(data, zigzag(indices[i + j] - last));
+                last = indices[i + j];
+            }
+        }
+        byte[] encoded = indexBuffer(codes.toByteArray(), data.toByteArray(), new byte[16]);
+        assertArrayEquals(indices, toInts(MeshoptDecoder.decode(ByteBuffer.wrap(encoded), indices.length, 4, "TRIANGLES", "NONE"), 4));
+    }
+
+    // A fan: the first triangle has three new vertices, every other one the last edge and one new vertex
+    @Test
+    void triangleFanThroughTheEdgeFifo() throws IOException {
+        int triangles = 100;
+        ByteArrayOutputStream codes = new ByteArrayOutputStream();
+        codes.write(0xFE);
+        byte[] data = {0x00};
+        int[] expected = new int[triangles * 3];
+        expected[0] = 0;
+        expected[1] = 1;
+        expected[2] = 2;
+        for (int t = 1; t < triangles; t++) {
+            codes.write(0x00);
+            expected[t * 3] = 0;
+            expected[t * 3 + 1] = t + 1;
+            expected[t * 3 + 2] = t + 2;
+        }
+        byte[] encoded = indexBuffer(codes.toByteArray(), data, new byte[16]);
+        assertArrayEquals(expected, toInts(MeshoptDecoder.decode(ByteBuffer.wrap(encoded), expected.length, 2, "TRIANGLES", "NONE"), 2));
+    }
+
+    // Codes 0xF0 to 0xFD look up the auxiliary code table, 0x00 there means three new vertices
+    @Test
+    void auxiliaryCodeTable() throws IOException {
+        byte[] table = new byte[16];
+        table[5] = 0x00;
+        byte[] encoded = indexBuffer(new byte[]{(byte) 0xF5, (byte) 0xF5, (byte) 0xF5}, new byte[0], table);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8},
+                toInts(MeshoptDecoder.decode(ByteBuffer.wrap(encoded), 9, 4, "TRIANGLES", "NONE"), 4));
+    }
+
+    @Test
+    void exponentialFilter() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(0, (-2 << 24) | 6);
+        data.putInt(4, -3 & 0xFFFFFF);
+        data.putInt(8, (3 << 24) | 1);
+        ByteBuffer encoded = ByteBuffer.wrap(encodeVertexBuffer(toArray(data), 3, 4));
+        ByteBuffer decoded = MeshoptDecoder.decode(encoded, 3, 4, "ATTRIBUTES", "EXPONENTIAL");
+        assertEquals(1.5f, decoded.getFloat(0));
+        assertEquals(-3f, decoded.getFloat(4));
+        assertEquals(8f, decoded.getFloat(8));
+    }
+
+    // Any input decodes to a vector of length 32767, give or take the rounding of each component
+    @Test
+    void octahedralFilterProducesUnitVectors() throws IOException {
+        Random random = new Random(4);
+        int count = 1000;
+        ByteBuffer data = ByteBuffer.allocate(count * 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            int one = 1 + random.nextInt(32767);
+            data.putShort(i * 8, (short) (random.nextInt(2 * one + 1) - one));
+            data.putShort(i * 8 + 2, (short) (random.nextInt(2 * one + 1) - one));
+            data.putShort(i * 8 + 4, (short) one);
+        }
+        ByteBuffer encoded = ByteBuffer.wrap(encodeVertexBuffer(toArray(data), count, 8));
+        ByteBuffer decoded = MeshoptDecoder.decode(encoded, count, 8, "ATTRIBUTES", "OCTAHEDRAL");
+        for (int i = 0; i < count; i++) {
+            double x = decoded.getShort(i * 8), y = decoded.getShort(i * 8 + 2), z = decoded.getShort(i * 8 + 4);
+            assertEquals(32767, Math.sqrt(x * x + y * y + z * z), 2, "vector " + i);
+        }
+    }
+
+    @Test
+    void quaternionFilterRebuildsTheLargestComponent() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        // Identity, w is the largest component
+        data.putShort(6, (short) 32767);
+        // 90 degrees about z: z = w = sqrt(1/2), w is rebuilt, z stored as 1 on the sqrt(1/2) scale
+        data.putShort(12, (short) 32767);
+        data.putShort(14, (short) 32767);
+        ByteBuffer encoded = ByteBuffer.wrap(encodeVertexBuffer(toArray(data), 2, 8));
+        ByteBuffer decoded = MeshoptDecoder.decode(encoded, 2, 8, "ATTRIBUTES", "QUATERNION");
+        assertArrayEquals(new int[]{0, 0, 0, 32767}, toInts(decoded, 2, 0, 4));
+        int[] rotation = toInts(decoded, 2, 4, 4);
+        assertEquals(0, rotation[0]);
+        assertEquals(0, rotation[1]);
+        assertEquals(23170, rotation[2], 1, "z");
+        assertEquals(23170, rotation[3], 1, "w");
+    }
+
+    @Test
+    void unsupportedVersionsAreRejected() {
+        assertThrows(IOException.class, () -> MeshoptDecoder.decode(ByteBuffer.wrap(new byte[64]), 1, 4, "ATTRIBUTES", "NONE"));
+        assertThrows(IOException.class, () -> MeshoptDecoder.decode(ByteBuffer.wrap(new byte[64]), 3, 4, "TRIANGLES", "NONE"));
+        assertThrows(IOException.class, () -> MeshoptDecoder.decode(ByteBuffer.wrap(new byte[64]), 3, 4, "INDICES", "NONE"));
+    }
+
+    // Malformed data must fail with an IOException, never read out of bounds
+    @Test
+    void randomDataFailsCleanly() {
+        Random random = new Random(5);
+        String[] modes = {"ATTRIBUTES", "TRIANGLES", "INDICES"};
+        int[] headers = {0xA0, 0xE1, 0xD1};
+        for (int i = 0; i < 30_000; i++) {
+            int mode = random.nextInt(3);
+            byte[] data = new byte[random.nextInt(600)];
+            random.nextBytes(data);
+            if (data.length > 0)
+                data[0] = (byte) headers[mode];
+            int stride = mode == 0 ? 4 * (1 + random.nextInt(4)) : 2 * (1 + random.nextInt(2));
+            int count = mode == 1 ? 3 * random.nextInt(100) : random.nextInt(300);
+            try {
+                MeshoptDecoder.decode(ByteBuffer.wrap(data), count, stride, modes[mode], "NONE");
+            } catch (IOException e) {
+                // Expected for most inputs
+            } catch (RuntimeException e) {
+                throw new AssertionError(modes[mode] + " with " + data.length + " bytes, count " + count + ", stride " + stride, e);
+            }
+        }
+    }
+
+    // Smooth values with small deltas, constant values and noise, so that every group width is used
+    private static byte[] vertices(Random random, int count, int stride, int pattern) {
+        byte[] vertices = new byte[count * stride];
+        for (int i = 0; i < count; i++) {
+            for (int k = 0; k < stride; k++) {
+                byte value;
+                if (pattern == 0)
+                    value = (byte) (k * 31 + i / 3 + (random.nextInt(5) == 0 ? random.nextInt(9) - 4 : 0));
+                else if (pattern == 1)
+                    value = (byte) (k % 5 == 0 ? 7 : i);
+                else
+                    value = (byte) random.nextInt();
+                vertices[i * stride + k] = value;
+            }
+        }
+        return vertices;
+    }
+
+    // Vertex codec version 0: header, blocks of zigzag deltas per byte, the first vertex at the end of the tail
+    private static byte[] encodeVertexBuffer(byte[] vertices, int count, int stride) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xA0);
+        int blockSize = Math.min((8192 / stride) & ~15, 256);
+        byte[] last = new byte[stride];
+        System.arraycopy(vertices, 0, last, 0, stride);
+        for (int first = 0; first < count; first += blockSize) {
+            int blockCount = Math.min(blockSize, count - first);
+            int alignedCount = (blockCount + 15) & ~15;
+            for (int k = 0; k < stride; k++) {
+                byte[] deltas = new byte[alignedCount];
+                int previous = last[k];
+                for (int i = 0; i < blockCount; i++) {
+                    int value = vertices[(first + i) * stride + k];
+                    int delta = (byte) (value - previous);
+                    deltas[i] = (byte) ((delta << 1) ^ (delta >> 7));
+                    previous = value;
+                }
+                encodeBytes(out, deltas);
+            }
+            System.arraycopy(vertices, (first + blockCount - 1) * stride, last, 0, stride);
+        }
+        int tail = Math.max(stride, 32);
+        out.writeBytes(new byte[tail - stride]);
+        out.write(vertices, 0, stride);
+        return out.toByteArray();
+    }
+
+    // 2 header bits per group of 16 select 0, 2, 4 or 8 bits per byte, whichever is shortest
+    private static void encodeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        int groups = bytes.length / 16;
+        byte[] header = new byte[(groups + 3) / 4];
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int group = 0; group < groups; group++) {
+            int bestBits = 8;
+            byte[] best = null;
+            for (int bits : new int[]{0, 2, 4}) {
+                byte[] encoded = encodeGroup(bytes, group * 16, bits);
+                if (encoded != null && encoded.length < 16 && (best == null || encoded.length < best.length)) {
+                    best = encoded;
+                    bestBits = bits;
+                }
+            }
+            if (best == null)
+                best = Arrays.copyOfRange(bytes, group * 16, group * 16 + 16);
+            int bitsLog2 = bestBits == 0 ? 0 : bestBits == 2 ? 1 : bestBits == 4 ? 2 : 3;
+            header[group / 4] |= (byte) (bitsLog2 << ((group % 4) * 2));
+            body.writeBytes(best);
+        }
+        out.writeBytes(header);
+        out.writeBytes(body.toByteArray());
+    }
+
+    // Packed values with the first one in the highest bits, all ones marks a byte that follows the packed part
+    private static byte[] encodeGroup(byte[] bytes, int offset, int bits) {
+        if (bits == 0) {
+            for (int i = 0; i < 16; i++) {
+                if (bytes[offset + i] != 0)
+                    return null;
+            }
+            return new byte[0];
+        }
+        int escape = (1 << bits) - 1;
+        byte[] packed = new byte[16 * bits / 8];
+        ByteArrayOutputStream escaped = new ByteArrayOutputStream();
+        for (int i = 0; i < 16; i++) {
+            int value = bytes[offset + i] & 0xFF;
+            int code = value >= escape ? escape : value;
+            if (code == escape)
+                escaped.write(value);
+            packed[i * bits / 8] |= (byte) (code << (8 - bits - (i * bits) % 8));
+        }
+        ByteArrayOutputStream group = new ByteArrayOutputStream();
+        group.writeBytes(packed);
+        group.writeBytes(escaped.toByteArray());
+        return group.toByteArray();
+    }
+
+    // Index sequence version 1: per index a varint of the zigzag delta to one of two baselines, the lowest bit picks it
+    private static byte[] encodeIndexSequence(int[] indices) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xD1);
+        int[] last = new int[2];
+        for (int index : indices) {
+            int baseline = Math.abs(index - last[0]) <= Math.abs(index - last[1]) ? 0 : 1;
+            writeVarInt(out, (zigzag(index - last[baseline]) << 1) | baseline);
+            last[baseline] = index;
+        }
+        out.writeBytes(new byte[4]);
+        return out.toByteArray();
+    }
+
+    // Index codec version 1: header, one code per triangle, the extra data, then the table of auxiliary codes
+    private static byte[] indexBuffer(byte[] codes, byte[] data, byte[] codeAuxTable) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xE1);
+        out.writeBytes(codes);
+        out.writeBytes(data);
+        out.writeBytes(codeAuxTable);
+        return out.toByteArray();
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~127) != 0) {
+            out.write((value & 127) | 128);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static int[] toInts(ByteBuffer buffer, int size) {
+        return toInts(buffer, size, 0, buffer.remaining() / size);
+    }
+
+    private static int[] toInts(ByteBuffer buffer, int size, int first, int count) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = size == 2 ? buffer.getShort((first + i) * 2) & 0xFFFF : buffer.getInt((first + i) * 4);
+        }
+        return values;
+    }
+}